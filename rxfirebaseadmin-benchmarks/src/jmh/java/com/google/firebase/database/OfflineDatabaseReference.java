@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.firebase.database;
+
+import com.google.firebase.database.core.Path;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Reference that keeps its listeners in memory instead of registering them with a repo, so benchmarks can drive the
+ * callbacks directly on the calling thread.
+ */
+public class OfflineDatabaseReference extends DatabaseReference {
+
+    private final List<ChildEventListener> childEventListeners = new CopyOnWriteArrayList<>();
+    private final List<ValueEventListener> valueEventListeners = new CopyOnWriteArrayList<>();
+
+    public OfflineDatabaseReference(String path) {
+        super(null, new Path(path));
+    }
+
+    @Override
+    public ChildEventListener addChildEventListener(ChildEventListener listener) {
+        childEventListeners.add(listener);
+        return listener;
+    }
+
+    @Override
+    public ValueEventListener addValueEventListener(ValueEventListener listener) {
+        valueEventListeners.add(listener);
+        return listener;
+    }
+
+    @Override
+    public void removeEventListener(ChildEventListener listener) {
+        childEventListeners.remove(listener);
+    }
+
+    @Override
+    public void removeEventListener(ValueEventListener listener) {
+        valueEventListeners.remove(listener);
+    }
+
+    public void childAdded(DataSnapshot dataSnapshot, String previousChildName) {
+        for (ChildEventListener listener : childEventListeners) {
+            listener.onChildAdded(dataSnapshot, previousChildName);
+        }
+    }
+
+    public void childChanged(DataSnapshot dataSnapshot, String previousChildName) {
+        for (ChildEventListener listener : childEventListeners) {
+            listener.onChildChanged(dataSnapshot, previousChildName);
+        }
+    }
+
+    public void dataChange(DataSnapshot dataSnapshot) {
+        for (ValueEventListener listener : valueEventListeners) {
+            listener.onDataChange(dataSnapshot);
+        }
+    }
+}
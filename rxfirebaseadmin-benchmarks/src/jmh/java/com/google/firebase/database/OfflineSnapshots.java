@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.firebase.database;
+
+import com.google.firebase.database.core.Path;
+import com.google.firebase.database.snapshot.IndexedNode;
+import com.google.firebase.database.snapshot.NodeUtilities;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds {@link DataSnapshot}s in memory, without a Firebase backend. Lives in the SDK package because the snapshot
+ * constructor is package-private.
+ */
+public class OfflineSnapshots {
+
+    public static DataSnapshot of(String path, Object value) {
+        return new DataSnapshot(new DatabaseReference(null, new Path(path)),
+                IndexedNode.from(NodeUtilities.NodeFromJSON(value)));
+    }
+
+    /**
+     * A list of {@code width} items, each nested {@code depth} levels deep through its {@code child} field.
+     */
+    public static DataSnapshot items(String path, int width, int depth) {
+        Map<String, Object> items = new LinkedHashMap<>();
+        for (int i = 0; i < width; i++) {
+            items.put(String.format("item%06d", i), item(i, depth));
+        }
+        return of(path, items);
+    }
+
+    public static Map<String, Object> item(int index, int depth) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("name", "name" + index);
+        item.put("count", (long) index);
+        item.put("active", index % 2 == 0);
+        if (depth > 1) {
+            item.put("child", item(index, depth - 1));
+        }
+        return item;
+    }
+}
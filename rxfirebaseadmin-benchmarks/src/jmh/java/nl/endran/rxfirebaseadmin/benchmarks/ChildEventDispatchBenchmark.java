@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin.benchmarks;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.OfflineDatabaseReference;
+import com.google.firebase.database.OfflineSnapshots;
+import nl.endran.rxfirebaseadmin.RxFirebaseChildEvent;
+import nl.endran.rxfirebaseadmin.RxFirebaseChildEventSink;
+import nl.endran.rxfirebaseadmin.RxFirebaseDatabase;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import rx.Subscriber;
+import rx.subscriptions.CompositeSubscription;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a child event travelling from the Firebase listener callback through {@code observeChildEvent} to a
+ * subscriber, with and without mapping to a class, and through the pooled and sink variants that avoid allocating
+ * an event per callback. Runs on the calling thread, so it measures the Rx layer only; compare the gc profiler's
+ * {@code gc.alloc.rate.norm} to see the allocations per event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChildEventDispatchBenchmark {
+
+    @Param({"1", "4"})
+    public int depth;
+
+    private OfflineDatabaseReference rawReference;
+    private OfflineDatabaseReference mappedReference;
+    private OfflineDatabaseReference pooledReference;
+    private OfflineDatabaseReference pooledMappedReference;
+    private OfflineDatabaseReference sinkReference;
+    private DataSnapshot child;
+    private CompositeSubscription subscriptions;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        child = OfflineSnapshots.items("items", 1, depth).getChildren().iterator().next();
+        rawReference = new OfflineDatabaseReference("items");
+        mappedReference = new OfflineDatabaseReference("items");
+        pooledReference = new OfflineDatabaseReference("items");
+        pooledMappedReference = new OfflineDatabaseReference("items");
+        sinkReference = new OfflineDatabaseReference("items");
+        subscriptions = new CompositeSubscription();
+        subscriptions.add(RxFirebaseDatabase.observeChildEvent(rawReference)
+                .subscribe(new BlackholeSubscriber<RxFirebaseChildEvent<DataSnapshot>>(blackhole)));
+        subscriptions.add(RxFirebaseDatabase.observeChildEvent(mappedReference, Item.class)
+                .subscribe(new BlackholeSubscriber<RxFirebaseChildEvent<Item>>(blackhole)));
+        subscriptions.add(RxFirebaseDatabase.observePooledChildEvent(pooledReference)
+                .subscribe(new BlackholeSubscriber<RxFirebaseChildEvent<DataSnapshot>>(blackhole)));
+        subscriptions.add(RxFirebaseDatabase.observePooledChildEvent(pooledMappedReference, Item.class)
+                .subscribe(new BlackholeSubscriber<RxFirebaseChildEvent<Item>>(blackhole)));
+        subscriptions.add(RxFirebaseDatabase.subscribeChildEvents(sinkReference, new RxFirebaseChildEventSink() {
+            @Override
+            public void onChildEvent(String key, DataSnapshot dataSnapshot, String previousChildName,
+                                     RxFirebaseChildEvent.EventType eventType) {
+                blackhole.consume(dataSnapshot);
+            }
+
+            @Override
+            public void onCancelled(RxFirebaseDataException error) {
+                throw new IllegalStateException(error);
+            }
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscriptions.unsubscribe();
+    }
+
+    @Benchmark
+    public void dispatch() {
+        rawReference.childChanged(child, null);
+    }
+
+    @Benchmark
+    public void dispatchMapped() {
+        mappedReference.childChanged(child, null);
+    }
+
+    @Benchmark
+    public void dispatchPooled() {
+        pooledReference.childChanged(child, null);
+    }
+
+    @Benchmark
+    public void dispatchPooledMapped() {
+        pooledMappedReference.childChanged(child, null);
+    }
+
+    @Benchmark
+    public void dispatchSink() {
+        sinkReference.childChanged(child, null);
+    }
+
+    private static class BlackholeSubscriber<T> extends Subscriber<T> {
+
+        private final Blackhole blackhole;
+
+        BlackholeSubscriber(final Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onNext(final T value) {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin.benchmarks;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.OfflineSnapshots;
+import nl.endran.rxfirebaseadmin.DataSnapshotMapper;
+import nl.endran.rxfirebaseadmin.RxFirebaseChildEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping cost of the {@link DataSnapshotMapper} factories over snapshots of {@code width} children that are nested
+ * {@code depth} levels deep. Run with {@code ./gradlew jmh}, the gc profiler reports allocations per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DataSnapshotMapperBenchmark {
+
+    @Param({"10", "1000"})
+    public int width;
+
+    @Param({"1", "4"})
+    public int depth;
+
+    private DataSnapshot list;
+    private DataSnapshot item;
+    private RxFirebaseChildEvent<DataSnapshot> childEvent;
+
+    private final DataSnapshotMapper<DataSnapshot, Item> of = DataSnapshotMapper.of(Item.class);
+    private final DataSnapshotMapper<DataSnapshot, List<Item>> listOf = DataSnapshotMapper.listOf(Item.class);
+    private final DataSnapshotMapper<DataSnapshot, LinkedHashMap<String, Item>> mapOf =
+            DataSnapshotMapper.mapOf(Item.class);
+    private final DataSnapshotMapper<RxFirebaseChildEvent<DataSnapshot>, RxFirebaseChildEvent<Item>> ofChildEvent =
+            DataSnapshotMapper.ofChildEvent(Item.class);
+    private final DataSnapshotMapper<DataSnapshot, Item> projectionOf =
+            DataSnapshotMapper.projectionOf(Item.class, "name", "count");
+    private final DataSnapshotMapper<DataSnapshot, List<Item>> listOfProjection =
+            DataSnapshotMapper.listOfProjection(Item.class, "name", "count");
+
+    @Setup
+    public void setup() {
+        list = OfflineSnapshots.items("items", width, depth);
+        item = list.getChildren().iterator().next();
+        childEvent = new RxFirebaseChildEvent<>(item.getKey(), item, null, RxFirebaseChildEvent.EventType.ADDED);
+    }
+
+    @Benchmark
+    public Item of() {
+        return of.call(item);
+    }
+
+    @Benchmark
+    public List<Item> listOf() {
+        return listOf.call(list);
+    }
+
+    @Benchmark
+    public LinkedHashMap<String, Item> mapOf() {
+        return mapOf.call(list);
+    }
+
+    @Benchmark
+    public RxFirebaseChildEvent<Item> ofChildEvent() {
+        return ofChildEvent.call(childEvent);
+    }
+
+    @Benchmark
+    public Item projectionOf() {
+        return projectionOf.call(item);
+    }
+
+    @Benchmark
+    public List<Item> listOfProjection() {
+        return listOfProjection.call(list);
+    }
+}
@@ -0,0 +1,675 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Converts snapshots to classes with the same rules as the SDK's {@code CustomClassMapper}, but introspects every
+ * class only once into method handles and populates beans straight from the snapshot's children instead of going
+ * through the intermediate {@code Map} tree of {@link DataSnapshot#getValue()}.
+ */
+final class CompiledClassMapper {
+
+    private static final ConcurrentMap<Class<?>, BeanMapping<?>> mappings = new ConcurrentHashMap<>();
+
+    private CompiledClassMapper() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T convert(final DataSnapshot dataSnapshot, final Class<T> clazz) {
+        return (T) convertSnapshot(dataSnapshot, clazz);
+    }
+
+    /**
+     * Converts a snapshot to a bean by reading only the children named after its properties, so that all other
+     * children, however large, are never converted. Nested beans are projected the same way.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T project(final DataSnapshot dataSnapshot, final Class<T> clazz) {
+        return (T) projectSnapshot(dataSnapshot, clazz);
+    }
+
+    /**
+     * Converts only the children at the given slash separated paths, as if the snapshot held nothing else.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T project(final DataSnapshot dataSnapshot, final List<String> fieldPaths, final Class<T> clazz) {
+        Map<String, Object> values = new HashMap<>();
+        for (String fieldPath : fieldPaths) {
+            DataSnapshot child = dataSnapshot.child(fieldPath);
+            if (child.exists()) {
+                putPath(values, fieldPath, child.getValue());
+            }
+        }
+        return (T) convertValue(values, clazz);
+    }
+
+    static Object convertSnapshot(final DataSnapshot dataSnapshot, final Type type) {
+        if (!dataSnapshot.hasChildren()) {
+            return convertValue(dataSnapshot.getValue(), type);
+        }
+        if (type instanceof Class) {
+            Class<?> clazz = (Class<?>) type;
+            if (isBean(clazz)) {
+                return mappingFor(clazz).fromSnapshot(dataSnapshot, Collections.<TypeVariable<?>, Type>emptyMap());
+            }
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Class<?> rawType = (Class<?>) parameterizedType.getRawType();
+            if (List.class.isAssignableFrom(rawType)) {
+                return listFromSnapshot(dataSnapshot, parameterizedType.getActualTypeArguments()[0]);
+            } else if (Map.class.isAssignableFrom(rawType)) {
+                return mapFromSnapshot(dataSnapshot, parameterizedType);
+            } else if (!Collection.class.isAssignableFrom(rawType)) {
+                return mappingFor(rawType).fromSnapshot(dataSnapshot, typeMapping(rawType, parameterizedType));
+            }
+        }
+        return convertValue(dataSnapshot.getValue(), type);
+    }
+
+    private static Object projectSnapshot(final DataSnapshot dataSnapshot, final Type type) {
+        if (type instanceof Class && isBean((Class<?>) type) && dataSnapshot.hasChildren()) {
+            return mappingFor((Class<?>) type).fromProjection(dataSnapshot);
+        }
+        return convertSnapshot(dataSnapshot, type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void putPath(final Map<String, Object> values, final String fieldPath, final Object value) {
+        Map<String, Object> parent = values;
+        int start = 0;
+        int slash;
+        while ((slash = fieldPath.indexOf('/', start)) >= 0) {
+            String key = fieldPath.substring(start, slash);
+            Object child = parent.get(key);
+            if (!(child instanceof Map)) {
+                child = new HashMap<String, Object>();
+                parent.put(key, child);
+            }
+            parent = (Map<String, Object>) child;
+            start = slash + 1;
+        }
+        parent.put(fieldPath.substring(start), value);
+    }
+
+    static Object convertValue(final Object value, final Type type) {
+        if (value == null) {
+            return null;
+        }
+        if (type instanceof ParameterizedType) {
+            return convertParameterized(value, (ParameterizedType) type);
+        } else if (type instanceof Class) {
+            return convertClass(value, (Class<?>) type);
+        } else if (type instanceof WildcardType) {
+            throw new DatabaseException("Generic wildcard types are not supported");
+        } else if (type instanceof GenericArrayType) {
+            throw new DatabaseException("Generic Arrays are not supported, please use Lists instead");
+        } else {
+            throw new IllegalStateException("Unknown type encountered: " + type);
+        }
+    }
+
+    private static boolean isBean(final Class<?> clazz) {
+        return !clazz.isPrimitive()
+                && !Number.class.isAssignableFrom(clazz)
+                && !Boolean.class.isAssignableFrom(clazz)
+                && !Character.class.isAssignableFrom(clazz)
+                && !String.class.isAssignableFrom(clazz)
+                && !clazz.isArray()
+                && clazz.getTypeParameters().length == 0
+                && !clazz.equals(Object.class)
+                && !clazz.isEnum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> BeanMapping<T> mappingFor(final Class<T> clazz) {
+        BeanMapping<T> mapping = (BeanMapping<T>) mappings.get(clazz);
+        if (mapping == null) {
+            mapping = new BeanMapping<T>(clazz);
+            BeanMapping<T> existing = (BeanMapping<T>) mappings.putIfAbsent(clazz, mapping);
+            if (existing != null) {
+                mapping = existing;
+            }
+        }
+        return mapping;
+    }
+
+    private static Map<TypeVariable<?>, Type> typeMapping(final Class<?> rawType,
+                                                          final ParameterizedType parameterizedType) {
+        TypeVariable<?>[] typeVariables = rawType.getTypeParameters();
+        Type[] types = parameterizedType.getActualTypeArguments();
+        if (types.length != typeVariables.length) {
+            throw new IllegalStateException("Mismatched lengths for type variables and actual types");
+        }
+        Map<TypeVariable<?>, Type> typeMapping = new HashMap<>();
+        for (int i = 0; i < typeVariables.length; i++) {
+            typeMapping.put(typeVariables[i], types[i]);
+        }
+        return typeMapping;
+    }
+
+    /**
+     * Mirrors the SDK, which turns a node whose keys are all array indices into a {@code List}.
+     */
+    private static int arrayLength(final List<DataSnapshot> children) {
+        int maxKey = -1;
+        for (DataSnapshot child : children) {
+            String key = child.getKey();
+            if (key.length() > 1 && key.charAt(0) == '0') {
+                return -1;
+            }
+            int index = parseIndex(key);
+            if (index < 0) {
+                return -1;
+            }
+            maxKey = Math.max(maxKey, index);
+        }
+        return maxKey < 2 * children.size() ? maxKey + 1 : -1;
+    }
+
+    private static int parseIndex(final String key) {
+        if (key.isEmpty() || key.length() > 10) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+
+    private static List<DataSnapshot> children(final DataSnapshot dataSnapshot) {
+        List<DataSnapshot> children = new ArrayList<>((int) dataSnapshot.getChildrenCount());
+        for (DataSnapshot child : dataSnapshot.getChildren()) {
+            children.add(child);
+        }
+        return children;
+    }
+
+    private static List<Object> listFromSnapshot(final DataSnapshot dataSnapshot, final Type elementType) {
+        List<DataSnapshot> children = children(dataSnapshot);
+        int length = arrayLength(children);
+        if (length < 0) {
+            throw new DatabaseException("Expected a List while deserializing, but got a " + HashMap.class);
+        }
+        Object[] elements = new Object[length];
+        for (DataSnapshot child : children) {
+            elements[Integer.parseInt(child.getKey())] = convertSnapshot(child, elementType);
+        }
+        return new ArrayList<>(Arrays.asList(elements));
+    }
+
+    private static Map<String, Object> mapFromSnapshot(final DataSnapshot dataSnapshot,
+                                                       final ParameterizedType parameterizedType) {
+        Type[] typeArguments = parameterizedType.getActualTypeArguments();
+        if (!String.class.equals(typeArguments[0])) {
+            throw new DatabaseException("Only Maps with string keys are supported, but found Map with key type "
+                    + typeArguments[0]);
+        }
+        List<DataSnapshot> children = children(dataSnapshot);
+        if (arrayLength(children) >= 0) {
+            throw new DatabaseException("Expected a Map while deserializing, but got a " + ArrayList.class);
+        }
+        Map<String, Object> result = new HashMap<>();
+        for (DataSnapshot child : children) {
+            result.put(child.getKey(), convertSnapshot(child, typeArguments[1]));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object convertParameterized(final Object value, final ParameterizedType type) {
+        Class<?> rawType = (Class<?>) type.getRawType();
+        if (List.class.isAssignableFrom(rawType)) {
+            if (!(value instanceof List)) {
+                throw new DatabaseException("Expected a List while deserializing, but got a " + value.getClass());
+            }
+            List<Object> list = (List<Object>) value;
+            List<Object> result = new ArrayList<>(list.size());
+            for (Object element : list) {
+                result.add(convertValue(element, type.getActualTypeArguments()[0]));
+            }
+            return result;
+        } else if (Map.class.isAssignableFrom(rawType)) {
+            Type keyType = type.getActualTypeArguments()[0];
+            if (!String.class.equals(keyType)) {
+                throw new DatabaseException("Only Maps with string keys are supported, but found Map with key type "
+                        + keyType);
+            }
+            Map<String, Object> map = expectMap(value);
+            Map<String, Object> result = new HashMap<>();
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                result.put(entry.getKey(), convertValue(entry.getValue(), type.getActualTypeArguments()[1]));
+            }
+            return result;
+        } else if (Collection.class.isAssignableFrom(rawType)) {
+            throw new DatabaseException("Collections are not supported, please use Lists instead");
+        } else {
+            return mappingFor(rawType).fromMap(expectMap(value), typeMapping(rawType, type));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object convertClass(final Object value, final Class<?> clazz) {
+        if (clazz.isPrimitive() || Number.class.isAssignableFrom(clazz)
+                || Boolean.class.isAssignableFrom(clazz) || Character.class.isAssignableFrom(clazz)) {
+            return convertPrimitive(value, clazz);
+        } else if (String.class.isAssignableFrom(clazz)) {
+            return convertString(value);
+        } else if (clazz.isArray()) {
+            throw new DatabaseException("Converting to Arrays is not supported, please use Listsinstead");
+        } else if (clazz.getTypeParameters().length > 0) {
+            throw new DatabaseException("Class " + clazz.getName()
+                    + " has generic type parameters, please use GenericTypeIndicator instead");
+        } else if (clazz.equals(Object.class)) {
+            return value;
+        } else if (clazz.isEnum()) {
+            return convertEnum(value, clazz);
+        } else if (value instanceof Map) {
+            return mappingFor(clazz).fromMap(expectMap(value), Collections.<TypeVariable<?>, Type>emptyMap());
+        } else {
+            throw new DatabaseException("Can't convert object of type " + value.getClass().getName()
+                    + " to type " + clazz.getName());
+        }
+    }
+
+    private static Object convertPrimitive(final Object value, final Class<?> clazz) {
+        if (Integer.class.isAssignableFrom(clazz) || int.class.isAssignableFrom(clazz)) {
+            return convertInteger(value);
+        } else if (Boolean.class.isAssignableFrom(clazz) || boolean.class.isAssignableFrom(clazz)) {
+            return convertBoolean(value);
+        } else if (Double.class.isAssignableFrom(clazz) || double.class.isAssignableFrom(clazz)) {
+            return convertDouble(value);
+        } else if (Long.class.isAssignableFrom(clazz) || long.class.isAssignableFrom(clazz)) {
+            return convertLong(value);
+        } else if (Float.class.isAssignableFrom(clazz) || float.class.isAssignableFrom(clazz)) {
+            return convertDouble(value).floatValue();
+        } else if (Short.class.isAssignableFrom(clazz) || short.class.isAssignableFrom(clazz)) {
+            throw new DatabaseException("Deserializing to shorts is not supported");
+        } else if (Byte.class.isAssignableFrom(clazz) || byte.class.isAssignableFrom(clazz)) {
+            throw new DatabaseException("Deserializing to bytes is not supported");
+        } else if (Character.class.isAssignableFrom(clazz) || char.class.isAssignableFrom(clazz)) {
+            throw new DatabaseException("Deserializing to char is not supported");
+        } else {
+            throw new IllegalArgumentException("Unknown primitive type: " + clazz);
+        }
+    }
+
+    private static <E extends Enum<E>> E convertEnum(final Object value, final Class<?> clazz) {
+        if (value instanceof String) {
+            @SuppressWarnings("unchecked")
+            Class<E> enumClass = (Class<E>) clazz;
+            try {
+                return Enum.valueOf(enumClass, (String) value);
+            } catch (IllegalArgumentException e) {
+                throw new DatabaseException("Could not find enum value of " + clazz.getName()
+                        + " for value \"" + value + "\"");
+            }
+        }
+        throw new DatabaseException("Expected a String while deserializing to enum " + clazz
+                + " but got a " + value.getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> expectMap(final Object value) {
+        if (value instanceof Map) {
+            return (Map<String, Object>) value;
+        }
+        throw new DatabaseException("Expected a Map while deserializing, but got a " + value.getClass());
+    }
+
+    private static Integer convertInteger(final Object value) {
+        if (value instanceof Integer) {
+            return (Integer) value;
+        } else if (value instanceof Long || value instanceof Double) {
+            double number = ((Number) value).doubleValue();
+            if (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+                return ((Number) value).intValue();
+            }
+            throw new DatabaseException("Numeric value out of 32-bit integer range: " + number
+                    + ". Did you mean to use a long or double instead of an int?");
+        }
+        throw new DatabaseException("Failed to convert a value of type " + value.getClass().getName() + " to int");
+    }
+
+    private static Long convertLong(final Object value) {
+        if (value instanceof Integer) {
+            return ((Integer) value).longValue();
+        } else if (value instanceof Long) {
+            return (Long) value;
+        } else if (value instanceof Double) {
+            Double number = (Double) value;
+            if (number >= Long.MIN_VALUE && number <= Long.MAX_VALUE) {
+                return number.longValue();
+            }
+            throw new DatabaseException("Numeric value out of 64-bit long range: " + number
+                    + ". Did you mean to use a double instead of a long?");
+        }
+        throw new DatabaseException("Failed to convert a value of type " + value.getClass().getName() + " to long");
+    }
+
+    private static Double convertDouble(final Object value) {
+        if (value instanceof Integer) {
+            return ((Integer) value).doubleValue();
+        } else if (value instanceof Long) {
+            Long number = (Long) value;
+            Double doubleValue = number.doubleValue();
+            if (doubleValue.longValue() == number) {
+                return doubleValue;
+            }
+            throw new DatabaseException("Loss of precision while converting number to double: " + value
+                    + ". Did you mean to use a 64-bit long instead?");
+        } else if (value instanceof Double) {
+            return (Double) value;
+        }
+        throw new DatabaseException("Failed to convert a value of type " + value.getClass().getName() + " to double");
+    }
+
+    private static Boolean convertBoolean(final Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        throw new DatabaseException("Failed to convert value of type " + value.getClass().getName() + " to boolean");
+    }
+
+    private static String convertString(final Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        throw new DatabaseException("Failed to convert value of type " + value.getClass().getName() + " to String");
+    }
+
+    private static final class Property {
+
+        private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+        final Type type;
+        private final MethodHandle setter;
+
+        Property(final Type type, final MethodHandle setter) {
+            this.type = type;
+            this.setter = setter.asType(SETTER_TYPE);
+        }
+
+        void set(final Object target, final Object value) {
+            try {
+                setter.invokeExact(target, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new RuntimeException(throwable);
+            }
+        }
+    }
+
+    private static final class BeanMapping<T> {
+
+        private final Class<T> clazz;
+        private final MethodHandle constructor;
+        private final boolean throwOnUnknownProperties;
+        private final Map<String, String> properties = new HashMap<>();
+        private final Map<String, Property> setters = new HashMap<>();
+
+        BeanMapping(final Class<T> clazz) {
+            this.clazz = clazz;
+            this.throwOnUnknownProperties = clazz.isAnnotationPresent(ThrowOnExtraProperties.class);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+            MethodHandle constructor;
+            try {
+                Constructor<T> declaredConstructor = clazz.getDeclaredConstructor();
+                declaredConstructor.setAccessible(true);
+                constructor = lookup.unreflectConstructor(declaredConstructor)
+                        .asType(MethodType.methodType(Object.class));
+            } catch (NoSuchMethodException e) {
+                constructor = null;
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+            this.constructor = constructor;
+
+            Set<String> getters = new HashSet<>();
+            for (Method method : clazz.getMethods()) {
+                if (shouldIncludeGetter(method)) {
+                    String propertyName = propertyName(method);
+                    addProperty(propertyName);
+                    if (!getters.add(propertyName)) {
+                        throw new DatabaseException("Found conflicting getters for name: " + method.getName());
+                    }
+                }
+            }
+            for (Field field : clazz.getFields()) {
+                if (shouldIncludeField(field)) {
+                    addProperty(propertyName(field));
+                }
+            }
+
+            Map<String, Method> setterMethods = new HashMap<>();
+            Map<String, Field> fields = new HashMap<>();
+            Class<? super T> currentClass = clazz;
+            do {
+                for (Method method : currentClass.getDeclaredMethods()) {
+                    if (shouldIncludeSetter(method)) {
+                        String propertyName = propertyName(method);
+                        String existingPropertyName = properties.get(propertyName.toLowerCase());
+                        if (existingPropertyName != null) {
+                            if (!existingPropertyName.equals(propertyName)) {
+                                throw new DatabaseException("Found setter with invalid case-sensitive name: "
+                                        + method.getName());
+                            }
+                            Method existingSetter = setterMethods.get(propertyName);
+                            if (existingSetter == null) {
+                                setterMethods.put(propertyName, method);
+                            } else if (!isSetterOverride(method, existingSetter)) {
+                                throw new DatabaseException("Found a conflicting setters with name: " + method.getName()
+                                        + " (conflicts with " + existingSetter.getName() + " defined on "
+                                        + existingSetter.getDeclaringClass().getName() + ")");
+                            }
+                        }
+                    }
+                }
+                for (Field field : currentClass.getDeclaredFields()) {
+                    String propertyName = propertyName(field);
+                    if (properties.containsKey(propertyName.toLowerCase()) && !fields.containsKey(propertyName)) {
+                        fields.put(propertyName, field);
+                    }
+                }
+                currentClass = currentClass.getSuperclass();
+            } while (currentClass != null && !currentClass.equals(Object.class));
+
+            if (properties.isEmpty()) {
+                throw new DatabaseException("No properties to serialize found on class " + clazz.getName());
+            }
+
+            try {
+                for (Map.Entry<String, Method> entry : setterMethods.entrySet()) {
+                    Method method = entry.getValue();
+                    method.setAccessible(true);
+                    setters.put(entry.getKey(), new Property(method.getGenericParameterTypes()[0], lookup.unreflect(method)));
+                }
+                for (Map.Entry<String, Field> entry : fields.entrySet()) {
+                    if (!setters.containsKey(entry.getKey())) {
+                        Field field = entry.getValue();
+                        field.setAccessible(true);
+                        setters.put(entry.getKey(), new Property(field.getGenericType(), lookup.unreflectSetter(field)));
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void addProperty(final String propertyName) {
+            String oldValue = properties.put(propertyName.toLowerCase(), propertyName);
+            if (oldValue != null && !propertyName.equals(oldValue)) {
+                throw new DatabaseException("Found two getters or fields with conflicting case sensitivity for "
+                        + "property: " + propertyName.toLowerCase());
+            }
+        }
+
+        private Object newInstance() {
+            if (constructor == null) {
+                throw new DatabaseException("Class " + clazz.getName() + " is missing a constructor with no arguments");
+            }
+            try {
+                return (Object) constructor.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable throwable) {
+                throw new RuntimeException(throwable);
+            }
+        }
+
+        private Property property(final String propertyName) {
+            Property property = setters.get(propertyName);
+            if (property == null && throwOnUnknownProperties) {
+                String message = "No setter/field for " + propertyName + " found on class " + clazz.getName();
+                if (properties.containsKey(propertyName.toLowerCase())) {
+                    message += " (fields/setters are case sensitive!)";
+                }
+                throw new DatabaseException(message);
+            }
+            return property;
+        }
+
+        private Type resolveType(final Type type, final Map<TypeVariable<?>, Type> typeMapping) {
+            if (type instanceof TypeVariable) {
+                Type resolvedType = typeMapping.get(type);
+                if (resolvedType == null) {
+                    throw new IllegalStateException("Could not resolve type " + type);
+                }
+                return resolvedType;
+            }
+            return type;
+        }
+
+        Object fromSnapshot(final DataSnapshot dataSnapshot, final Map<TypeVariable<?>, Type> typeMapping) {
+            Iterator<DataSnapshot> iterator = dataSnapshot.getChildren().iterator();
+            DataSnapshot first = iterator.next();
+            if (parseIndex(first.getKey()) >= 0 && arrayLength(children(dataSnapshot)) >= 0) {
+                throw new DatabaseException("Can't convert object of type " + ArrayList.class.getName()
+                        + " to type " + clazz.getName());
+            }
+            Object instance = newInstance();
+            DataSnapshot child = first;
+            while (true) {
+                Property property = property(child.getKey());
+                if (property != null) {
+                    property.set(instance, convertSnapshot(child, resolveType(property.type, typeMapping)));
+                }
+                if (!iterator.hasNext()) {
+                    return instance;
+                }
+                child = iterator.next();
+            }
+        }
+
+        Object fromProjection(final DataSnapshot dataSnapshot) {
+            Object instance = newInstance();
+            for (Map.Entry<String, Property> entry : setters.entrySet()) {
+                DataSnapshot child = dataSnapshot.child(entry.getKey());
+                if (child.exists()) {
+                    Property property = entry.getValue();
+                    property.set(instance, projectSnapshot(child, property.type));
+                }
+            }
+            return instance;
+        }
+
+        Object fromMap(final Map<String, Object> values, final Map<TypeVariable<?>, Type> typeMapping) {
+            Object instance = newInstance();
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                Property property = property(entry.getKey());
+                if (property != null) {
+                    property.set(instance, convertValue(entry.getValue(), resolveType(property.type, typeMapping)));
+                }
+            }
+            return instance;
+        }
+
+        private static boolean shouldIncludeGetter(final Method method) {
+            return (method.getName().startsWith("get") || method.getName().startsWith("is"))
+                    && !method.getDeclaringClass().equals(Object.class)
+                    && Modifier.isPublic(method.getModifiers())
+                    && !Modifier.isStatic(method.getModifiers())
+                    && !method.getReturnType().equals(Void.TYPE)
+                    && method.getParameterTypes().length == 0
+                    && !method.isAnnotationPresent(Exclude.class);
+        }
+
+        private static boolean shouldIncludeSetter(final Method method) {
+            return method.getName().startsWith("set")
+                    && !method.getDeclaringClass().equals(Object.class)
+                    && !Modifier.isStatic(method.getModifiers())
+                    && method.getReturnType().equals(Void.TYPE)
+                    && method.getParameterTypes().length == 1
+                    && !method.isAnnotationPresent(Exclude.class);
+        }
+
+        private static boolean shouldIncludeField(final Field field) {
+            return !field.getDeclaringClass().equals(Object.class)
+                    && Modifier.isPublic(field.getModifiers())
+                    && !Modifier.isStatic(field.getModifiers())
+                    && !Modifier.isTransient(field.getModifiers())
+                    && !field.isAnnotationPresent(Exclude.class);
+        }
+
+        private static boolean isSetterOverride(final Method base, final Method override) {
+            return base.getName().equals(override.getName())
+                    && base.getGenericParameterTypes()[0].equals(override.getGenericParameterTypes()[0]);
+        }
+
+        private static String propertyName(final Field field) {
+            PropertyName annotation = field.getAnnotation(PropertyName.class);
+            return annotation != null ? annotation.value() : field.getName();
+        }
+
+        private static String propertyName(final Method method) {
+            PropertyName annotation = method.getAnnotation(PropertyName.class);
+            return annotation != null ? annotation.value() : serializedName(method.getName());
+        }
+
+        private static String serializedName(final String methodName) {
+            int prefixLength;
+            if (methodName.startsWith("get") || methodName.startsWith("set")) {
+                prefixLength = 3;
+            } else if (methodName.startsWith("is")) {
+                prefixLength = 2;
+            } else {
+                throw new IllegalArgumentException("Unknown Bean prefix for method: " + methodName);
+            }
+            char[] chars = methodName.substring(prefixLength).toCharArray();
+            for (int i = 0; i < chars.length && Character.isUpperCase(chars[i]); i++) {
+                chars[i] = Character.toLowerCase(chars[i]);
+            }
+            return new String(chars);
+        }
+    }
+}
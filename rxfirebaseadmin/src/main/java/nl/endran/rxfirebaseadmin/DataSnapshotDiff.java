@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.snapshot.IndexedNode;
+import com.google.firebase.database.snapshot.NamedNode;
+import com.google.firebase.database.snapshot.Node;
+import com.google.firebase.database.snapshot.NodeUtilities;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Structural diff of two snapshot trees. The SDK builds a new value by copying only the nodes on the changed paths,
+ * so subtrees that did not change are the same instance in both trees and are skipped without being visited.
+ */
+final class DataSnapshotDiff {
+
+    private static final Field NODE_FIELD = nodeField();
+    private static final Constructor<DataSnapshot> SNAPSHOT_CONSTRUCTOR = snapshotConstructor();
+
+    private DataSnapshotDiff() {
+    }
+
+    /**
+     * The snapshot's node tree, or one rebuilt from its value when the SDK internals are not accessible.
+     */
+    static Node nodeOf(final DataSnapshot dataSnapshot) {
+        if (NODE_FIELD != null) {
+            try {
+                IndexedNode indexedNode = (IndexedNode) NODE_FIELD.get(dataSnapshot);
+                if (indexedNode != null) {
+                    return indexedNode.getNode();
+                }
+            } catch (IllegalAccessException ignored) {
+            }
+        }
+        return NodeUtilities.NodeFromJSON(dataSnapshot.getValue());
+    }
+
+    /**
+     * Wraps a node tree in a snapshot. The SDK offers no public way to do this, so it calls its constructor.
+     */
+    static DataSnapshot snapshotOf(final DatabaseReference reference, final Node node) {
+        if (SNAPSHOT_CONSTRUCTOR == null) {
+            throw new IllegalStateException("DataSnapshot constructor is not accessible");
+        }
+        try {
+            return SNAPSHOT_CONSTRUCTOR.newInstance(reference, IndexedNode.from(node));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("DataSnapshot constructor is not accessible", e);
+        }
+    }
+
+    static List<RxFirebasePathChange> diff(final Node before, final Node after) {
+        List<RxFirebasePathChange> changes = new ArrayList<>();
+        diff("", before, after, changes);
+        return changes;
+    }
+
+    private static void diff(final String path, final Node before, final Node after,
+                             final List<RxFirebasePathChange> changes) {
+        if (before == after) {
+            return;
+        }
+        // a subtree that appears or disappears is one change, except at the query location where each child is one
+        boolean root = path.isEmpty();
+        if (before.isEmpty() && (!root || after.isLeafNode())) {
+            changes.add(new RxFirebasePathChange(path, RxFirebasePathChange.Type.ADDED, after.getValue()));
+            return;
+        }
+        if (after.isEmpty() && (!root || before.isLeafNode())) {
+            changes.add(new RxFirebasePathChange(path, RxFirebasePathChange.Type.REMOVED, null));
+            return;
+        }
+        if (before.isLeafNode() || after.isLeafNode()) {
+            if (before.isLeafNode() != after.isLeafNode() || !before.getValue().equals(after.getValue())) {
+                changes.add(new RxFirebasePathChange(path, RxFirebasePathChange.Type.CHANGED, after.getValue()));
+            }
+            return;
+        }
+
+        Iterator<NamedNode> beforeChildren = before.iterator();
+        Iterator<NamedNode> afterChildren = after.iterator();
+        NamedNode beforeChild = next(beforeChildren);
+        NamedNode afterChild = next(afterChildren);
+        while (beforeChild != null || afterChild != null) {
+            int order = beforeChild == null ? 1
+                    : afterChild == null ? -1
+                    : beforeChild.getName().compareTo(afterChild.getName());
+            if (order < 0) {
+                changes.add(new RxFirebasePathChange(childPath(path, beforeChild),
+                        RxFirebasePathChange.Type.REMOVED, null));
+                beforeChild = next(beforeChildren);
+            } else if (order > 0) {
+                changes.add(new RxFirebasePathChange(childPath(path, afterChild),
+                        RxFirebasePathChange.Type.ADDED, afterChild.getNode().getValue()));
+                afterChild = next(afterChildren);
+            } else {
+                diff(childPath(path, afterChild), beforeChild.getNode(), afterChild.getNode(), changes);
+                beforeChild = next(beforeChildren);
+                afterChild = next(afterChildren);
+            }
+        }
+    }
+
+    private static String childPath(final String path, final NamedNode child) {
+        return path.isEmpty() ? child.getName().asString() : path + "/" + child.getName().asString();
+    }
+
+    private static NamedNode next(final Iterator<NamedNode> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    private static Field nodeField() {
+        try {
+            Field field = DataSnapshot.class.getDeclaredField("node");
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Constructor<DataSnapshot> snapshotConstructor() {
+        try {
+            Constructor<DataSnapshot> constructor =
+                    DataSnapshot.class.getDeclaredConstructor(DatabaseReference.class, IndexedNode.class);
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
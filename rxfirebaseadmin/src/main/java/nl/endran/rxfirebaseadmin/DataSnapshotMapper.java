@@ -20,22 +20,64 @@ package nl.endran.rxfirebaseadmin;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.GenericTypeIndicator;
 import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataCastException;
+import nl.endran.rxfirebaseadmin.metrics.RxFirebaseMetrics;
+import rx.Observable;
 import rx.exceptions.Exceptions;
 import rx.functions.Func1;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class DataSnapshotMapper<T, U> implements Func1<T, U> {
 
+    private static volatile RxFirebaseMetrics metrics = RxFirebaseMetrics.NONE;
+
     private DataSnapshotMapper() {
     }
 
+    /**
+     * Installs the metrics that all mappers report their latency, child counts and cast failures to, {@code null}
+     * switches measuring off.
+     */
+    public static void setMetrics(RxFirebaseMetrics metrics) {
+        DataSnapshotMapper.metrics = metrics == null ? RxFirebaseMetrics.NONE : metrics;
+    }
+
+    public static RxFirebaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public final U call(T value) {
+        RxFirebaseMetrics metrics = DataSnapshotMapper.metrics;
+        if (metrics == RxFirebaseMetrics.NONE) {
+            return map(value);
+        }
+        long start = System.nanoTime();
+        try {
+            return map(value);
+        } finally {
+            metrics.onMapping(System.nanoTime() - start);
+        }
+    }
+
+    abstract U map(T value);
+
     public static <U> DataSnapshotMapper<DataSnapshot, U> of(Class<U> clazz) {
         return new TypedDataSnapshotMapper<U>(clazz);
     }
 
+    public static <U> DataSnapshotMapper<DataSnapshot, U> compiled(Class<U> clazz) {
+        return new CompiledDataSnapshotMapper<U>(clazz);
+    }
+
     public static <U> DataSnapshotMapper<DataSnapshot, List<U>> listOf(Class<U> clazz) {
         return new TypedListDataSnapshotMapper<>(clazz);
     }
@@ -44,6 +86,52 @@ public abstract class DataSnapshotMapper<T, U> implements Func1<T, U> {
         return new TypedMapDataSnapshotMapper<>(clazz);
     }
 
+    public static <U> DataSnapshotMapper<DataSnapshot, List<U>> parallelListOf(Class<U> clazz, int parallelThreshold) {
+        return parallelListOf(clazz, parallelThreshold, ForkJoinPool.commonPool());
+    }
+
+    public static <U> DataSnapshotMapper<DataSnapshot, List<U>> parallelListOf(Class<U> clazz, int parallelThreshold,
+                                                                               ForkJoinPool pool) {
+        return new TypedListDataSnapshotMapper<>(clazz, parallelThreshold, pool);
+    }
+
+    public static <U> DataSnapshotMapper<DataSnapshot, LinkedHashMap<String, U>> parallelMapOf(Class<U> clazz,
+                                                                                              int parallelThreshold) {
+        return parallelMapOf(clazz, parallelThreshold, ForkJoinPool.commonPool());
+    }
+
+    public static <U> DataSnapshotMapper<DataSnapshot, LinkedHashMap<String, U>> parallelMapOf(Class<U> clazz,
+                                                                                              int parallelThreshold,
+                                                                                              ForkJoinPool pool) {
+        return new TypedMapDataSnapshotMapper<>(clazz, parallelThreshold, pool);
+    }
+
+    /**
+     * Maps only part of each snapshot: the children at the given slash separated field paths, or when none are
+     * given, the children named after the properties of the class. Nothing else in the snapshot is converted, which
+     * makes a small class a cheap view of records that also carry large nested values.
+     */
+    public static <U> DataSnapshotMapper<DataSnapshot, U> projectionOf(Class<U> clazz, String... fieldPaths) {
+        return new ProjectedDataSnapshotMapper<>(new Projection<>(clazz, fieldPaths));
+    }
+
+    public static <U> DataSnapshotMapper<DataSnapshot, List<U>> listOfProjection(Class<U> clazz, String... fieldPaths) {
+        return new TypedListDataSnapshotMapper<>(clazz, new Projection<>(clazz, fieldPaths));
+    }
+
+    public static <U> DataSnapshotMapper<DataSnapshot, LinkedHashMap<String, U>> mapOfProjection(Class<U> clazz,
+                                                                                                 String... fieldPaths) {
+        return new TypedMapDataSnapshotMapper<>(clazz, new Projection<>(clazz, fieldPaths));
+    }
+
+    public static <U> DataSnapshotMapper<DataSnapshot, Observable<U>> streamOf(Class<U> clazz) {
+        return new TypedStreamDataSnapshotMapper<>(clazz);
+    }
+
+    public static <U> DataSnapshotMapper<DataSnapshot, Observable<Map.Entry<String, U>>> streamEntriesOf(Class<U> clazz) {
+        return new TypedEntryStreamDataSnapshotMapper<>(clazz);
+    }
+
     public static <U> DataSnapshotMapper<DataSnapshot, U> of(GenericTypeIndicator<U> genericTypeIndicator) {
         return new GenericTypedDataSnapshotMapper<U>(genericTypeIndicator);
     }
@@ -52,15 +140,60 @@ public abstract class DataSnapshotMapper<T, U> implements Func1<T, U> {
         return new ChildEventDataSnapshotMapper<U>(clazz);
     }
 
+    public static <U> DataSnapshotMapper<RxFirebaseChildEvent<DataSnapshot>, RxFirebaseChildEvent<U>> ofProjectedChildEvent(
+            Class<U> clazz, String... fieldPaths) {
+        return new ChildEventDataSnapshotMapper<U>(clazz, new Projection<>(clazz, fieldPaths), null);
+    }
+
+    public static <U> DataSnapshotMapper<RxFirebaseChildEventBatch<DataSnapshot>, RxFirebaseChildEventBatch<U>> ofChildEventBatch(
+            Class<U> clazz) {
+        return new ChildEventBatchDataSnapshotMapper<U>(clazz);
+    }
+
+    /**
+     * Child event mapper that writes every result into the same event instance, for a single subscription only.
+     */
+    static <U> DataSnapshotMapper<RxFirebaseChildEvent<DataSnapshot>, RxFirebaseChildEvent<U>> ofPooledChildEvent(Class<U> clazz) {
+        return new ChildEventDataSnapshotMapper<U>(clazz, null, new RxFirebaseChildEvent<U>(null, null, null, null));
+    }
+
+    static int hashCapacity(long size) {
+        return (int) Math.min(Integer.MAX_VALUE, size * 4 / 3 + 1);
+    }
+
+    private static DataSnapshot[] getChildrenArray(DataSnapshot dataSnapshot) {
+        List<DataSnapshot> children = new ArrayList<>((int) dataSnapshot.getChildrenCount());
+        for (DataSnapshot childSnapshot : dataSnapshot.getChildren()) {
+            children.add(childSnapshot);
+        }
+        return children.toArray(new DataSnapshot[children.size()]);
+    }
+
     private static <U> U getDataSnapshotTypedValue(DataSnapshot dataSnapshot, Class<U> clazz) {
         U value = dataSnapshot.getValue(clazz);
         if (value == null) {
-            throw Exceptions.propagate(new RxFirebaseDataCastException(
-                    "unable to cast firebase data response to " + clazz.getSimpleName()));
+            throw castFailure("unable to cast firebase data response to " + clazz.getSimpleName());
         }
         return value;
     }
 
+    private static <U> U getDataSnapshotValue(DataSnapshot dataSnapshot, Class<U> clazz, Projection<U> projection) {
+        return projection != null ? projection.read(dataSnapshot) : getDataSnapshotTypedValue(dataSnapshot, clazz);
+    }
+
+    private static RuntimeException castFailure(String message) {
+        RxFirebaseDataCastException exception = new RxFirebaseDataCastException(message);
+        metrics.onError(exception);
+        return Exceptions.propagate(exception);
+    }
+
+    private static void recordChildCount(long childrenCount) {
+        RxFirebaseMetrics metrics = DataSnapshotMapper.metrics;
+        if (metrics != RxFirebaseMetrics.NONE) {
+            metrics.onSnapshotChildCount(childrenCount);
+        }
+    }
+
     private static class TypedDataSnapshotMapper<U> extends DataSnapshotMapper<DataSnapshot, U> {
 
         private final Class<U> clazz;
@@ -70,7 +203,7 @@ public abstract class DataSnapshotMapper<T, U> implements Func1<T, U> {
         }
 
         @Override
-        public U call(final DataSnapshot dataSnapshot) {
+        U map(final DataSnapshot dataSnapshot) {
             if (dataSnapshot.exists()) {
                 return getDataSnapshotTypedValue(dataSnapshot, clazz);
             } else {
@@ -79,19 +212,64 @@ public abstract class DataSnapshotMapper<T, U> implements Func1<T, U> {
         }
     }
 
+    private static class CompiledDataSnapshotMapper<U> extends DataSnapshotMapper<DataSnapshot, U> {
+
+        private final Class<U> clazz;
+
+        public CompiledDataSnapshotMapper(final Class<U> clazz) {
+            this.clazz = clazz;
+        }
+
+        @Override
+        U map(final DataSnapshot dataSnapshot) {
+            if (dataSnapshot.exists()) {
+                U value = CompiledClassMapper.convert(dataSnapshot, clazz);
+                if (value == null) {
+                    throw castFailure("unable to cast firebase data response to " + clazz.getSimpleName());
+                }
+                return value;
+            } else {
+                return null;
+            }
+        }
+    }
+
     private static class TypedListDataSnapshotMapper<U> extends DataSnapshotMapper<DataSnapshot, List<U>> {
 
         private final Class<U> clazz;
+        private final Projection<U> projection;
+        private final int parallelThreshold;
+        private final ForkJoinPool pool;
 
         public TypedListDataSnapshotMapper(final Class<U> clazz) {
+            this(clazz, Integer.MAX_VALUE, null);
+        }
+
+        public TypedListDataSnapshotMapper(final Class<U> clazz, final Projection<U> projection) {
             this.clazz = clazz;
+            this.projection = projection;
+            this.parallelThreshold = Integer.MAX_VALUE;
+            this.pool = null;
+        }
+
+        public TypedListDataSnapshotMapper(final Class<U> clazz, final int parallelThreshold, final ForkJoinPool pool) {
+            this.clazz = clazz;
+            this.projection = null;
+            this.parallelThreshold = parallelThreshold;
+            this.pool = pool;
         }
 
         @Override
-        public List<U> call(final DataSnapshot dataSnapshot) {
-            List<U> items = new ArrayList<>();
+        List<U> map(final DataSnapshot dataSnapshot) {
+            long childrenCount = dataSnapshot.getChildrenCount();
+            recordChildCount(childrenCount);
+            if (pool != null && childrenCount >= parallelThreshold) {
+                DataSnapshot[] children = getChildrenArray(dataSnapshot);
+                return new ArrayList<>(Arrays.asList(ParallelChildMapping.map(pool, children, clazz)));
+            }
+            List<U> items = new ArrayList<>((int) childrenCount);
             for (DataSnapshot childSnapshot : dataSnapshot.getChildren()) {
-                items.add(getDataSnapshotTypedValue(childSnapshot, clazz));
+                items.add(getDataSnapshotValue(childSnapshot, clazz, projection));
             }
             return items;
         }
@@ -100,21 +278,208 @@ public abstract class DataSnapshotMapper<T, U> implements Func1<T, U> {
     private static class TypedMapDataSnapshotMapper<U> extends DataSnapshotMapper<DataSnapshot, LinkedHashMap<String, U>> {
 
         private final Class<U> clazz;
+        private final Projection<U> projection;
+        private final int parallelThreshold;
+        private final ForkJoinPool pool;
 
         public TypedMapDataSnapshotMapper(final Class<U> clazz) {
+            this(clazz, Integer.MAX_VALUE, null);
+        }
+
+        public TypedMapDataSnapshotMapper(final Class<U> clazz, final Projection<U> projection) {
+            this.clazz = clazz;
+            this.projection = projection;
+            this.parallelThreshold = Integer.MAX_VALUE;
+            this.pool = null;
+        }
+
+        public TypedMapDataSnapshotMapper(final Class<U> clazz, final int parallelThreshold, final ForkJoinPool pool) {
             this.clazz = clazz;
+            this.projection = null;
+            this.parallelThreshold = parallelThreshold;
+            this.pool = pool;
         }
 
         @Override
-        public LinkedHashMap<String, U> call(final DataSnapshot dataSnapshot) {
-            LinkedHashMap<String, U> items = new LinkedHashMap<>();
+        LinkedHashMap<String, U> map(final DataSnapshot dataSnapshot) {
+            long childrenCount = dataSnapshot.getChildrenCount();
+            recordChildCount(childrenCount);
+            LinkedHashMap<String, U> items = new LinkedHashMap<>(hashCapacity(childrenCount));
+            if (pool != null && childrenCount >= parallelThreshold) {
+                DataSnapshot[] children = getChildrenArray(dataSnapshot);
+                U[] values = ParallelChildMapping.map(pool, children, clazz);
+                for (int i = 0; i < children.length; i++) {
+                    items.put(children[i].getKey(), values[i]);
+                }
+                return items;
+            }
             for (DataSnapshot childSnapshot : dataSnapshot.getChildren()) {
-                items.put(childSnapshot.getKey(), getDataSnapshotTypedValue(childSnapshot, clazz));
+                items.put(childSnapshot.getKey(), getDataSnapshotValue(childSnapshot, clazz, projection));
             }
             return items;
         }
     }
 
+    private static class TypedStreamDataSnapshotMapper<U> extends DataSnapshotMapper<DataSnapshot, Observable<U>> {
+
+        private final Class<U> clazz;
+
+        public TypedStreamDataSnapshotMapper(final Class<U> clazz) {
+            this.clazz = clazz;
+        }
+
+        @Override
+        Observable<U> map(final DataSnapshot dataSnapshot) {
+            return Observable.from(dataSnapshot.getChildren()).map(new Func1<DataSnapshot, U>() {
+                @Override
+                public U call(DataSnapshot childSnapshot) {
+                    return getDataSnapshotTypedValue(childSnapshot, clazz);
+                }
+            });
+        }
+    }
+
+    private static class TypedEntryStreamDataSnapshotMapper<U>
+            extends DataSnapshotMapper<DataSnapshot, Observable<Map.Entry<String, U>>> {
+
+        private final Class<U> clazz;
+
+        public TypedEntryStreamDataSnapshotMapper(final Class<U> clazz) {
+            this.clazz = clazz;
+        }
+
+        @Override
+        Observable<Map.Entry<String, U>> map(final DataSnapshot dataSnapshot) {
+            return Observable.from(dataSnapshot.getChildren()).map(new Func1<DataSnapshot, Map.Entry<String, U>>() {
+                @Override
+                public Map.Entry<String, U> call(DataSnapshot childSnapshot) {
+                    return new AbstractMap.SimpleImmutableEntry<>(childSnapshot.getKey(),
+                            getDataSnapshotTypedValue(childSnapshot, clazz));
+                }
+            });
+        }
+    }
+
+    /**
+     * Maps children on a fork-join pool into an array, so Firebase child order is kept. When children fail, the
+     * error of the first failing child in order is rethrown, just like the sequential mappers would.
+     */
+    private static class ParallelChildMapping<U> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int MIN_BATCH_SIZE = 64;
+
+        private final DataSnapshot[] children;
+        private final Class<U> clazz;
+        private final U[] values;
+        private final int from;
+        private final int to;
+        private final int batchSize;
+        private final AtomicInteger failedIndex;
+        private final RuntimeException[] failure;
+
+        private ParallelChildMapping(final DataSnapshot[] children, final Class<U> clazz, final U[] values,
+                                     final int from, final int to, final int batchSize,
+                                     final AtomicInteger failedIndex, final RuntimeException[] failure) {
+            this.children = children;
+            this.clazz = clazz;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.batchSize = batchSize;
+            this.failedIndex = failedIndex;
+            this.failure = failure;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <U> U[] map(final ForkJoinPool pool, final DataSnapshot[] children, final Class<U> clazz) {
+            U[] values = (U[]) new Object[children.length];
+            int batchSize = Math.max(MIN_BATCH_SIZE, children.length / (pool.getParallelism() * 4));
+            AtomicInteger failedIndex = new AtomicInteger(Integer.MAX_VALUE);
+            RuntimeException[] failure = new RuntimeException[1];
+            pool.invoke(new ParallelChildMapping<>(children, clazz, values, 0, children.length, batchSize,
+                    failedIndex, failure));
+            if (failedIndex.get() != Integer.MAX_VALUE) {
+                throw failure[0];
+            }
+            return values;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > batchSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParallelChildMapping<>(children, clazz, values, from, middle, batchSize, failedIndex, failure),
+                        new ParallelChildMapping<>(children, clazz, values, middle, to, batchSize, failedIndex, failure));
+                return;
+            }
+            for (int i = from; i < to && i < failedIndex.get(); i++) {
+                try {
+                    values[i] = getDataSnapshotTypedValue(children[i], clazz);
+                } catch (RuntimeException e) {
+                    fail(i, e);
+                    return;
+                }
+            }
+        }
+
+        private void fail(final int index, final RuntimeException e) {
+            synchronized (failure) {
+                if (index < failedIndex.get()) {
+                    failure[0] = e;
+                    failedIndex.set(index);
+                }
+            }
+        }
+    }
+
+    private static class Projection<U> {
+
+        private final Class<U> clazz;
+        private final List<String> fieldPaths;
+
+        Projection(final Class<U> clazz, final String... fieldPaths) {
+            this.clazz = clazz;
+            this.fieldPaths = new ArrayList<>(fieldPaths.length);
+            for (String fieldPath : fieldPaths) {
+                String trimmed = fieldPath.replaceAll("^/+|/+$", "");
+                if (trimmed.isEmpty()) {
+                    throw new IllegalArgumentException("empty field path");
+                }
+                this.fieldPaths.add(trimmed);
+            }
+        }
+
+        U read(final DataSnapshot dataSnapshot) {
+            U value = fieldPaths.isEmpty()
+                    ? CompiledClassMapper.project(dataSnapshot, clazz)
+                    : CompiledClassMapper.project(dataSnapshot, fieldPaths, clazz);
+            if (value == null) {
+                throw castFailure("unable to cast firebase data response to " + clazz.getSimpleName());
+            }
+            return value;
+        }
+    }
+
+    private static class ProjectedDataSnapshotMapper<U> extends DataSnapshotMapper<DataSnapshot, U> {
+
+        private final Projection<U> projection;
+
+        public ProjectedDataSnapshotMapper(final Projection<U> projection) {
+            this.projection = projection;
+        }
+
+        @Override
+        U map(final DataSnapshot dataSnapshot) {
+            if (dataSnapshot.exists()) {
+                return projection.read(dataSnapshot);
+            } else {
+                return null;
+            }
+        }
+    }
+
     private static class GenericTypedDataSnapshotMapper<U> extends DataSnapshotMapper<DataSnapshot, U> {
 
         private final GenericTypeIndicator<U> genericTypeIndicator;
@@ -124,12 +489,11 @@ public abstract class DataSnapshotMapper<T, U> implements Func1<T, U> {
         }
 
         @Override
-        public U call(DataSnapshot dataSnapshot) {
+        U map(DataSnapshot dataSnapshot) {
             if (dataSnapshot.exists()) {
                 U value = dataSnapshot.getValue(genericTypeIndicator);
                 if (value == null) {
-                    throw Exceptions.propagate(new RxFirebaseDataCastException(
-                            "unable to cast firebase data response to generic type"));
+                    throw castFailure("unable to cast firebase data response to generic type");
                 }
                 return value;
             } else {
@@ -142,18 +506,33 @@ public abstract class DataSnapshotMapper<T, U> implements Func1<T, U> {
             extends DataSnapshotMapper<RxFirebaseChildEvent<DataSnapshot>, RxFirebaseChildEvent<U>> {
 
         private final Class<U> clazz;
+        private final Projection<U> projection;
+        private final RxFirebaseChildEvent<U> pooledEvent;
 
         public ChildEventDataSnapshotMapper(final Class<U> clazz) {
+            this(clazz, null, null);
+        }
+
+        public ChildEventDataSnapshotMapper(final Class<U> clazz, final Projection<U> projection,
+                                            final RxFirebaseChildEvent<U> pooledEvent) {
             this.clazz = clazz;
+            this.projection = projection;
+            this.pooledEvent = pooledEvent;
         }
 
         @Override
-        public RxFirebaseChildEvent<U> call(final RxFirebaseChildEvent<DataSnapshot> rxFirebaseChildEvent) {
+        RxFirebaseChildEvent<U> map(final RxFirebaseChildEvent<DataSnapshot> rxFirebaseChildEvent) {
             DataSnapshot dataSnapshot = rxFirebaseChildEvent.getValue();
-            if (dataSnapshot.exists()) {
+            if (dataSnapshot.exists() && pooledEvent != null) {
+                return pooledEvent.reset(
+                        dataSnapshot.getKey(),
+                        getDataSnapshotValue(dataSnapshot, clazz, projection),
+                        rxFirebaseChildEvent.getPreviousChildName(),
+                        rxFirebaseChildEvent.getEventType());
+            } else if (dataSnapshot.exists()) {
                 return new RxFirebaseChildEvent<U>(
                         dataSnapshot.getKey(),
-                        getDataSnapshotTypedValue(dataSnapshot, clazz),
+                        getDataSnapshotValue(dataSnapshot, clazz, projection),
                         rxFirebaseChildEvent.getPreviousChildName(),
                         rxFirebaseChildEvent.getEventType());
             } else {
@@ -161,4 +540,23 @@ public abstract class DataSnapshotMapper<T, U> implements Func1<T, U> {
             }
         }
     }
+
+    private static class ChildEventBatchDataSnapshotMapper<U>
+            extends DataSnapshotMapper<RxFirebaseChildEventBatch<DataSnapshot>, RxFirebaseChildEventBatch<U>> {
+
+        private final ChildEventDataSnapshotMapper<U> eventMapper;
+
+        public ChildEventBatchDataSnapshotMapper(final Class<U> clazz) {
+            this.eventMapper = new ChildEventDataSnapshotMapper<U>(clazz);
+        }
+
+        @Override
+        RxFirebaseChildEventBatch<U> map(final RxFirebaseChildEventBatch<DataSnapshot> batch) {
+            List<RxFirebaseChildEvent<U>> events = new ArrayList<>(batch.size());
+            for (RxFirebaseChildEvent<DataSnapshot> event : batch.getEvents()) {
+                events.add(eventMapper.map(event));
+            }
+            return new RxFirebaseChildEventBatch<>(events, batch.getReceivedCount(), batch.getByteEstimate());
+        }
+    }
 }
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.Query;
+import rx.Completable;
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Func1;
+import rx.subjects.AsyncSubject;
+import rx.subscriptions.CompositeSubscription;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory copy of the children of a query, kept up to date from its child events. Point lookups read a concurrent
+ * map without locking, {@link #snapshot()} returns an immutable copy in query order that is reused until the next
+ * change. {@link ViewIndex Secondary indexes} on fields of the values are updated with every change.
+ * <p>
+ * The initial load is complete once a single value event on the same query has fired, which Firebase raises after
+ * the child events of the initial data.
+ */
+public class MaterializedView<T> implements Subscription {
+
+    private final ConcurrentHashMap<String, Entry<T>> entries = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final AsyncSubject<Boolean> loaded = AsyncSubject.create();
+    private final CompositeSubscription subscriptions = new CompositeSubscription();
+    private final List<ViewIndex<T>> indexes = new CopyOnWriteArrayList<>();
+
+    private Entry<T> head;
+    private Entry<T> tail;
+    private volatile Map<String, T> snapshot;
+    private volatile boolean isLoaded;
+    private volatile Throwable error;
+
+    MaterializedView(final Observable<RxFirebaseChildEvent<T>> childEvents, final Observable<?> initialLoad) {
+        subscriptions.add(childEvents.subscribe(new Subscriber<RxFirebaseChildEvent<T>>() {
+            @Override
+            public void onNext(RxFirebaseChildEvent<T> event) {
+                apply(event);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                fail(e);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        }));
+        subscriptions.add(initialLoad.subscribe(new Subscriber<Object>() {
+            @Override
+            public void onNext(Object value) {
+                isLoaded = true;
+                loaded.onNext(true);
+                loaded.onCompleted();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                fail(e);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        }));
+    }
+
+    public static <T> MaterializedView<T> of(final Query query, final Class<T> clazz) {
+        return new MaterializedView<>(RxFirebaseDatabase.observeChildEvent(query, clazz),
+                RxFirebaseDatabase.observeSingleValueEvent(query));
+    }
+
+    public T get(final String key) {
+        Entry<T> entry = entries.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    public boolean containsKey(final String key) {
+        return entries.containsKey(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Consistent copy of all children in query order.
+     */
+    public Map<String, T> snapshot() {
+        Map<String, T> current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (writeLock) {
+            if (snapshot == null) {
+                LinkedHashMap<String, T> copy = new LinkedHashMap<>(DataSnapshotMapper.hashCapacity(entries.size()));
+                for (Entry<T> entry = head; entry != null; entry = entry.next) {
+                    copy.put(entry.key, entry.value);
+                }
+                snapshot = Collections.unmodifiableMap(copy);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Indexes the named public field or getter of the values for equality lookups.
+     */
+    public ViewIndex.Hash<T> addHashIndex(final String property) {
+        return addHashIndex(property, ViewIndex.<T>property(property));
+    }
+
+    public ViewIndex.Hash<T> addHashIndex(final String name, final Func1<? super T, ?> extractor) {
+        return addIndex(new ViewIndex.Hash<T>(name, extractor));
+    }
+
+    /**
+     * Indexes the named public field or getter of the values for range lookups, the field must be
+     * {@link Comparable}.
+     */
+    public ViewIndex.Sorted<T> addSortedIndex(final String property) {
+        return addSortedIndex(property, ViewIndex.<T>property(property));
+    }
+
+    public ViewIndex.Sorted<T> addSortedIndex(final String name, final Func1<? super T, ?> extractor) {
+        return addIndex(new ViewIndex.Sorted<T>(name, extractor));
+    }
+
+    /**
+     * Children whose keys are in every given set, in the order of the smallest set.
+     */
+    @SafeVarargs
+    public final Map<String, T> find(final Set<String>... keySets) {
+        if (keySets.length == 0) {
+            return snapshot();
+        }
+        Set<String> smallest = keySets[0];
+        for (Set<String> keys : keySets) {
+            if (keys.size() < smallest.size()) {
+                smallest = keys;
+            }
+        }
+        LinkedHashMap<String, T> result = new LinkedHashMap<>();
+        candidates:
+        for (String key : smallest) {
+            for (Set<String> keys : keySets) {
+                if (keys != smallest && !keys.contains(key)) {
+                    continue candidates;
+                }
+            }
+            Entry<T> entry = entries.get(key);
+            if (entry != null) {
+                result.put(key, entry.value);
+            }
+        }
+        return result;
+    }
+
+    private <I extends ViewIndex<T>> I addIndex(final I index) {
+        synchronized (writeLock) {
+            for (Entry<T> entry = head; entry != null; entry = entry.next) {
+                index.update(entry.key, null, entry.value);
+            }
+            indexes.add(index);
+        }
+        return index;
+    }
+
+    public boolean isLoaded() {
+        return isLoaded;
+    }
+
+    /**
+     * Completes once the initial load is in the view, or fails when the listener is cancelled.
+     */
+    public Completable loaded() {
+        return loaded.toCompletable();
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public void unsubscribe() {
+        subscriptions.unsubscribe();
+    }
+
+    @Override
+    public boolean isUnsubscribed() {
+        return subscriptions.isUnsubscribed();
+    }
+
+    private void fail(final Throwable e) {
+        error = e;
+        loaded.onError(e);
+    }
+
+    private void apply(final RxFirebaseChildEvent<T> event) {
+        synchronized (writeLock) {
+            String key = event.getKey();
+            Entry<T> entry = entries.get(key);
+            T oldValue = entry != null ? entry.value : null;
+            switch (event.getEventType()) {
+                case ADDED:
+                    if (entry != null) {
+                        unlink(entry);
+                    }
+                    entry = new Entry<>(key, event.getValue());
+                    linkAfter(entry, event.getPreviousChildName());
+                    entries.put(key, entry);
+                    break;
+                case CHANGED:
+                    if (entry == null) {
+                        entry = new Entry<>(key, event.getValue());
+                        linkAfter(entry, event.getPreviousChildName());
+                        entries.put(key, entry);
+                    } else {
+                        entry.value = event.getValue();
+                    }
+                    break;
+                case REMOVED:
+                    if (entry != null) {
+                        unlink(entry);
+                        entries.remove(key);
+                    }
+                    break;
+                case MOVED:
+                    if (entry != null) {
+                        unlink(entry);
+                        entry.value = event.getValue();
+                        linkAfter(entry, event.getPreviousChildName());
+                    }
+                    break;
+            }
+            if (!indexes.isEmpty()) {
+                T newValue = get(key);
+                for (ViewIndex<T> index : indexes) {
+                    index.update(key, oldValue, newValue);
+                }
+            }
+            snapshot = null;
+        }
+    }
+
+    private void linkAfter(final Entry<T> entry, final String previousChildName) {
+        Entry<T> previous = null;
+        if (previousChildName != null) {
+            Entry<T> known = entries.get(previousChildName);
+            previous = known != null ? known : tail;
+        }
+        Entry<T> next = previous != null ? previous.next : head;
+        entry.previous = previous;
+        entry.next = next;
+        if (previous != null) {
+            previous.next = entry;
+        } else {
+            head = entry;
+        }
+        if (next != null) {
+            next.previous = entry;
+        } else {
+            tail = entry;
+        }
+    }
+
+    private void unlink(final Entry<T> entry) {
+        if (entry.previous != null) {
+            entry.previous.next = entry.next;
+        } else {
+            head = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        } else {
+            tail = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    private static class Entry<T> {
+
+        private final String key;
+        private volatile T value;
+        private Entry<T> previous;
+        private Entry<T> next;
+
+        Entry(final String key, final T value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
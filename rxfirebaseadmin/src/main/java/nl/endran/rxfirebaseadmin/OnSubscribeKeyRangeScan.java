@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+import rx.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads a node page by page with {@code orderByKey().startAt(lastKey).limitToFirst(pageSize + 1)}, fetching only when
+ * downstream demand plus the prefetch is not covered yet. At most one page read is in flight at a time.
+ */
+class OnSubscribeKeyRangeScan<T> implements Observable.OnSubscribe<T> {
+
+    private final DatabaseReference reference;
+    private final int pageSize;
+    private final int prefetchPages;
+    private final String resumeAfterKey;
+    private final boolean emitPages;
+
+    private OnSubscribeKeyRangeScan(final DatabaseReference reference, final int pageSize, final int prefetchPages,
+                                    final String resumeAfterKey, final boolean emitPages) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize > 0 required but it was " + pageSize);
+        }
+        if (prefetchPages < 0) {
+            throw new IllegalArgumentException("prefetchPages >= 0 required but it was " + prefetchPages);
+        }
+        this.reference = reference;
+        this.pageSize = pageSize;
+        this.prefetchPages = prefetchPages;
+        this.resumeAfterKey = resumeAfterKey;
+        this.emitPages = emitPages;
+    }
+
+    static OnSubscribeKeyRangeScan<DataSnapshot> children(final DatabaseReference reference, final int pageSize,
+                                                          final int prefetchPages, final String resumeAfterKey) {
+        return new OnSubscribeKeyRangeScan<>(reference, pageSize, prefetchPages, resumeAfterKey, false);
+    }
+
+    static OnSubscribeKeyRangeScan<List<DataSnapshot>> pages(final DatabaseReference reference, final int pageSize,
+                                                             final int prefetchPages, final String resumeAfterKey) {
+        return new OnSubscribeKeyRangeScan<>(reference, pageSize, prefetchPages, resumeAfterKey, true);
+    }
+
+    @Override
+    public void call(final Subscriber<? super T> subscriber) {
+        ScanProducer producer = new ScanProducer(subscriber);
+        subscriber.add(producer);
+        subscriber.setProducer(producer);
+    }
+
+    private class ScanProducer implements Producer, Subscription {
+
+        private final Subscriber<? super T> child;
+        private final ArrayDeque<Object> queue = new ArrayDeque<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final long prefetchUnits;
+
+        private String lastKey = resumeAfterKey;
+        private volatile boolean fetching;
+        private volatile boolean exhausted;
+        private volatile boolean unsubscribed;
+        private Throwable error;
+
+        ScanProducer(final Subscriber<? super T> child) {
+            this.child = child;
+            this.prefetchUnits = emitPages ? prefetchPages : (long) prefetchPages * pageSize;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n < 0L) {
+                throw new IllegalArgumentException("n >= 0 required but it was " + n);
+            }
+            if (n > 0L) {
+                RxFirebaseBackpressure.addCap(requested, n);
+                drain();
+            }
+        }
+
+        @Override
+        public void unsubscribe() {
+            unsubscribed = true;
+            drain();
+        }
+
+        @Override
+        public boolean isUnsubscribed() {
+            return unsubscribed;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                if (unsubscribed) {
+                    synchronized (queue) {
+                        queue.clear();
+                    }
+                    return;
+                }
+
+                long r = requested.get();
+                long e = 0L;
+                while (e != r) {
+                    Object value;
+                    synchronized (queue) {
+                        value = queue.poll();
+                    }
+                    if (value == null) {
+                        break;
+                    }
+                    child.onNext((T) value);
+                    if (unsubscribed) {
+                        return;
+                    }
+                    e++;
+                }
+                if (e != 0L) {
+                    r = RxFirebaseBackpressure.produced(requested, e);
+                }
+
+                int buffered;
+                synchronized (queue) {
+                    buffered = queue.size();
+                }
+                if (buffered == 0 && !fetching && exhausted) {
+                    if (error != null) {
+                        child.onError(error);
+                    } else {
+                        child.onCompleted();
+                    }
+                    return;
+                }
+                if (!fetching && !exhausted && buffered < Math.min(r, Integer.MAX_VALUE) + prefetchUnits) {
+                    fetch();
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void fetch() {
+            fetching = true;
+            final String startKey = lastKey;
+            Query query = startKey == null
+                    ? reference.orderByKey().limitToFirst(pageSize)
+                    : reference.orderByKey().startAt(startKey).limitToFirst(pageSize + 1);
+            query.addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(DataSnapshot dataSnapshot) {
+                    List<DataSnapshot> page = new ArrayList<>(pageSize);
+                    for (DataSnapshot childSnapshot : dataSnapshot.getChildren()) {
+                        if (startKey == null || !startKey.equals(childSnapshot.getKey())) {
+                            page.add(childSnapshot);
+                        }
+                    }
+                    if (!page.isEmpty()) {
+                        lastKey = page.get(page.size() - 1).getKey();
+                        synchronized (queue) {
+                            if (emitPages) {
+                                queue.offer(page);
+                            } else {
+                                queue.addAll(page);
+                            }
+                        }
+                    }
+                    if (page.size() < pageSize) {
+                        exhausted = true;
+                    }
+                    fetching = false;
+                    drain();
+                }
+
+                @Override
+                public void onCancelled(DatabaseError databaseError) {
+                    error = new RxFirebaseDataException(databaseError);
+                    exhausted = true;
+                    fetching = false;
+                    drain();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.Query;
+import com.google.firebase.database.core.view.QuerySpec;
+
+/**
+ * Identifies a query by database and spec, so two {@link Query} instances for the same path and parameters are equal.
+ * Queries without a spec are compared by identity.
+ */
+final class QueryKey {
+
+    private final Object repo;
+    private final Object spec;
+
+    private QueryKey(final Object repo, final Object spec) {
+        this.repo = repo;
+        this.spec = spec;
+    }
+
+    static QueryKey of(final Query query) {
+        QuerySpec spec = query.getSpec();
+        if (spec == null) {
+            return new QueryKey(null, query);
+        }
+        return new QueryKey(query.getRepo(), spec);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        QueryKey that = (QueryKey) o;
+
+        if (repo != that.repo) return false;
+        return spec.equals(that.spec);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = repo != null ? System.identityHashCode(repo) : 0;
+        result = 31 * result + spec.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(spec);
+    }
+}
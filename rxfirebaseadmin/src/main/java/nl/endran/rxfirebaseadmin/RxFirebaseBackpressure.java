@@ -0,0 +1,325 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+import rx.exceptions.MissingBackpressureException;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded buffer between a Firebase listener and a downstream that honours {@code request(n)}. One instance can be
+ * shared by several streams, the counters are then aggregated over all of them.
+ */
+public class RxFirebaseBackpressure {
+
+    private static final Object NULL_VALUE = new Object();
+
+    private final Strategy strategy;
+    private final int capacity;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong bufferedCount = new AtomicLong();
+
+    private RxFirebaseBackpressure(final Strategy strategy, final int capacity) {
+        if (strategy == null) {
+            throw new NullPointerException("strategy == null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity > 0 required but it was " + capacity);
+        }
+        this.strategy = strategy;
+        this.capacity = capacity;
+    }
+
+    public static RxFirebaseBackpressure of(final Strategy strategy, final int capacity) {
+        return new RxFirebaseBackpressure(strategy, capacity);
+    }
+
+    public static RxFirebaseBackpressure buffer(final int capacity) {
+        return new RxFirebaseBackpressure(Strategy.BUFFER, capacity);
+    }
+
+    public static RxFirebaseBackpressure dropOldest(final int capacity) {
+        return new RxFirebaseBackpressure(Strategy.DROP_OLDEST, capacity);
+    }
+
+    public static RxFirebaseBackpressure latest(final int capacity) {
+        return new RxFirebaseBackpressure(Strategy.LATEST, capacity);
+    }
+
+    public static RxFirebaseBackpressure error(final int capacity) {
+        return new RxFirebaseBackpressure(Strategy.ERROR, capacity);
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Total number of events that were discarded because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Number of events currently waiting in the buffer for downstream demand.
+     */
+    public long getBufferedCount() {
+        return bufferedCount.get();
+    }
+
+    <T> Observable.Operator<T, T> operator() {
+        return new Observable.Operator<T, T>() {
+            @Override
+            public Subscriber<? super T> call(final Subscriber<? super T> child) {
+                final OverflowSubscriber<T> parent = new OverflowSubscriber<T>(child, RxFirebaseBackpressure.this);
+                child.add(parent);
+                child.setProducer(parent.producer);
+                return parent;
+            }
+        };
+    }
+
+    static long addCap(final AtomicLong requested, final long n) {
+        while (true) {
+            long current = requested.get();
+            if (current == Long.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+            long next = current + n;
+            if (next < 0L) {
+                next = Long.MAX_VALUE;
+            }
+            if (requested.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    static long produced(final AtomicLong requested, final long n) {
+        while (true) {
+            long current = requested.get();
+            if (current == Long.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+            long next = current - n;
+            if (requested.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    public enum Strategy {
+        /**
+         * Keep the oldest events, drop new events while the buffer is full.
+         */
+        BUFFER,
+        /**
+         * Evict the oldest buffered event to make room for a new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Replace the newest buffered event, so the latest event always wins.
+         */
+        LATEST,
+        /**
+         * Terminate the stream with a {@link MissingBackpressureException}.
+         */
+        ERROR
+    }
+
+    private static class OverflowSubscriber<T> extends Subscriber<T> {
+
+        private final Subscriber<? super T> child;
+        private final RxFirebaseBackpressure backpressure;
+        private final ArrayDeque<Object> queue = new ArrayDeque<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private final Producer producer = new Producer() {
+            @Override
+            public void request(final long n) {
+                if (n < 0L) {
+                    throw new IllegalArgumentException("n >= 0 required but it was " + n);
+                }
+                if (n > 0L) {
+                    addCap(requested, n);
+                    drain();
+                }
+            }
+        };
+
+        private volatile boolean done;
+        private Throwable error;
+        private boolean overflowed;
+
+        OverflowSubscriber(final Subscriber<? super T> child, final RxFirebaseBackpressure backpressure) {
+            this.child = child;
+            this.backpressure = backpressure;
+        }
+
+        @Override
+        public void onStart() {
+            request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(final T t) {
+            if (done) {
+                return;
+            }
+            Object value = t != null ? t : NULL_VALUE;
+            synchronized (queue) {
+                if (queue.size() < backpressure.capacity) {
+                    queue.offer(value);
+                    backpressure.bufferedCount.incrementAndGet();
+                } else {
+                    switch (backpressure.strategy) {
+                        case BUFFER:
+                            backpressure.droppedCount.incrementAndGet();
+                            break;
+                        case DROP_OLDEST:
+                            queue.poll();
+                            queue.offer(value);
+                            backpressure.droppedCount.incrementAndGet();
+                            break;
+                        case LATEST:
+                            queue.pollLast();
+                            queue.offer(value);
+                            backpressure.droppedCount.incrementAndGet();
+                            break;
+                        case ERROR:
+                            overflowed = true;
+                            break;
+                    }
+                }
+            }
+            if (overflowed) {
+                unsubscribe();
+                onError(new MissingBackpressureException(
+                        "Overflowed buffer of " + backpressure.capacity + " firebase events"));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+            if (done) {
+                return;
+            }
+            error = e;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onCompleted() {
+            if (done) {
+                return;
+            }
+            done = true;
+            drain();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                long r = requested.get();
+                long e = 0L;
+
+                while (e != r) {
+                    boolean d = done;
+                    Object value;
+                    synchronized (queue) {
+                        value = queue.poll();
+                    }
+                    boolean empty = value == null;
+                    if (!empty) {
+                        backpressure.bufferedCount.decrementAndGet();
+                    }
+                    if (checkTerminated(d, empty)) {
+                        return;
+                    }
+                    if (empty) {
+                        break;
+                    }
+                    child.onNext(value == NULL_VALUE ? null : (T) value);
+                    e++;
+                }
+
+                if (e == r) {
+                    boolean empty;
+                    synchronized (queue) {
+                        empty = queue.isEmpty();
+                    }
+                    if (checkTerminated(done, empty)) {
+                        return;
+                    }
+                }
+
+                if (e != 0L) {
+                    produced(requested, e);
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private boolean checkTerminated(final boolean d, final boolean empty) {
+            if (child.isUnsubscribed()) {
+                clear();
+                return true;
+            }
+            if (d) {
+                if (error != null && (overflowed || empty)) {
+                    clear();
+                    child.onError(error);
+                    return true;
+                }
+                if (empty) {
+                    child.onCompleted();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void clear() {
+            synchronized (queue) {
+                backpressure.bufferedCount.addAndGet(-queue.size());
+                queue.clear();
+            }
+        }
+    }
+}
@@ -42,6 +42,18 @@ public class RxFirebaseChildEvent<T> {
     }
 
 
+    /**
+     * Overwrites this event, used by the pooled child event streams that emit one instance per subscription.
+     */
+    RxFirebaseChildEvent<T> reset(String key, T value, String previousChildName, EventType eventType) {
+        this.key = key;
+        this.value = value;
+        this.previousChildName = previousChildName;
+        this.eventType = eventType;
+        return this;
+    }
+
+
     public String getKey() {
         return key;
     }
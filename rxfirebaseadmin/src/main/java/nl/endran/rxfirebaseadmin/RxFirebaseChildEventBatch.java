@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Child events collected by {@link RxFirebaseChildEventBatcher}, holding only the last event of every key, at the
+ * position of the key's first event. A sink can apply a batch as one bulk upsert of {@link #getUpserts()} and one
+ * bulk delete of {@link #getRemovedKeys()}.
+ */
+public class RxFirebaseChildEventBatch<T> {
+
+    private final List<RxFirebaseChildEvent<T>> events;
+    private final int receivedCount;
+    private final long byteEstimate;
+
+    public RxFirebaseChildEventBatch(List<RxFirebaseChildEvent<T>> events, int receivedCount, long byteEstimate) {
+        this.events = events;
+        this.receivedCount = receivedCount;
+        this.byteEstimate = byteEstimate;
+    }
+
+
+    /**
+     * The last event of every key in the batch.
+     */
+    public List<RxFirebaseChildEvent<T>> getEvents() {
+        return events;
+    }
+
+
+    /**
+     * Values of the keys whose last event was not a removal.
+     */
+    public LinkedHashMap<String, T> getUpserts() {
+        LinkedHashMap<String, T> upserts = new LinkedHashMap<>(DataSnapshotMapper.hashCapacity(events.size()));
+        for (RxFirebaseChildEvent<T> event : events) {
+            if (event.getEventType() != RxFirebaseChildEvent.EventType.REMOVED) {
+                upserts.put(event.getKey(), event.getValue());
+            }
+        }
+        return upserts;
+    }
+
+
+    public List<String> getRemovedKeys() {
+        List<String> keys = new ArrayList<>();
+        for (RxFirebaseChildEvent<T> event : events) {
+            if (event.getEventType() == RxFirebaseChildEvent.EventType.REMOVED) {
+                keys.add(event.getKey());
+            }
+        }
+        return keys;
+    }
+
+
+    public int size() {
+        return events.size();
+    }
+
+
+    /**
+     * Number of events that went into the batch before they were reduced to one per key.
+     */
+    public int getReceivedCount() {
+        return receivedCount;
+    }
+
+
+    /**
+     * Estimated serialized size of the events in the batch, in bytes.
+     */
+    public long getByteEstimate() {
+        return byteEstimate;
+    }
+}
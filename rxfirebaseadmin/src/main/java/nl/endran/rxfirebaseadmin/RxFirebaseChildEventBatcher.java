@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.utilities.NodeSizeEstimator;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects child events into {@link RxFirebaseChildEventBatch}es for sinks that write in bulk, for use with
+ * {@code lift}. A batch keeps only the last event of every key and is emitted as soon as it holds {@code maxEvents}
+ * keys, its events are estimated at {@code maxBytes} or more, or {@code maxLatency} has passed since its first
+ * event, whichever comes first. A terminal event emits the open batch first.
+ */
+public final class RxFirebaseChildEventBatcher {
+
+    private static final Func1<RxFirebaseChildEvent<DataSnapshot>, Long> SNAPSHOT_SIZE =
+            new Func1<RxFirebaseChildEvent<DataSnapshot>, Long>() {
+                @Override
+                public Long call(RxFirebaseChildEvent<DataSnapshot> event) {
+                    return NodeSizeEstimator.estimateSerializedNodeSize(DataSnapshotDiff.nodeOf(event.getValue()));
+                }
+            };
+
+    private RxFirebaseChildEventBatcher() {
+    }
+
+    /**
+     * Estimates events by the serialized size of their snapshot, as the SDK does for its own cache.
+     */
+    public static Func1<RxFirebaseChildEvent<DataSnapshot>, Long> snapshotSize() {
+        return SNAPSHOT_SIZE;
+    }
+
+    public static Observable.Operator<RxFirebaseChildEventBatch<DataSnapshot>, RxFirebaseChildEvent<DataSnapshot>> batch(
+            final int maxEvents, final long maxBytes, final long maxLatency, final TimeUnit unit) {
+        return batch(maxEvents, maxBytes, SNAPSHOT_SIZE, maxLatency, unit, Schedulers.computation());
+    }
+
+    /**
+     * @param sizer estimates the size of an event in bytes, only called when {@code maxBytes} is not
+     *              {@link Long#MAX_VALUE}.
+     */
+    public static <T> Observable.Operator<RxFirebaseChildEventBatch<T>, RxFirebaseChildEvent<T>> batch(
+            final int maxEvents, final long maxBytes, final Func1<? super RxFirebaseChildEvent<T>, Long> sizer,
+            final long maxLatency, final TimeUnit unit, final Scheduler scheduler) {
+        if (maxEvents <= 0) {
+            throw new IllegalArgumentException("maxEvents > 0 required but it was " + maxEvents);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes > 0 required but it was " + maxBytes);
+        }
+        if (maxLatency <= 0) {
+            throw new IllegalArgumentException("maxLatency > 0 required but it was " + maxLatency);
+        }
+        return new Observable.Operator<RxFirebaseChildEventBatch<T>, RxFirebaseChildEvent<T>>() {
+            @Override
+            public Subscriber<? super RxFirebaseChildEvent<T>> call(
+                    final Subscriber<? super RxFirebaseChildEventBatch<T>> child) {
+                BatchingSubscriber<T> parent = new BatchingSubscriber<>(child, maxEvents, maxBytes, sizer,
+                        maxLatency, unit, scheduler);
+                child.add(parent);
+                return parent;
+            }
+        };
+    }
+
+    private static class BatchingSubscriber<T> extends Subscriber<RxFirebaseChildEvent<T>> {
+
+        private final Subscriber<? super RxFirebaseChildEventBatch<T>> child;
+        private final int maxEvents;
+        private final long maxBytes;
+        private final Func1<? super RxFirebaseChildEvent<T>, Long> sizer;
+        private final long maxLatency;
+        private final TimeUnit unit;
+        private final Scheduler.Worker worker;
+
+        private Map<String, PendingEvent<T>> pending = new LinkedHashMap<>();
+        private int receivedCount;
+        private long byteEstimate;
+        private Subscription timer;
+        private boolean done;
+
+        BatchingSubscriber(final Subscriber<? super RxFirebaseChildEventBatch<T>> child, final int maxEvents,
+                           final long maxBytes, final Func1<? super RxFirebaseChildEvent<T>, Long> sizer,
+                           final long maxLatency, final TimeUnit unit, final Scheduler scheduler) {
+            this.child = child;
+            this.maxEvents = maxEvents;
+            this.maxBytes = maxBytes;
+            this.sizer = sizer;
+            this.maxLatency = maxLatency;
+            this.unit = unit;
+            this.worker = scheduler.createWorker();
+            add(worker);
+        }
+
+        @Override
+        public void onNext(final RxFirebaseChildEvent<T> event) {
+            long size = maxBytes == Long.MAX_VALUE ? 0L : sizer.call(event);
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (timer == null) {
+                    timer = worker.schedule(new Action0() {
+                        @Override
+                        public void call() {
+                            synchronized (BatchingSubscriber.this) {
+                                if (!done) {
+                                    flush();
+                                }
+                            }
+                        }
+                    }, maxLatency, unit);
+                }
+                PendingEvent<T> previous = pending.put(event.getKey(), new PendingEvent<>(event, size));
+                if (previous != null) {
+                    byteEstimate -= previous.size;
+                }
+                byteEstimate += size;
+                receivedCount++;
+                if (pending.size() >= maxEvents || byteEstimate >= maxBytes) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                flush();
+                child.onError(e);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                flush();
+                child.onCompleted();
+            }
+        }
+
+        private void flush() {
+            if (timer != null) {
+                timer.unsubscribe();
+                timer = null;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<RxFirebaseChildEvent<T>> events = new ArrayList<>(pending.size());
+            for (PendingEvent<T> pendingEvent : pending.values()) {
+                events.add(pendingEvent.event);
+            }
+            RxFirebaseChildEventBatch<T> batch = new RxFirebaseChildEventBatch<>(events, receivedCount, byteEstimate);
+            pending = new LinkedHashMap<>();
+            receivedCount = 0;
+            byteEstimate = 0L;
+            if (!child.isUnsubscribed()) {
+                child.onNext(batch);
+            }
+        }
+    }
+
+    private static class PendingEvent<T> {
+
+        private final RxFirebaseChildEvent<T> event;
+        private final long size;
+
+        PendingEvent(final RxFirebaseChildEvent<T> event, final long size) {
+            this.event = event;
+            this.size = size;
+        }
+    }
+}
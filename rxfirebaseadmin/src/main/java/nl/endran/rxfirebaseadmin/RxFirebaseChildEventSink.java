@@ -0,0 +1,32 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DataSnapshot;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+
+/**
+ * Receives child events as plain arguments, so no event object is allocated per callback. Called on the Firebase
+ * event thread, see {@link RxFirebaseDatabase#subscribeChildEvents}.
+ */
+public interface RxFirebaseChildEventSink {
+
+    void onChildEvent(String key, DataSnapshot dataSnapshot, String previousChildName,
+                      RxFirebaseChildEvent.EventType eventType);
+
+    void onCancelled(RxFirebaseDataException error);
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conflates child events per key within a time window, for use with {@code lift}. The window opens on the first
+ * event and its events are emitted together when it closes, each key at the position of its first event:
+ * <ul>
+ * <li>CHANGED after ADDED or CHANGED replaces the value and keeps the earlier type, so ADDED+CHANGED is ADDED</li>
+ * <li>REMOVED after ADDED cancels both, REMOVED after CHANGED becomes REMOVED</li>
+ * <li>MOVED and anything after a REMOVED or MOVED of the same key is kept as a separate event</li>
+ * </ul>
+ * Events of different keys keep their relative order. A terminal event emits the open window first.
+ */
+public final class RxFirebaseConflation {
+
+    private RxFirebaseConflation() {
+    }
+
+    public static <T> Observable.Operator<RxFirebaseChildEvent<T>, RxFirebaseChildEvent<T>> conflate(
+            final long window, final TimeUnit unit) {
+        return conflate(window, unit, Schedulers.computation());
+    }
+
+    public static <T> Observable.Operator<RxFirebaseChildEvent<T>, RxFirebaseChildEvent<T>> conflate(
+            final long window, final TimeUnit unit, final Scheduler scheduler) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window > 0 required but it was " + window);
+        }
+        return new Observable.Operator<RxFirebaseChildEvent<T>, RxFirebaseChildEvent<T>>() {
+            @Override
+            public Subscriber<? super RxFirebaseChildEvent<T>> call(
+                    final Subscriber<? super RxFirebaseChildEvent<T>> child) {
+                ConflatingSubscriber<T> parent = new ConflatingSubscriber<>(child, window, unit, scheduler);
+                child.add(parent);
+                return parent;
+            }
+        };
+    }
+
+    private static class ConflatingSubscriber<T> extends Subscriber<RxFirebaseChildEvent<T>> {
+
+        private final Subscriber<? super RxFirebaseChildEvent<T>> child;
+        private final long window;
+        private final TimeUnit unit;
+        private final Scheduler.Worker worker;
+
+        private List<RxFirebaseChildEvent<T>> pending = new ArrayList<>();
+        private final Map<String, Integer> pendingIndex = new HashMap<>();
+        private boolean done;
+
+        ConflatingSubscriber(final Subscriber<? super RxFirebaseChildEvent<T>> child, final long window,
+                             final TimeUnit unit, final Scheduler scheduler) {
+            this.child = child;
+            this.window = window;
+            this.unit = unit;
+            this.worker = scheduler.createWorker();
+            add(worker);
+        }
+
+        @Override
+        public void onNext(final RxFirebaseChildEvent<T> event) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (pending.isEmpty()) {
+                    worker.schedule(new Action0() {
+                        @Override
+                        public void call() {
+                            synchronized (ConflatingSubscriber.this) {
+                                if (!done) {
+                                    flush();
+                                }
+                            }
+                        }
+                    }, window, unit);
+                }
+                conflate(event);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                flush();
+                child.onError(e);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                flush();
+                child.onCompleted();
+            }
+        }
+
+        private void conflate(final RxFirebaseChildEvent<T> event) {
+            String key = event.getKey();
+            Integer index = pendingIndex.get(key);
+            RxFirebaseChildEvent<T> previous = index != null ? pending.get(index) : null;
+
+            RxFirebaseChildEvent.EventType type = event.getEventType();
+            if (previous != null && type == RxFirebaseChildEvent.EventType.CHANGED) {
+                pending.set(index, new RxFirebaseChildEvent<>(key, event.getValue(), event.getPreviousChildName(),
+                        previous.getEventType()));
+            } else if (previous != null && type == RxFirebaseChildEvent.EventType.REMOVED) {
+                if (previous.getEventType() == RxFirebaseChildEvent.EventType.ADDED) {
+                    pending.set(index, null);
+                } else {
+                    pending.set(index, event);
+                }
+                pendingIndex.remove(key);
+            } else {
+                pending.add(event);
+                if (type == RxFirebaseChildEvent.EventType.ADDED || type == RxFirebaseChildEvent.EventType.CHANGED) {
+                    pendingIndex.put(key, pending.size() - 1);
+                } else {
+                    pendingIndex.remove(key);
+                }
+            }
+        }
+
+        private void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<RxFirebaseChildEvent<T>> events = pending;
+            pending = new ArrayList<>();
+            pendingIndex.clear();
+            for (RxFirebaseChildEvent<T> event : events) {
+                if (event != null && !child.isUnsubscribed()) {
+                    child.onNext(event);
+                }
+            }
+        }
+    }
+}
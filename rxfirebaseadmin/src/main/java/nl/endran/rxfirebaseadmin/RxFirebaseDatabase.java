@@ -18,24 +18,59 @@
 package nl.endran.rxfirebaseadmin;
 
 import com.google.firebase.database.*;
+import com.google.firebase.database.snapshot.EmptyNode;
+import com.google.firebase.database.snapshot.Node;
 import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseTransactionAbortedException;
+import nl.endran.rxfirebaseadmin.metrics.RxFirebaseMetrics;
+import rx.Completable;
+import rx.CompletableSubscriber;
 import rx.Observable;
+import rx.Single;
+import rx.SingleSubscriber;
 import rx.Subscriber;
+import rx.Subscription;
 import rx.functions.Action0;
+import rx.functions.Func0;
 import rx.functions.Func1;
+import rx.subscriptions.BooleanSubscription;
 import rx.subscriptions.Subscriptions;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class RxFirebaseDatabase {
 
+    private static final RxFirebaseSingleFlight<DataSnapshot> singleValueReads = new RxFirebaseSingleFlight<>();
+
+    private static volatile RxFirebaseMetrics metrics = RxFirebaseMetrics.NONE;
+
+
+    /**
+     * Installs the metrics that listeners created from now on report to, {@code null} switches measuring off.
+     */
+    public static void setMetrics(final RxFirebaseMetrics metrics) {
+        RxFirebaseDatabase.metrics = metrics == null ? RxFirebaseMetrics.NONE : metrics;
+    }
+
+
+    public static RxFirebaseMetrics getMetrics() {
+        return metrics;
+    }
+
 
     public static Observable<DataSnapshot> observeValueEvent(final Query query) {
         return Observable.create(new Observable.OnSubscribe<DataSnapshot>() {
             @Override
             public void call(final Subscriber<? super DataSnapshot> subscriber) {
+                final ListenerMetrics listenerMetrics = ListenerMetrics.attach(query);
                 final ValueEventListener valueEventListener = query.addValueEventListener(
                         new ValueEventListener() {
                             @Override
                             public void onDataChange(DataSnapshot dataSnapshot) {
+                                listenerMetrics.onValueEvent();
                                 if (!subscriber.isUnsubscribed()) {
                                     subscriber.onNext(dataSnapshot);
                                 }
@@ -44,7 +79,7 @@ public class RxFirebaseDatabase {
                             @Override
                             public void onCancelled(final DatabaseError error) {
                                 if (!subscriber.isUnsubscribed()) {
-                                    subscriber.onError(new RxFirebaseDataException(error));
+                                    subscriber.onError(listenerMetrics.onCancelled(error));
                                 }
                             }
                         });
@@ -53,6 +88,7 @@ public class RxFirebaseDatabase {
                     @Override
                     public void call() {
                         query.removeEventListener(valueEventListener);
+                        listenerMetrics.detach();
                     }
                 }));
             }
@@ -60,13 +96,24 @@ public class RxFirebaseDatabase {
     }
 
 
+    /**
+     * Concurrent subscriptions to an identical query share one in-flight read and receive the same snapshot or error.
+     */
     public static Observable<DataSnapshot> observeSingleValueEvent(final Query query) {
+        return singleValueReads.share(QueryKey.of(query), readSingleValueEvent(query));
+    }
+
+
+    private static Observable<DataSnapshot> readSingleValueEvent(final Query query) {
         return Observable.create(new Observable.OnSubscribe<DataSnapshot>() {
             @Override
             public void call(final Subscriber<? super DataSnapshot> subscriber) {
+                final ListenerMetrics listenerMetrics = ListenerMetrics.attach(query);
                 query.addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(DataSnapshot dataSnapshot) {
+                        listenerMetrics.onValueEvent();
+                        listenerMetrics.detach();
                         if (!subscriber.isUnsubscribed()) {
                             subscriber.onNext(dataSnapshot);
                             subscriber.onCompleted();
@@ -75,8 +122,10 @@ public class RxFirebaseDatabase {
 
                     @Override
                     public void onCancelled(DatabaseError error) {
+                        RxFirebaseDataException exception = listenerMetrics.onCancelled(error);
+                        listenerMetrics.detach();
                         if (!subscriber.isUnsubscribed()) {
-                            subscriber.onError(new RxFirebaseDataException(error));
+                            subscriber.onError(exception);
                         }
                     }
                 });
@@ -90,63 +139,287 @@ public class RxFirebaseDatabase {
         return Observable.create(new Observable.OnSubscribe<RxFirebaseChildEvent<DataSnapshot>>() {
             @Override
             public void call(final Subscriber<? super RxFirebaseChildEvent<DataSnapshot>> subscriber) {
-                final ChildEventListener childEventListener = query.addChildEventListener(
-                        new ChildEventListener() {
+                subscriber.add(subscribeChildEvents(query, new RxFirebaseChildEventSink() {
+                    @Override
+                    public void onChildEvent(String key, DataSnapshot dataSnapshot, String previousChildName,
+                                             RxFirebaseChildEvent.EventType eventType) {
+                        subscriber.onNext(new RxFirebaseChildEvent<DataSnapshot>(key, dataSnapshot, previousChildName,
+                                eventType));
+                    }
 
-                            @Override
-                            public void onChildAdded(DataSnapshot dataSnapshot, String previousChildName) {
-                                if (!subscriber.isUnsubscribed()) {
-                                    subscriber.onNext(
-                                            new RxFirebaseChildEvent<DataSnapshot>(dataSnapshot.getKey(), dataSnapshot, previousChildName,
-                                                    RxFirebaseChildEvent.EventType.ADDED));
-                                }
-                            }
+                    @Override
+                    public void onCancelled(RxFirebaseDataException error) {
+                        subscriber.onError(error);
+                    }
+                }));
+            }
+        });
+    }
 
-                            @Override
-                            public void onChildChanged(DataSnapshot dataSnapshot, String previousChildName) {
-                                if (!subscriber.isUnsubscribed()) {
-                                    subscriber.onNext(
-                                            new RxFirebaseChildEvent<DataSnapshot>(dataSnapshot.getKey(), dataSnapshot, previousChildName,
-                                                    RxFirebaseChildEvent.EventType.CHANGED));
-                                }
-                            }
 
-                            @Override
-                            public void onChildRemoved(DataSnapshot dataSnapshot) {
-                                if (!subscriber.isUnsubscribed()) {
-                                    subscriber.onNext(new RxFirebaseChildEvent<DataSnapshot>(dataSnapshot.getKey(), dataSnapshot,
-                                            RxFirebaseChildEvent.EventType.REMOVED));
-                                }
-                            }
+    /**
+     * Like {@link #observeChildEvent(Query)}, but emits one event instance per subscription that is overwritten by
+     * every callback. Values are only valid inside {@code onNext}: copy what you keep and do not switch threads
+     * before consuming them.
+     */
+    public static Observable<RxFirebaseChildEvent<DataSnapshot>> observePooledChildEvent(final Query query) {
+        return Observable.create(new Observable.OnSubscribe<RxFirebaseChildEvent<DataSnapshot>>() {
+            @Override
+            public void call(final Subscriber<? super RxFirebaseChildEvent<DataSnapshot>> subscriber) {
+                final RxFirebaseChildEvent<DataSnapshot> event = new RxFirebaseChildEvent<>(null, null, null, null);
+                subscriber.add(subscribeChildEvents(query, new RxFirebaseChildEventSink() {
+                    @Override
+                    public void onChildEvent(String key, DataSnapshot dataSnapshot, String previousChildName,
+                                             RxFirebaseChildEvent.EventType eventType) {
+                        subscriber.onNext(event.reset(key, dataSnapshot, previousChildName, eventType));
+                    }
+
+                    @Override
+                    public void onCancelled(RxFirebaseDataException error) {
+                        subscriber.onError(error);
+                    }
+                }));
+            }
+        });
+    }
+
+
+    /**
+     * Delivers child events of the query to the sink without allocating an event per callback, until the returned
+     * subscription is unsubscribed.
+     */
+    public static Subscription subscribeChildEvents(final Query query, final RxFirebaseChildEventSink sink) {
+        final ListenerMetrics listenerMetrics = ListenerMetrics.attach(query);
+        final ChildEventListener[] childEventListener = new ChildEventListener[1];
+        final BooleanSubscription subscription = BooleanSubscription.create(new Action0() {
+            @Override
+            public void call() {
+                query.removeEventListener(childEventListener[0]);
+                listenerMetrics.detach();
+            }
+        });
+        childEventListener[0] = new ChildEventListener() {
+
+            @Override
+            public void onChildAdded(DataSnapshot dataSnapshot, String previousChildName) {
+                listenerMetrics.onChildEvent(RxFirebaseChildEvent.EventType.ADDED);
+                if (!subscription.isUnsubscribed()) {
+                    sink.onChildEvent(dataSnapshot.getKey(), dataSnapshot, previousChildName,
+                            RxFirebaseChildEvent.EventType.ADDED);
+                }
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot dataSnapshot, String previousChildName) {
+                listenerMetrics.onChildEvent(RxFirebaseChildEvent.EventType.CHANGED);
+                if (!subscription.isUnsubscribed()) {
+                    sink.onChildEvent(dataSnapshot.getKey(), dataSnapshot, previousChildName,
+                            RxFirebaseChildEvent.EventType.CHANGED);
+                }
+            }
 
+            @Override
+            public void onChildRemoved(DataSnapshot dataSnapshot) {
+                listenerMetrics.onChildEvent(RxFirebaseChildEvent.EventType.REMOVED);
+                if (!subscription.isUnsubscribed()) {
+                    sink.onChildEvent(dataSnapshot.getKey(), dataSnapshot, null,
+                            RxFirebaseChildEvent.EventType.REMOVED);
+                }
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot dataSnapshot, String previousChildName) {
+                listenerMetrics.onChildEvent(RxFirebaseChildEvent.EventType.MOVED);
+                if (!subscription.isUnsubscribed()) {
+                    sink.onChildEvent(dataSnapshot.getKey(), dataSnapshot, previousChildName,
+                            RxFirebaseChildEvent.EventType.MOVED);
+                }
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                if (!subscription.isUnsubscribed()) {
+                    sink.onCancelled(listenerMetrics.onCancelled(error));
+                }
+            }
+        };
+        query.addChildEventListener(childEventListener[0]);
+        return subscription;
+    }
+
+
+    public static Observable<DataSnapshot> observeValueEvent(final Query query,
+                                                             final RxFirebaseBackpressure backpressure) {
+        return observeValueEvent(query).lift(backpressure.<DataSnapshot>operator());
+    }
+
+
+    public static Observable<RxFirebaseStoredSnapshot<DataSnapshot>> observeValueEvent(
+            final Query query, final RxFirebaseSnapshotStore store) {
+        return store.observeValueEvent(query);
+    }
+
+
+    public static Observable<RxFirebaseChildEvent<DataSnapshot>> observeChildEvent(
+            final Query query, final RxFirebaseBackpressure backpressure) {
+        return observeChildEvent(query).lift(backpressure.<RxFirebaseChildEvent<DataSnapshot>>operator());
+    }
+
+
+    public static Observable<RxFirebaseChildEvent<DataSnapshot>> observeChildEvent(
+            final Query query, final RxFirebaseResumableChildEvents resumable) {
+        return resumable.observeChildEvent(query);
+    }
+
+
+    /**
+     * Emits the paths that were added, changed or removed since the previous value, the first list reports the
+     * initial children as added. Values that did not change anything are skipped.
+     */
+    public static Observable<List<RxFirebasePathChange>> observeValueDeltas(final Query query) {
+        return Observable.defer(new Func0<Observable<List<RxFirebasePathChange>>>() {
+            @Override
+            public Observable<List<RxFirebasePathChange>> call() {
+                final Node[] previous = {EmptyNode.Empty()};
+                return observeValueEvent(query)
+                        .map(new Func1<DataSnapshot, List<RxFirebasePathChange>>() {
                             @Override
-                            public void onChildMoved(DataSnapshot dataSnapshot, String previousChildName) {
-                                if (!subscriber.isUnsubscribed()) {
-                                    subscriber.onNext(
-                                            new RxFirebaseChildEvent<DataSnapshot>(dataSnapshot.getKey(), dataSnapshot, previousChildName,
-                                                    RxFirebaseChildEvent.EventType.MOVED));
-                                }
+                            public List<RxFirebasePathChange> call(DataSnapshot dataSnapshot) {
+                                Node current = DataSnapshotDiff.nodeOf(dataSnapshot);
+                                List<RxFirebasePathChange> changes = DataSnapshotDiff.diff(previous[0], current);
+                                previous[0] = current;
+                                return changes;
                             }
-
+                        })
+                        .filter(new Func1<List<RxFirebasePathChange>, Boolean>() {
                             @Override
-                            public void onCancelled(DatabaseError error) {
-                                if (!subscriber.isUnsubscribed()) {
-                                    subscriber.onError(new RxFirebaseDataException(error));
-                                }
+                            public Boolean call(List<RxFirebasePathChange> changes) {
+                                return !changes.isEmpty();
                             }
                         });
+            }
+        });
+    }
 
-                subscriber.add(Subscriptions.create(new Action0() {
+
+    public static Observable<RxFirebaseChildEvent<DataSnapshot>> observeChildEvent(
+            final Query query, final long conflateWindow, final TimeUnit unit) {
+        return observeChildEvent(query).lift(RxFirebaseConflation.<DataSnapshot>conflate(conflateWindow, unit));
+    }
+
+
+    /**
+     * Child events in batches of at most {@code maxEvents} keys and about {@code maxBytes}, emitted no later than
+     * {@code maxLatency} after their first event, see {@link RxFirebaseChildEventBatcher}.
+     */
+    public static Observable<RxFirebaseChildEventBatch<DataSnapshot>> observeChildEventBatches(
+            final Query query, final int maxEvents, final long maxBytes, final long maxLatency, final TimeUnit unit) {
+        return observeChildEvent(query).lift(RxFirebaseChildEventBatcher.batch(maxEvents, maxBytes, maxLatency, unit));
+    }
+
+
+    public static Observable<DataSnapshot> scan(final DatabaseReference reference, final int pageSize) {
+        return scan(reference, pageSize, 1, null);
+    }
+
+
+    public static Observable<DataSnapshot> scan(final DatabaseReference reference, final int pageSize,
+                                                final int prefetchPages, final String resumeAfterKey) {
+        return Observable.create(OnSubscribeKeyRangeScan.children(reference, pageSize, prefetchPages, resumeAfterKey));
+    }
+
+
+    public static Observable<List<DataSnapshot>> scanPages(final DatabaseReference reference, final int pageSize) {
+        return scanPages(reference, pageSize, 1, null);
+    }
+
+
+    public static Observable<List<DataSnapshot>> scanPages(final DatabaseReference reference, final int pageSize,
+                                                           final int prefetchPages, final String resumeAfterKey) {
+        return Observable.create(OnSubscribeKeyRangeScan.pages(reference, pageSize, prefetchPages, resumeAfterKey));
+    }
+
+
+    public static Completable write(final DatabaseReference reference, final Object value) {
+        return Completable.create(new Completable.OnSubscribe() {
+            @Override
+            public void call(final CompletableSubscriber subscriber) {
+                final BooleanSubscription subscription = new BooleanSubscription();
+                subscriber.onSubscribe(subscription);
+                reference.setValue(value, completionListener(subscriber, subscription));
+            }
+        });
+    }
+
+
+    public static Completable updateChildren(final DatabaseReference reference, final Map<String, Object> update) {
+        return Completable.create(new Completable.OnSubscribe() {
+            @Override
+            public void call(final CompletableSubscriber subscriber) {
+                final BooleanSubscription subscription = new BooleanSubscription();
+                subscriber.onSubscribe(subscription);
+                reference.updateChildren(update, completionListener(subscriber, subscription));
+            }
+        });
+    }
+
+
+    public static Single<DataSnapshot> runTransaction(final DatabaseReference reference,
+                                                      final Transaction.Handler handler) {
+        return Single.create(new Single.OnSubscribe<DataSnapshot>() {
+            @Override
+            public void call(final SingleSubscriber<? super DataSnapshot> subscriber) {
+                reference.runTransaction(new Transaction.Handler() {
                     @Override
-                    public void call() {
-                        query.removeEventListener(childEventListener);
+                    public Transaction.Result doTransaction(MutableData currentData) {
+                        return handler.doTransaction(currentData);
                     }
-                }));
+
+                    @Override
+                    public void onComplete(DatabaseError error, boolean committed, DataSnapshot dataSnapshot) {
+                        handler.onComplete(error, committed, dataSnapshot);
+                        if (subscriber.isUnsubscribed()) {
+                            return;
+                        }
+                        if (error != null) {
+                            subscriber.onError(new RxFirebaseDataException(error));
+                        } else if (committed) {
+                            subscriber.onSuccess(dataSnapshot);
+                        } else {
+                            subscriber.onError(new RxFirebaseTransactionAbortedException(dataSnapshot));
+                        }
+                    }
+                });
             }
         });
     }
 
 
+    public static Single<DataSnapshot> runTransaction(final DatabaseReference reference,
+                                                      final Transaction.Handler handler,
+                                                      final RxFirebaseTransactionRunner runner) {
+        return runner.runTransaction(reference, handler);
+    }
+
+
+    private static DatabaseReference.CompletionListener completionListener(final CompletableSubscriber subscriber,
+                                                                           final Subscription subscription) {
+        return new DatabaseReference.CompletionListener() {
+            @Override
+            public void onComplete(DatabaseError error, DatabaseReference databaseReference) {
+                if (subscription.isUnsubscribed()) {
+                    return;
+                }
+                if (error != null) {
+                    subscriber.onError(new RxFirebaseDataException(error));
+                } else {
+                    subscriber.onCompleted();
+                }
+            }
+        };
+    }
+
+
     public static <T> Observable<T> observeValueEvent(final Query query,
                                                       final Class<T> clazz) {
         return observeValueEvent(query, DataSnapshotMapper.of(clazz));
@@ -159,12 +432,105 @@ public class RxFirebaseDatabase {
     }
 
 
+    public static <T> Observable<T> observeSingleValueEvent(final Query query,
+                                                            final Class<T> clazz,
+                                                            final RxFirebaseReadCache cache) {
+        return cache.observeSingleValueEvent(query, clazz);
+    }
+
+
+    public static <T> Observable<RxFirebaseStoredSnapshot<T>> observeValueEvent(final Query query,
+                                                                               final Class<T> clazz,
+                                                                               final RxFirebaseSnapshotStore store) {
+        return store.observeValueEvent(query, clazz);
+    }
+
+
     public static <T> Observable<RxFirebaseChildEvent<T>> observeChildEvent(
             final Query query, final Class<T> clazz) {
         return observeChildEvent(query, DataSnapshotMapper.ofChildEvent(clazz));
     }
 
 
+    /**
+     * Typed variant of {@link #observePooledChildEvent(Query)}, the mapped event is reused as well.
+     */
+    public static <T> Observable<RxFirebaseChildEvent<T>> observePooledChildEvent(final Query query,
+                                                                               final Class<T> clazz) {
+        return Observable.defer(new Func0<Observable<RxFirebaseChildEvent<T>>>() {
+            @Override
+            public Observable<RxFirebaseChildEvent<T>> call() {
+                return observePooledChildEvent(query).map(DataSnapshotMapper.ofPooledChildEvent(clazz));
+            }
+        });
+    }
+
+
+    public static <T> Observable<T> observeValueEvent(final Query query,
+                                                      final Class<T> clazz,
+                                                      final RxFirebaseBackpressure backpressure) {
+        return observeValueEvent(query, backpressure).map(DataSnapshotMapper.of(clazz));
+    }
+
+
+    public static <T> Observable<RxFirebaseChildEvent<T>> observeChildEvent(
+            final Query query, final Class<T> clazz, final RxFirebaseBackpressure backpressure) {
+        return observeChildEvent(query, backpressure).map(DataSnapshotMapper.ofChildEvent(clazz));
+    }
+
+
+    public static <T> Observable<RxFirebaseChildEvent<T>> observeChildEvent(
+            final Query query, final Class<T> clazz, final long conflateWindow, final TimeUnit unit) {
+        return observeChildEvent(query, conflateWindow, unit).map(DataSnapshotMapper.ofChildEvent(clazz));
+    }
+
+
+    public static <T> Observable<RxFirebaseChildEventBatch<T>> observeChildEventBatches(
+            final Query query, final Class<T> clazz, final int maxEvents, final long maxBytes, final long maxLatency,
+            final TimeUnit unit) {
+        return observeChildEventBatches(query, maxEvents, maxBytes, maxLatency, unit)
+                .map(DataSnapshotMapper.ofChildEventBatch(clazz));
+    }
+
+
+    public static <T> Observable<T> observeValueEvent(final Query query,
+                                                      final Class<T> clazz,
+                                                      final RxFirebaseMappingPool mappingPool) {
+        return observeValueEvent(query, DataSnapshotMapper.of(clazz), mappingPool);
+    }
+
+
+    public static <T> Observable<RxFirebaseChildEvent<T>> observeChildEvent(
+            final Query query, final Class<T> clazz, final RxFirebaseMappingPool mappingPool) {
+        return observeChildEvent(query, DataSnapshotMapper.ofChildEvent(clazz), mappingPool);
+    }
+
+
+    public static <T> Observable<T> observeValueEvent(final Query query,
+                                                      final Class<T> clazz,
+                                                      final RxFirebaseBackpressure backpressure,
+                                                      final RxFirebaseMappingPool mappingPool) {
+        return observeValueEvent(query, DataSnapshotMapper.of(clazz), backpressure, mappingPool);
+    }
+
+
+    public static <T> Observable<RxFirebaseChildEvent<T>> observeChildEvent(
+            final Query query, final Class<T> clazz, final RxFirebaseBackpressure backpressure,
+            final RxFirebaseMappingPool mappingPool) {
+        return observeChildEvent(query, DataSnapshotMapper.ofChildEvent(clazz), backpressure, mappingPool);
+    }
+
+
+    public static <T> Observable<T> observeChildrenOf(final Query query, final Class<T> clazz) {
+        return observeSingleValueEvent(query).concatMap(DataSnapshotMapper.streamOf(clazz));
+    }
+
+
+    public static <T> Observable<Map.Entry<String, T>> observeChildEntriesOf(final Query query, final Class<T> clazz) {
+        return observeSingleValueEvent(query).concatMap(DataSnapshotMapper.streamEntriesOf(clazz));
+    }
+
+
     public static <T> Observable<T> observeValueEvent(final Query query,
                                                       final Func1<? super DataSnapshot, ? extends T> mapper) {
         return observeValueEvent(query).map(mapper);
@@ -181,4 +547,104 @@ public class RxFirebaseDatabase {
             final Query query, final Func1<? super RxFirebaseChildEvent<DataSnapshot>, ? extends RxFirebaseChildEvent<T>> mapper) {
         return observeChildEvent(query).map(mapper);
     }
+
+
+    public static <T> Observable<T> observeValueEvent(final Query query,
+                                                      final Func1<? super DataSnapshot, ? extends T> mapper,
+                                                      final RxFirebaseMappingPool mappingPool) {
+        return observeValueEvent(query).lift(mappingPool.<DataSnapshot, T>operator(mapper));
+    }
+
+
+    public static <T> Observable<RxFirebaseChildEvent<T>> observeChildEvent(
+            final Query query, final Func1<? super RxFirebaseChildEvent<DataSnapshot>, ? extends RxFirebaseChildEvent<T>> mapper,
+            final RxFirebaseMappingPool mappingPool) {
+        return observeChildEvent(query).lift(
+                mappingPool.<RxFirebaseChildEvent<DataSnapshot>, RxFirebaseChildEvent<T>>operator(mapper));
+    }
+
+
+    /**
+     * Maps on the pool behind a backpressure buffer, so a burst larger than the pool's {@code maxQueued} waits in
+     * the buffer, or is handled by its strategy, instead of failing the stream.
+     */
+    public static <T> Observable<T> observeValueEvent(final Query query,
+                                                      final Func1<? super DataSnapshot, ? extends T> mapper,
+                                                      final RxFirebaseBackpressure backpressure,
+                                                      final RxFirebaseMappingPool mappingPool) {
+        return observeValueEvent(query, backpressure).lift(mappingPool.<DataSnapshot, T>operator(mapper));
+    }
+
+
+    public static <T> Observable<RxFirebaseChildEvent<T>> observeChildEvent(
+            final Query query, final Func1<? super RxFirebaseChildEvent<DataSnapshot>, ? extends RxFirebaseChildEvent<T>> mapper,
+            final RxFirebaseBackpressure backpressure, final RxFirebaseMappingPool mappingPool) {
+        return observeChildEvent(query, backpressure).lift(
+                mappingPool.<RxFirebaseChildEvent<DataSnapshot>, RxFirebaseChildEvent<T>>operator(mapper));
+    }
+
+
+    /**
+     * Reports one listener to the installed {@link RxFirebaseMetrics}. The path is resolved once per listener and
+     * nothing is measured while {@link RxFirebaseMetrics#NONE} is installed.
+     */
+    private static class ListenerMetrics {
+
+        private static final ListenerMetrics DISABLED = new ListenerMetrics(RxFirebaseMetrics.NONE, null);
+
+        private final RxFirebaseMetrics metrics;
+        private final String path;
+        private final long attachedAt = System.nanoTime();
+        private final AtomicBoolean firstEventSeen;
+        private final AtomicBoolean detached;
+
+        private ListenerMetrics(final RxFirebaseMetrics metrics, final String path) {
+            this.metrics = metrics;
+            this.path = path;
+            this.firstEventSeen = new AtomicBoolean(path == null);
+            this.detached = new AtomicBoolean(path == null);
+        }
+
+        static ListenerMetrics attach(final Query query) {
+            RxFirebaseMetrics metrics = RxFirebaseDatabase.metrics;
+            if (metrics == RxFirebaseMetrics.NONE) {
+                return DISABLED;
+            }
+            ListenerMetrics listenerMetrics = new ListenerMetrics(metrics, String.valueOf(query.getPath()));
+            metrics.onListenerAdded(listenerMetrics.path);
+            return listenerMetrics;
+        }
+
+        void detach() {
+            if (!detached.get() && detached.compareAndSet(false, true)) {
+                metrics.onListenerRemoved(path);
+            }
+        }
+
+        void onValueEvent() {
+            if (this != DISABLED) {
+                onEvent();
+                metrics.onValueEvent(path);
+            }
+        }
+
+        void onChildEvent(final RxFirebaseChildEvent.EventType eventType) {
+            if (this != DISABLED) {
+                onEvent();
+                metrics.onChildEvent(path, eventType);
+            }
+        }
+
+        RxFirebaseDataException onCancelled(final DatabaseError error) {
+            RxFirebaseDataException exception = new RxFirebaseDataException(error);
+            metrics.onError(exception);
+            return exception;
+        }
+
+        private void onEvent() {
+            if (!firstEventSeen.get() && firstEventSeen.compareAndSet(false, true)) {
+                metrics.onFirstEvent(path, System.nanoTime() - attachedAt);
+            }
+        }
+    }
 }
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.exceptions.MissingBackpressureException;
+import rx.functions.Func1;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maps snapshots on a pool of worker threads instead of the Firebase event thread. Results of one stream are emitted
+ * in the order the snapshots arrived, from whichever worker completes the oldest pending one.
+ * <p>
+ * Each stream has at most {@code maxQueued} snapshots being mapped or waiting to be emitted. The stream requests that
+ * many from upstream and one more per emitted result, so a source that honours {@code request(n)}, such as an
+ * {@link RxFirebaseBackpressure} buffer, is held back by a slow mapper. A Firebase listener does not, and the event
+ * thread is never blocked, so a stream that receives a snapshot beyond its limit fails with a
+ * {@link MissingBackpressureException}. The {@link RxFirebaseDatabase} overloads that take both an
+ * {@link RxFirebaseBackpressure} and a pool put the buffer in front of the pool for bursty queries.
+ */
+public class RxFirebaseMappingPool {
+
+    private final Executor executor;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int maxQueued;
+    private final ExecutorService ownedExecutor;
+
+    public RxFirebaseMappingPool(final int threads, final int maxQueued) {
+        this(Executors.newFixedThreadPool(threads, new MappingThreadFactory()), maxQueued, true);
+    }
+
+    public RxFirebaseMappingPool(final Executor executor, final int maxQueued) {
+        this(executor, maxQueued, false);
+    }
+
+    private RxFirebaseMappingPool(final Executor executor, final int maxQueued, final boolean owned) {
+        if (maxQueued <= 0) {
+            throw new IllegalArgumentException("maxQueued > 0 required but it was " + maxQueued);
+        }
+        this.executor = executor;
+        this.maxQueued = maxQueued;
+        this.ownedExecutor = owned ? (ExecutorService) executor : null;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * Number of snapshots currently being mapped or waiting to be emitted, over all streams sharing the pool.
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * Stops the worker threads, only when the pool created them itself.
+     */
+    public void shutdown() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Operator that maps every value on the pool, for building pipelines the {@link RxFirebaseDatabase} overloads do
+     * not cover.
+     */
+    public <T, R> Observable.Operator<R, T> operator(final Func1<? super T, ? extends R> mapper) {
+        return new Observable.Operator<R, T>() {
+            @Override
+            public Subscriber<? super T> call(final Subscriber<? super R> child) {
+                OrderedMappingSubscriber<T, R> parent = new OrderedMappingSubscriber<>(child, mapper);
+                child.add(parent);
+                return parent;
+            }
+        };
+    }
+
+    private class OrderedMappingSubscriber<T, R> extends Subscriber<T> {
+
+        private final Subscriber<? super R> child;
+        private final Func1<? super T, ? extends R> mapper;
+        private final ConcurrentLinkedQueue<MappingTask<T, R>> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private volatile boolean done;
+        private volatile Throwable error;
+        private boolean terminated;
+
+        OrderedMappingSubscriber(final Subscriber<? super R> child, final Func1<? super T, ? extends R> mapper) {
+            this.child = child;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onStart() {
+            request(maxQueued);
+        }
+
+        @Override
+        public void onNext(final T value) {
+            if (done) {
+                return;
+            }
+            if (outstanding.get() >= maxQueued) {
+                unsubscribe();
+                onError(new MissingBackpressureException(
+                        "More than " + maxQueued + " snapshots are waiting to be mapped"));
+                return;
+            }
+            outstanding.incrementAndGet();
+            queued.incrementAndGet();
+            final MappingTask<T, R> task = new MappingTask<>(value);
+            tasks.offer(task);
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            task.result = mapper.call(task.value);
+                        } catch (Throwable e) {
+                            task.error = e;
+                        }
+                        task.done = true;
+                        drain();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                task.error = e;
+                task.done = true;
+                drain();
+            }
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+            error = e;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onCompleted() {
+            done = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                while (true) {
+                    MappingTask<T, R> task = tasks.peek();
+                    if (task == null || !task.done) {
+                        break;
+                    }
+                    tasks.poll();
+                    outstanding.decrementAndGet();
+                    queued.decrementAndGet();
+                    if (terminated || child.isUnsubscribed()) {
+                        continue;
+                    }
+                    if (task.error != null) {
+                        terminated = true;
+                        unsubscribe();
+                        child.onError(task.error);
+                    } else {
+                        child.onNext(task.result);
+                        request(1);
+                    }
+                }
+                if (!terminated && done && tasks.isEmpty()) {
+                    terminated = true;
+                    if (error != null) {
+                        child.onError(error);
+                    } else {
+                        child.onCompleted();
+                    }
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class MappingTask<T, R> {
+
+        private final T value;
+        private R result;
+        private Throwable error;
+        private volatile boolean done;
+
+        MappingTask(final T value) {
+            this.value = value;
+        }
+    }
+
+    private static class MappingThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolNumber = new AtomicInteger();
+
+        private final int pool = poolNumber.incrementAndGet();
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "RxFirebaseMapping-" + pool + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+/**
+ * One changed location between two values of a query. The path is relative to the query, with {@code ""} being the
+ * query location itself. An added subtree is reported once at its root with its whole value.
+ */
+public class RxFirebasePathChange {
+
+    private final String path;
+    private final Type type;
+    private final Object value;
+
+    public RxFirebasePathChange(String path, Type type, Object value) {
+        this.path = path;
+        this.type = type;
+        this.value = value;
+    }
+
+
+    public String getPath() {
+        return path;
+    }
+
+
+    public Type getType() {
+        return type;
+    }
+
+
+    /**
+     * The new value, {@code null} for {@link Type#REMOVED}.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RxFirebasePathChange that = (RxFirebasePathChange) o;
+
+        if (!path.equals(that.path)) return false;
+        if (type != that.type) return false;
+        return value != null ? value.equals(that.value) : that.value == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = path.hashCode();
+        result = 31 * result + type.hashCode();
+        result = 31 * result + (value != null ? value.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "RxFirebasePathChange{" +
+                "path='" + path + '\'' +
+                ", type=" + type +
+                ", value=" + value +
+                '}';
+    }
+
+    public enum Type {
+        ADDED,
+        CHANGED,
+        REMOVED
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.Query;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the mapped results of one-shot reads per query and target type, so a hit skips both the Firebase read and
+ * deserialization. Holds at most {@code maxEntries}, evicting the least recently used entry first.
+ * <p>
+ * Entries expire {@code ttl} after they were loaded. In live mode every entry keeps a value listener attached that
+ * replaces the cached value as soon as the data changes, or drops the entry when the new data does not map. Live
+ * entries never go stale, so they instead expire {@code ttl} after their last hit, which detaches the listener.
+ */
+public class RxFirebaseReadCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final boolean live;
+    private final Scheduler scheduler;
+    private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<CacheKey, Entry> loadOrder = new LinkedHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RxFirebaseReadCache(final int maxEntries, final long ttl, final TimeUnit unit) {
+        this(maxEntries, ttl, unit, false, Schedulers.immediate());
+    }
+
+    public RxFirebaseReadCache(final int maxEntries, final long ttl, final TimeUnit unit, final boolean live) {
+        this(maxEntries, ttl, unit, live, Schedulers.immediate());
+    }
+
+    /**
+     * @param scheduler only used as the clock for expiry
+     */
+    public RxFirebaseReadCache(final int maxEntries, final long ttl, final TimeUnit unit, final boolean live,
+                               final Scheduler scheduler) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries > 0 required but it was " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = unit.toMillis(ttl);
+        this.live = live;
+        this.scheduler = scheduler;
+    }
+
+    public <T> Observable<T> observeSingleValueEvent(final Query query, final Class<T> clazz) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Observable<T> call() {
+                CacheKey key = new CacheKey(QueryKey.of(query), clazz);
+                Entry entry = get(key);
+                if (entry != null) {
+                    hits.incrementAndGet();
+                    return Observable.just((T) entry.value);
+                }
+                misses.incrementAndGet();
+                if (live) {
+                    return loadLive(key, query, DataSnapshotMapper.of(clazz));
+                }
+                return RxFirebaseDatabase.observeSingleValueEvent(query, DataSnapshotMapper.of(clazz))
+                        .doOnNext(new Action1<T>() {
+                            @Override
+                            public void call(T value) {
+                                put(key, new Entry(value, null));
+                            }
+                        });
+            }
+        });
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Entries removed because the cache was full or they expired; invalidations are not counted.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void invalidate(final Query query, final Class<?> clazz) {
+        Entry removed;
+        synchronized (entries) {
+            CacheKey key = new CacheKey(QueryKey.of(query), clazz);
+            removed = entries.remove(key);
+            loadOrder.remove(key);
+        }
+        release(removed);
+    }
+
+    public void invalidateAll() {
+        Entry[] removed;
+        synchronized (entries) {
+            removed = entries.values().toArray(new Entry[entries.size()]);
+            entries.clear();
+            loadOrder.clear();
+        }
+        for (Entry entry : removed) {
+            release(entry);
+        }
+    }
+
+    /**
+     * Removes expired entries, oldest first, until it finds one that has not expired. Live entries expire after their
+     * last hit, so they are scanned in access order. Other entries expire after they were loaded, so they are scanned
+     * in load order, which is kept apart from the access order used for size eviction. Runs on every miss; call it
+     * periodically to detach idle live listeners sooner.
+     */
+    public void cleanUp() {
+        long now = scheduler.now();
+        List<Entry> expired = new ArrayList<>();
+        synchronized (entries) {
+            Iterator<Map.Entry<CacheKey, Entry>> iterator = (live ? entries : loadOrder).entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<CacheKey, Entry> next = iterator.next();
+                if (!next.getValue().isExpired(now)) {
+                    break;
+                }
+                iterator.remove();
+                entries.remove(next.getKey());
+                expired.add(next.getValue());
+            }
+        }
+        evictions.addAndGet(expired.size());
+        for (Entry entry : expired) {
+            release(entry);
+        }
+    }
+
+    private <T> Observable<T> loadLive(final CacheKey key, final Query query,
+                                       final DataSnapshotMapper<DataSnapshot, T> mapper) {
+        final AsyncSubject<T> first = AsyncSubject.create();
+        final Entry entry = new Entry(null, null);
+        entry.subscription = RxFirebaseDatabase.observeValueEvent(query).subscribe(new Subscriber<DataSnapshot>() {
+            @Override
+            public void onNext(DataSnapshot dataSnapshot) {
+                T value;
+                try {
+                    value = mapper.call(dataSnapshot);
+                } catch (Throwable e) {
+                    onError(e);
+                    return;
+                }
+                entry.value = value;
+                if (!first.hasCompleted()) {
+                    put(key, entry);
+                    first.onNext(value);
+                    first.onCompleted();
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                unsubscribe();
+                remove(key, entry);
+                if (!first.hasCompleted()) {
+                    first.onError(e);
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        return first;
+    }
+
+    private Entry get(final CacheKey key) {
+        long now = scheduler.now();
+        Entry expired;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (!entry.isExpired(now)) {
+                if (live) {
+                    entry.touch(now);
+                }
+                return entry;
+            }
+            expired = entries.remove(key);
+            loadOrder.remove(key);
+        }
+        evictions.incrementAndGet();
+        release(expired);
+        return null;
+    }
+
+    private void put(final CacheKey key, final Entry entry) {
+        cleanUp();
+        entry.touch(scheduler.now());
+        Entry replaced;
+        Entry eldest = null;
+        synchronized (entries) {
+            replaced = entries.put(key, entry);
+            if (!live) {
+                loadOrder.remove(key);
+                loadOrder.put(key, entry);
+            }
+            if (entries.size() > maxEntries) {
+                Iterator<Map.Entry<CacheKey, Entry>> iterator = entries.entrySet().iterator();
+                Map.Entry<CacheKey, Entry> next = iterator.next();
+                iterator.remove();
+                loadOrder.remove(next.getKey());
+                eldest = next.getValue();
+            }
+        }
+        if (replaced != entry) {
+            release(replaced);
+        }
+        if (eldest != null) {
+            evictions.incrementAndGet();
+            release(eldest);
+        }
+    }
+
+    private void remove(final CacheKey key, final Entry entry) {
+        synchronized (entries) {
+            if (entries.get(key) != entry) {
+                return;
+            }
+            entries.remove(key);
+        }
+    }
+
+    private static void release(final Entry entry) {
+        if (entry != null && entry.subscription != null) {
+            entry.subscription.unsubscribe();
+        }
+    }
+
+    private class Entry {
+
+        private volatile Object value;
+        private volatile Subscription subscription;
+        private volatile long touched;
+
+        Entry(final Object value, final Subscription subscription) {
+            this.value = value;
+            this.subscription = subscription;
+        }
+
+        void touch(final long now) {
+            touched = now;
+        }
+
+        boolean isExpired(final long now) {
+            return now - touched >= ttlMillis;
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final QueryKey queryKey;
+        private final Class<?> clazz;
+
+        CacheKey(final QueryKey queryKey, final Class<?> clazz) {
+            this.queryKey = queryKey;
+            this.clazz = clazz;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            CacheKey that = (CacheKey) o;
+
+            return clazz == that.clazz && queryKey.equals(that.queryKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * queryKey.hashCode() + clazz.hashCode();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import com.google.firebase.database.snapshot.Node;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Child event streams that survive a cancelled listener. Instead of failing, the stream re-attaches its listener after
+ * a random delay of up to {@code min(maxBackoff, baseBackoff * 2^retry)}; once {@code maxRetries} re-attaches in a
+ * row were cancelled before delivering anything, it fails with the last {@link RxFirebaseDataException}.
+ * <p>
+ * A re-attached listener reports every current child as added again. {@link #observeChildEvent(Query)} keeps the
+ * last snapshot of every child and reconciles the replay against it: unchanged children are dropped, changed ones
+ * are reported as changed, and children that are gone are reported as removed once the replay is complete.
+ * {@link #observeAppendedChildEvent(DatabaseReference)} is meant for nodes that only grow with increasing keys, such
+ * as push ids; it only remembers the last added key and re-attaches starting at it, so nothing is replayed, but
+ * changes to older children made while detached are not reported.
+ */
+public class RxFirebaseResumableChildEvents {
+
+    private final int maxRetries;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Scheduler scheduler;
+
+    public RxFirebaseResumableChildEvents(final int maxRetries, final long baseBackoff, final long maxBackoff,
+                                         final TimeUnit unit) {
+        this(maxRetries, baseBackoff, maxBackoff, unit, Schedulers.computation());
+    }
+
+    public RxFirebaseResumableChildEvents(final int maxRetries, final long baseBackoff, final long maxBackoff,
+                                         final TimeUnit unit, final Scheduler scheduler) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries >= 0 required but it was " + maxRetries);
+        }
+        this.maxRetries = maxRetries;
+        this.baseBackoffMillis = unit.toMillis(baseBackoff);
+        this.maxBackoffMillis = unit.toMillis(maxBackoff);
+        this.scheduler = scheduler;
+    }
+
+    public Observable<RxFirebaseChildEvent<DataSnapshot>> observeChildEvent(final Query query) {
+        return Observable.create(new Observable.OnSubscribe<RxFirebaseChildEvent<DataSnapshot>>() {
+            @Override
+            public void call(final Subscriber<? super RxFirebaseChildEvent<DataSnapshot>> subscriber) {
+                new ResumableListener(query, null, subscriber).start();
+            }
+        });
+    }
+
+    public Observable<RxFirebaseChildEvent<DataSnapshot>> observeAppendedChildEvent(final DatabaseReference reference) {
+        return Observable.create(new Observable.OnSubscribe<RxFirebaseChildEvent<DataSnapshot>>() {
+            @Override
+            public void call(final Subscriber<? super RxFirebaseChildEvent<DataSnapshot>> subscriber) {
+                new ResumableListener(reference.orderByKey(), reference, subscriber).start();
+            }
+        });
+    }
+
+    private long backoffMillis(final int retry) {
+        long ceiling = baseBackoffMillis << Math.min(retry, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffMillis) {
+            ceiling = maxBackoffMillis;
+        }
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static boolean sameContent(final DataSnapshot first, final DataSnapshot second) {
+        Node firstNode = DataSnapshotDiff.nodeOf(first);
+        Node secondNode = DataSnapshotDiff.nodeOf(second);
+        return firstNode == secondNode || firstNode.equals(secondNode);
+    }
+
+    private class ResumableListener {
+
+        private final Query query;
+        private final DatabaseReference appendedReference;
+        private final Subscriber<? super RxFirebaseChildEvent<DataSnapshot>> subscriber;
+        private final Scheduler.Worker worker = scheduler.createWorker();
+        private final Map<String, DataSnapshot> children = new HashMap<>();
+
+        private Query attachedQuery;
+        private ChildEventListener childEventListener;
+        private ValueEventListener replayEndListener;
+        private Set<String> replayedKeys;
+        private String lastAddedKey;
+        private boolean attached;
+        private int retries;
+
+        ResumableListener(final Query query, final DatabaseReference appendedReference,
+                          final Subscriber<? super RxFirebaseChildEvent<DataSnapshot>> subscriber) {
+            this.query = query;
+            this.appendedReference = appendedReference;
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            subscriber.add(worker);
+            subscriber.add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    detach();
+                }
+            }));
+            attach();
+        }
+
+        private synchronized void attach() {
+            if (subscriber.isUnsubscribed()) {
+                return;
+            }
+            boolean resuming = attached;
+            attached = true;
+            if (appendedReference != null && lastAddedKey != null) {
+                attachedQuery = appendedReference.orderByKey().startAt(lastAddedKey);
+            } else {
+                attachedQuery = query;
+            }
+            final ChildEventListener listener = new ChildEventListener() {
+                @Override
+                public void onChildAdded(DataSnapshot dataSnapshot, String previousChildName) {
+                    onEvent(this, dataSnapshot, previousChildName, RxFirebaseChildEvent.EventType.ADDED);
+                }
+
+                @Override
+                public void onChildChanged(DataSnapshot dataSnapshot, String previousChildName) {
+                    onEvent(this, dataSnapshot, previousChildName, RxFirebaseChildEvent.EventType.CHANGED);
+                }
+
+                @Override
+                public void onChildRemoved(DataSnapshot dataSnapshot) {
+                    onEvent(this, dataSnapshot, null, RxFirebaseChildEvent.EventType.REMOVED);
+                }
+
+                @Override
+                public void onChildMoved(DataSnapshot dataSnapshot, String previousChildName) {
+                    onEvent(this, dataSnapshot, previousChildName, RxFirebaseChildEvent.EventType.MOVED);
+                }
+
+                @Override
+                public void onCancelled(DatabaseError error) {
+                    ResumableListener.this.onCancelled(this, error);
+                }
+            };
+            childEventListener = listener;
+            attachedQuery.addChildEventListener(listener);
+            if (resuming && appendedReference == null && !children.isEmpty()) {
+                replayedKeys = new HashSet<>();
+                replayEndListener = new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot dataSnapshot) {
+                        onReplayEnd(listener);
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError error) {
+                    }
+                };
+                attachedQuery.addListenerForSingleValueEvent(replayEndListener);
+            }
+        }
+
+        private synchronized void detach() {
+            if (childEventListener != null) {
+                attachedQuery.removeEventListener(childEventListener);
+                childEventListener = null;
+            }
+            if (replayEndListener != null) {
+                attachedQuery.removeEventListener(replayEndListener);
+                replayEndListener = null;
+            }
+            replayedKeys = null;
+        }
+
+        private synchronized void onEvent(final ChildEventListener listener, final DataSnapshot dataSnapshot,
+                                          final String previousChildName,
+                                          final RxFirebaseChildEvent.EventType eventType) {
+            if (listener != childEventListener) {
+                return;
+            }
+            retries = 0;
+            String key = dataSnapshot.getKey();
+            RxFirebaseChildEvent.EventType emitted = eventType;
+            if (appendedReference != null) {
+                if (eventType == RxFirebaseChildEvent.EventType.ADDED) {
+                    if (key.equals(lastAddedKey)) {
+                        return;
+                    }
+                    lastAddedKey = key;
+                }
+            } else if (eventType == RxFirebaseChildEvent.EventType.REMOVED) {
+                children.remove(key);
+            } else {
+                DataSnapshot known = children.put(key, dataSnapshot);
+                if (replayedKeys != null && eventType == RxFirebaseChildEvent.EventType.ADDED) {
+                    replayedKeys.add(key);
+                    if (known != null && sameContent(known, dataSnapshot)) {
+                        return;
+                    }
+                    emitted = known != null ? RxFirebaseChildEvent.EventType.CHANGED : eventType;
+                }
+            }
+            if (!subscriber.isUnsubscribed()) {
+                subscriber.onNext(new RxFirebaseChildEvent<>(key, dataSnapshot, previousChildName, emitted));
+            }
+        }
+
+        private synchronized void onReplayEnd(final ChildEventListener listener) {
+            if (listener != childEventListener || replayedKeys == null) {
+                return;
+            }
+            retries = 0;
+            replayEndListener = null;
+            Iterator<Map.Entry<String, DataSnapshot>> iterator = children.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, DataSnapshot> entry = iterator.next();
+                if (!replayedKeys.contains(entry.getKey())) {
+                    iterator.remove();
+                    if (!subscriber.isUnsubscribed()) {
+                        subscriber.onNext(new RxFirebaseChildEvent<>(entry.getKey(), entry.getValue(),
+                                RxFirebaseChildEvent.EventType.REMOVED));
+                    }
+                }
+            }
+            replayedKeys = null;
+        }
+
+        private synchronized void onCancelled(final ChildEventListener listener, final DatabaseError error) {
+            if (listener != childEventListener) {
+                return;
+            }
+            detach();
+            if (retries >= maxRetries) {
+                if (!subscriber.isUnsubscribed()) {
+                    subscriber.onError(new RxFirebaseDataException(error));
+                }
+                return;
+            }
+            worker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    attach();
+                }
+            }, backoffMillis(retries++), TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+/**
+ * Load of one shard of a {@link RxFirebaseShardedObserver}, as measured when it was requested.
+ */
+public class RxFirebaseShardLoad {
+
+    private final String name;
+    private final int listenerCount;
+    private final long eventCount;
+    private final double eventsPerSecond;
+
+    public RxFirebaseShardLoad(final String name, final int listenerCount, final long eventCount,
+                               final double eventsPerSecond) {
+        this.name = name;
+        this.listenerCount = listenerCount;
+        this.eventCount = eventCount;
+        this.eventsPerSecond = eventsPerSecond;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Number of listeners currently attached through this shard.
+     */
+    public int getListenerCount() {
+        return listenerCount;
+    }
+
+    /**
+     * Number of events delivered through this shard since it was added.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "RxFirebaseShardLoad{" +
+                "name='" + name + '\'' +
+                ", listenerCount=" + listenerCount +
+                ", eventCount=" + eventCount +
+                ", eventsPerSecond=" + eventsPerSecond +
+                '}';
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+import nl.endran.rxfirebaseadmin.metrics.Meter;
+import rx.Observable;
+import rx.Observer;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.observers.SerializedObserver;
+import rx.subscriptions.Subscriptions;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads the listeners of many paths over several database connections, for example one
+ * {@link com.google.firebase.database.FirebaseDatabase} per {@link com.google.firebase.FirebaseApp}, so that their
+ * events are not all delivered by a single event thread. Each shard is registered with the root reference of its
+ * connection and paths are assigned to shards by consistent hashing, so adding or removing a shard only moves the
+ * paths it takes over or gives up.
+ * <p>
+ * A moved path is attached to its new shard before it is detached from the old one. Value streams may therefore
+ * repeat the current value of a moved path, and child event streams report its children as added again.
+ */
+public class RxFirebaseShardedObserver {
+
+    private static final int DEFAULT_VIRTUAL_NODES = 128;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int virtualNodes;
+    private final Map<String, Shard> shards = new LinkedHashMap<>();
+    private final TreeMap<Long, Shard> ring = new TreeMap<>();
+    private final Set<Watch<?>> watches = new LinkedHashSet<>();
+
+    public RxFirebaseShardedObserver() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param virtualNodes number of points each shard gets on the hash ring, more points spread paths more evenly.
+     */
+    public RxFirebaseShardedObserver(final int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Adds a shard and moves the paths that now hash to it.
+     *
+     * @param root root reference of the shard's connection, observed paths are resolved relative to it.
+     */
+    public synchronized void addShard(final String name, final DatabaseReference root) {
+        if (shards.containsKey(name)) {
+            throw new IllegalArgumentException("shard " + name + " already exists");
+        }
+        Shard shard = new Shard(name, root);
+        shards.put(name, shard);
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(name + "#" + i), shard);
+        }
+        rebalance();
+    }
+
+    /**
+     * Removes a shard after moving its paths to the remaining shards. The last shard cannot be removed while paths
+     * are observed.
+     */
+    public synchronized void removeShard(final String name) {
+        Shard shard = shards.get(name);
+        if (shard == null) {
+            return;
+        }
+        if (shards.size() == 1 && !watches.isEmpty()) {
+            throw new IllegalStateException("cannot remove the last shard while paths are observed");
+        }
+        shards.remove(name);
+        ring.values().removeAll(Collections.singleton(shard));
+        rebalance();
+    }
+
+    /**
+     * Name of the shard the path is assigned to, or {@code null} when there are no shards.
+     */
+    public synchronized String getShard(final String path) {
+        Shard shard = ownerOf(path);
+        return shard == null ? null : shard.name;
+    }
+
+    /**
+     * Load per shard, in the order the shards were added.
+     */
+    public synchronized Map<String, RxFirebaseShardLoad> getShardLoads() {
+        Map<String, RxFirebaseShardLoad> loads = new LinkedHashMap<>();
+        for (Shard shard : shards.values()) {
+            loads.put(shard.name, new RxFirebaseShardLoad(shard.name, shard.listeners.get(),
+                    shard.events.getCount(), shard.events.getRatePerSecond()));
+        }
+        return loads;
+    }
+
+    /**
+     * Merged value events of all paths. Paths are attached once there is at least one shard, the stream fails when
+     * any of the listeners is cancelled.
+     */
+    public Observable<DataSnapshot> observeValueEvent(final Collection<String> paths) {
+        return observe(paths, new Func1<Query, Observable<DataSnapshot>>() {
+            @Override
+            public Observable<DataSnapshot> call(Query query) {
+                return RxFirebaseDatabase.observeValueEvent(query);
+            }
+        });
+    }
+
+    public Observable<RxFirebaseChildEvent<DataSnapshot>> observeChildEvent(final Collection<String> paths) {
+        return observe(paths, new Func1<Query, Observable<RxFirebaseChildEvent<DataSnapshot>>>() {
+            @Override
+            public Observable<RxFirebaseChildEvent<DataSnapshot>> call(Query query) {
+                return RxFirebaseDatabase.observeChildEvent(query);
+            }
+        });
+    }
+
+    public <T> Observable<T> observeValueEvent(final Collection<String> paths, final Class<T> clazz) {
+        return observeValueEvent(paths).map(DataSnapshotMapper.of(clazz));
+    }
+
+    private <T> Observable<T> observe(final Collection<String> paths, final Func1<Query, Observable<T>> source) {
+        final List<String> distinctPaths = new ArrayList<>(new LinkedHashSet<>(paths));
+        return Observable.create(new Observable.OnSubscribe<T>() {
+            @Override
+            public void call(Subscriber<? super T> subscriber) {
+                final Watch<T> watch = new Watch<>(distinctPaths, source, new SerializedObserver<T>(subscriber));
+                subscriber.add(Subscriptions.create(new Action0() {
+                    @Override
+                    public void call() {
+                        unwatch(watch);
+                    }
+                }));
+                watch(watch);
+            }
+        });
+    }
+
+    private synchronized void watch(final Watch<?> watch) {
+        if (watch.closed) {
+            return;
+        }
+        watches.add(watch);
+        for (String path : watch.paths) {
+            Shard owner = ownerOf(path);
+            if (owner != null && !watch.closed) {
+                watch.attach(path, owner);
+            }
+        }
+    }
+
+    private synchronized void unwatch(final Watch<?> watch) {
+        watch.closed = true;
+        watches.remove(watch);
+        for (String path : new ArrayList<>(watch.attachments.keySet())) {
+            watch.detach(path);
+        }
+    }
+
+    private void rebalance() {
+        for (Watch<?> watch : new ArrayList<>(watches)) {
+            for (String path : watch.paths) {
+                Shard owner = ownerOf(path);
+                Attachment current = watch.attachments.get(path);
+                if (watch.closed || owner == null || (current != null && current.shard == owner)) {
+                    continue;
+                }
+                watch.attach(path, owner);
+                if (current != null) {
+                    current.release();
+                }
+            }
+        }
+    }
+
+    private Shard ownerOf(final String path) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, Shard> entry = ring.ceilingEntry(hash(path));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static long hash(final String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(UTF_8));
+            long hash = 0L;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Shard {
+
+        private final String name;
+        private final DatabaseReference root;
+        private final AtomicInteger listeners = new AtomicInteger();
+        private final Meter events = new Meter();
+
+        Shard(final String name, final DatabaseReference root) {
+            this.name = name;
+            this.root = root;
+        }
+    }
+
+    private static class Attachment {
+
+        private final Shard shard;
+        private final Subscription subscription;
+
+        Attachment(final Shard shard, final Subscription subscription) {
+            this.shard = shard;
+            this.subscription = subscription;
+        }
+
+        void release() {
+            subscription.unsubscribe();
+            shard.listeners.decrementAndGet();
+        }
+    }
+
+    private static class Watch<T> {
+
+        private final List<String> paths;
+        private final Func1<Query, Observable<T>> source;
+        private final Observer<T> observer;
+        private final Map<String, Attachment> attachments = new HashMap<>();
+        private boolean closed;
+
+        Watch(final List<String> paths, final Func1<Query, Observable<T>> source, final Observer<T> observer) {
+            this.paths = paths;
+            this.source = source;
+            this.observer = observer;
+        }
+
+        void attach(final String path, final Shard shard) {
+            shard.listeners.incrementAndGet();
+            Subscription subscription = source.call(shard.root.child(path)).subscribe(new Subscriber<T>() {
+                @Override
+                public void onNext(T value) {
+                    shard.events.mark();
+                    observer.onNext(value);
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    observer.onError(e);
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+            Attachment attachment = new Attachment(shard, subscription);
+            if (closed) {
+                attachment.release();
+            } else {
+                attachments.put(path, attachment);
+            }
+        }
+
+        void detach(final String path) {
+            Attachment attachment = attachments.remove(path);
+            if (attachment != null) {
+                attachment.release();
+            }
+        }
+    }
+}
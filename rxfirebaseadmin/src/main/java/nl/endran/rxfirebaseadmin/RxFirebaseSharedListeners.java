@@ -0,0 +1,368 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry that attaches a single Firebase listener per distinct query and multicasts its events to every subscriber.
+ * Late subscribers first receive the current state: the latest value, or the current children as ADDED events. Once
+ * the last subscriber leaves, the listener stays attached for the configured linger before it is removed.
+ */
+public class RxFirebaseSharedListeners {
+
+    private final long lingerMillis;
+    private final Scheduler scheduler;
+    private final ConcurrentMap<QueryKey, ValueListener> valueListeners = new ConcurrentHashMap<>();
+    private final ConcurrentMap<QueryKey, ChildListener> childListeners = new ConcurrentHashMap<>();
+
+    public RxFirebaseSharedListeners() {
+        this(0, TimeUnit.MILLISECONDS);
+    }
+
+    public RxFirebaseSharedListeners(final long linger, final TimeUnit unit) {
+        this(linger, unit, Schedulers.computation());
+    }
+
+    public RxFirebaseSharedListeners(final long linger, final TimeUnit unit, final Scheduler scheduler) {
+        if (linger < 0) {
+            throw new IllegalArgumentException("linger >= 0 required but it was " + linger);
+        }
+        this.lingerMillis = unit.toMillis(linger);
+        this.scheduler = scheduler;
+    }
+
+    public Observable<DataSnapshot> observeValueEvent(final Query query) {
+        return Observable.create(new Observable.OnSubscribe<DataSnapshot>() {
+            @Override
+            public void call(final Subscriber<? super DataSnapshot> subscriber) {
+                QueryKey key = QueryKey.of(query);
+                while (!subscriber.isUnsubscribed()) {
+                    ValueListener listener = valueListeners.get(key);
+                    if (listener == null) {
+                        ValueListener created = new ValueListener(key, query);
+                        listener = valueListeners.putIfAbsent(key, created);
+                        if (listener == null) {
+                            listener = created;
+                        }
+                    }
+                    if (listener.add(subscriber)) {
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    public Observable<RxFirebaseChildEvent<DataSnapshot>> observeChildEvent(final Query query) {
+        return Observable.create(new Observable.OnSubscribe<RxFirebaseChildEvent<DataSnapshot>>() {
+            @Override
+            public void call(final Subscriber<? super RxFirebaseChildEvent<DataSnapshot>> subscriber) {
+                QueryKey key = QueryKey.of(query);
+                while (!subscriber.isUnsubscribed()) {
+                    ChildListener listener = childListeners.get(key);
+                    if (listener == null) {
+                        ChildListener created = new ChildListener(key, query);
+                        listener = childListeners.putIfAbsent(key, created);
+                        if (listener == null) {
+                            listener = created;
+                        }
+                    }
+                    if (listener.add(subscriber)) {
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    public <T> Observable<T> observeValueEvent(final Query query, final Class<T> clazz) {
+        return observeValueEvent(query).map(DataSnapshotMapper.of(clazz));
+    }
+
+    public <T> Observable<RxFirebaseChildEvent<T>> observeChildEvent(final Query query, final Class<T> clazz) {
+        return observeChildEvent(query).map(DataSnapshotMapper.ofChildEvent(clazz));
+    }
+
+    /**
+     * Number of Firebase listeners currently attached through this registry, including lingering ones.
+     */
+    public int getListenerCount() {
+        return valueListeners.size() + childListeners.size();
+    }
+
+    private abstract class SharedListener<T> {
+
+        final QueryKey key;
+        final Query query;
+        private final List<Subscriber<? super T>> subscribers = new CopyOnWriteArrayList<>();
+        private Subscription pendingDetach;
+        private boolean attached;
+        private boolean disposed;
+
+        SharedListener(final QueryKey key, final Query query) {
+            this.key = key;
+            this.query = query;
+        }
+
+        abstract void attach();
+
+        abstract void detach();
+
+        abstract void replay(Subscriber<? super T> subscriber);
+
+        abstract void unregister();
+
+        synchronized boolean add(final Subscriber<? super T> subscriber) {
+            if (disposed) {
+                return false;
+            }
+            if (pendingDetach != null) {
+                pendingDetach.unsubscribe();
+                pendingDetach = null;
+            }
+            subscribers.add(subscriber);
+            if (attached) {
+                replay(subscriber);
+            } else {
+                attached = true;
+                attach();
+            }
+            subscriber.add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    remove(subscriber);
+                }
+            }));
+            return true;
+        }
+
+        private synchronized void remove(final Subscriber<? super T> subscriber) {
+            if (!subscribers.remove(subscriber) || !subscribers.isEmpty() || disposed) {
+                return;
+            }
+            if (lingerMillis == 0) {
+                dispose();
+            } else {
+                final Scheduler.Worker worker = scheduler.createWorker();
+                pendingDetach = worker;
+                worker.schedule(new Action0() {
+                    @Override
+                    public void call() {
+                        synchronized (SharedListener.this) {
+                            if (pendingDetach == worker && subscribers.isEmpty()) {
+                                dispose();
+                            }
+                        }
+                        worker.unsubscribe();
+                    }
+                }, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void dispose() {
+            pendingDetach = null;
+            disposed = true;
+            unregister();
+            if (attached) {
+                detach();
+            }
+        }
+
+        synchronized void dispatch(final T event) {
+            for (Subscriber<? super T> subscriber : subscribers) {
+                if (!subscriber.isUnsubscribed()) {
+                    subscriber.onNext(event);
+                }
+            }
+        }
+
+        void cancel(final DatabaseError error) {
+            List<Subscriber<? super T>> cancelled;
+            synchronized (this) {
+                if (disposed) {
+                    return;
+                }
+                attached = false;
+                dispose();
+                cancelled = new ArrayList<>(subscribers);
+                subscribers.clear();
+            }
+            for (Subscriber<? super T> subscriber : cancelled) {
+                if (!subscriber.isUnsubscribed()) {
+                    subscriber.onError(new RxFirebaseDataException(error));
+                }
+            }
+        }
+    }
+
+    private class ValueListener extends SharedListener<DataSnapshot> implements ValueEventListener {
+
+        private DataSnapshot latest;
+
+        ValueListener(final QueryKey key, final Query query) {
+            super(key, query);
+        }
+
+        @Override
+        void attach() {
+            query.addValueEventListener(this);
+        }
+
+        @Override
+        void detach() {
+            query.removeEventListener((ValueEventListener) this);
+        }
+
+        @Override
+        void replay(final Subscriber<? super DataSnapshot> subscriber) {
+            if (latest != null) {
+                subscriber.onNext(latest);
+            }
+        }
+
+        @Override
+        void unregister() {
+            valueListeners.remove(key, this);
+        }
+
+        @Override
+        public void onDataChange(final DataSnapshot dataSnapshot) {
+            synchronized (this) {
+                latest = dataSnapshot;
+                dispatch(dataSnapshot);
+            }
+        }
+
+        @Override
+        public void onCancelled(final DatabaseError error) {
+            cancel(error);
+        }
+    }
+
+    private class ChildListener extends SharedListener<RxFirebaseChildEvent<DataSnapshot>> implements ChildEventListener {
+
+        private final List<String> keys = new ArrayList<>();
+        private final Map<String, DataSnapshot> children = new HashMap<>();
+
+        ChildListener(final QueryKey key, final Query query) {
+            super(key, query);
+        }
+
+        @Override
+        void attach() {
+            query.addChildEventListener(this);
+        }
+
+        @Override
+        void detach() {
+            query.removeEventListener((ChildEventListener) this);
+        }
+
+        @Override
+        void replay(final Subscriber<? super RxFirebaseChildEvent<DataSnapshot>> subscriber) {
+            String previousChildName = null;
+            for (int i = 0; i < keys.size() && !subscriber.isUnsubscribed(); i++) {
+                String childKey = keys.get(i);
+                subscriber.onNext(new RxFirebaseChildEvent<DataSnapshot>(childKey, children.get(childKey),
+                        previousChildName, RxFirebaseChildEvent.EventType.ADDED));
+                previousChildName = childKey;
+            }
+        }
+
+        @Override
+        void unregister() {
+            childListeners.remove(key, this);
+        }
+
+        private void insertAfter(final String childKey, final String previousChildName) {
+            if (previousChildName == null) {
+                keys.add(0, childKey);
+            } else if (!keys.isEmpty() && keys.get(keys.size() - 1).equals(previousChildName)) {
+                keys.add(childKey);
+            } else {
+                keys.add(keys.indexOf(previousChildName) + 1, childKey);
+            }
+        }
+
+        @Override
+        public void onChildAdded(final DataSnapshot dataSnapshot, final String previousChildName) {
+            synchronized (this) {
+                String childKey = dataSnapshot.getKey();
+                if (children.put(childKey, dataSnapshot) == null) {
+                    insertAfter(childKey, previousChildName);
+                }
+                dispatch(new RxFirebaseChildEvent<DataSnapshot>(childKey, dataSnapshot, previousChildName,
+                        RxFirebaseChildEvent.EventType.ADDED));
+            }
+        }
+
+        @Override
+        public void onChildChanged(final DataSnapshot dataSnapshot, final String previousChildName) {
+            synchronized (this) {
+                children.put(dataSnapshot.getKey(), dataSnapshot);
+                dispatch(new RxFirebaseChildEvent<DataSnapshot>(dataSnapshot.getKey(), dataSnapshot, previousChildName,
+                        RxFirebaseChildEvent.EventType.CHANGED));
+            }
+        }
+
+        @Override
+        public void onChildRemoved(final DataSnapshot dataSnapshot) {
+            synchronized (this) {
+                if (children.remove(dataSnapshot.getKey()) != null) {
+                    keys.remove(dataSnapshot.getKey());
+                }
+                dispatch(new RxFirebaseChildEvent<DataSnapshot>(dataSnapshot.getKey(), dataSnapshot,
+                        RxFirebaseChildEvent.EventType.REMOVED));
+            }
+        }
+
+        @Override
+        public void onChildMoved(final DataSnapshot dataSnapshot, final String previousChildName) {
+            synchronized (this) {
+                String childKey = dataSnapshot.getKey();
+                keys.remove(childKey);
+                children.put(childKey, dataSnapshot);
+                insertAfter(childKey, previousChildName);
+                dispatch(new RxFirebaseChildEvent<DataSnapshot>(childKey, dataSnapshot, previousChildName,
+                        RxFirebaseChildEvent.EventType.MOVED));
+            }
+        }
+
+        @Override
+        public void onCancelled(final DatabaseError error) {
+            cancel(error);
+        }
+    }
+}
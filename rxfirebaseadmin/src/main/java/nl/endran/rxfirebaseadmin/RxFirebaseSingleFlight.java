@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Coalesces concurrent subscriptions to the same one-shot source: while a read for a key is in flight, new subscribers
+ * join it and receive the same value or error instead of starting another read. The read stops being shared as soon
+ * as it terminates, or when all of its subscribers unsubscribed.
+ */
+final class RxFirebaseSingleFlight<T> {
+
+    private final ConcurrentMap<Object, Observable<T>> inFlight = new ConcurrentHashMap<>();
+
+    Observable<T> share(final Object key, final Observable<T> source) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                Observable<T> shared = inFlight.get(key);
+                if (shared != null) {
+                    return shared;
+                }
+                final AtomicReference<Observable<T>> self = new AtomicReference<>();
+                Action0 release = new Action0() {
+                    @Override
+                    public void call() {
+                        inFlight.remove(key, self.get());
+                    }
+                };
+                Observable<T> created = source
+                        .doOnTerminate(release)
+                        .doOnUnsubscribe(release)
+                        .replay()
+                        .refCount();
+                self.set(created);
+                shared = inFlight.putIfAbsent(key, created);
+                return shared != null ? shared : created;
+            }
+        });
+    }
+
+    /**
+     * Number of reads currently shared.
+     */
+    int inFlightCount() {
+        return inFlight.size();
+    }
+}
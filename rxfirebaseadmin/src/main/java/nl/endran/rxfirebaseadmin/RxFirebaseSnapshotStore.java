@@ -0,0 +1,211 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.core.view.QuerySpec;
+import com.google.firebase.database.snapshot.Node;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists the last value of each observed query to disk, so a restarted service can serve it at once instead of
+ * waiting for Firebase. A stream first emits the stored value, if there is a readable one, marked as
+ * {@link RxFirebaseStoredSnapshot#isFromStore() from store}, followed by the live values of the query. Every live
+ * value replaces the stored one; writes happen on the given scheduler, one at a time per query, and only the latest
+ * pending value per query is written.
+ * <p>
+ * Files are named after the query path and parameters, not the database, so use one directory per database. Files
+ * that fail validation are deleted and counted in {@link #getCorruptCount()}.
+ */
+public class RxFirebaseSnapshotStore {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final Scheduler scheduler;
+    private final ConcurrentMap<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private final AtomicLong corruptCount = new AtomicLong();
+    private final AtomicLong writeFailureCount = new AtomicLong();
+
+    public RxFirebaseSnapshotStore(final File directory) {
+        this(directory, Schedulers.io());
+    }
+
+    public RxFirebaseSnapshotStore(final File directory, final Scheduler scheduler) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("cannot create directory " + directory);
+        }
+        this.directory = directory;
+        this.scheduler = scheduler;
+    }
+
+    public Observable<RxFirebaseStoredSnapshot<DataSnapshot>> observeValueEvent(final Query query) {
+        final String key = keyOf(query);
+        final File file = fileOf(key);
+        Observable<RxFirebaseStoredSnapshot<DataSnapshot>> stored = Observable.defer(
+                new Func0<Observable<RxFirebaseStoredSnapshot<DataSnapshot>>>() {
+                    @Override
+                    public Observable<RxFirebaseStoredSnapshot<DataSnapshot>> call() {
+                        RxFirebaseStoredSnapshot<DataSnapshot> snapshot = read(query, key, file);
+                        return snapshot == null
+                                ? Observable.<RxFirebaseStoredSnapshot<DataSnapshot>>empty()
+                                : Observable.just(snapshot);
+                    }
+                });
+        Observable<RxFirebaseStoredSnapshot<DataSnapshot>> live = RxFirebaseDatabase.observeValueEvent(query)
+                .map(new Func1<DataSnapshot, RxFirebaseStoredSnapshot<DataSnapshot>>() {
+                    @Override
+                    public RxFirebaseStoredSnapshot<DataSnapshot> call(DataSnapshot dataSnapshot) {
+                        return new RxFirebaseStoredSnapshot<>(dataSnapshot, scheduler.now(), false);
+                    }
+                })
+                .doOnNext(new Action1<RxFirebaseStoredSnapshot<DataSnapshot>>() {
+                    @Override
+                    public void call(RxFirebaseStoredSnapshot<DataSnapshot> snapshot) {
+                        persist(key, file, snapshot.getReceivedAt(), DataSnapshotDiff.nodeOf(snapshot.getValue()));
+                    }
+                });
+        return stored.concatWith(live);
+    }
+
+    /**
+     * Typed variant of {@link #observeValueEvent(Query)}. A stored value that no longer maps to the class is skipped,
+     * since the live value replaces it anyway, but a live value that fails to map ends the stream with the mapping
+     * error.
+     */
+    public <T> Observable<RxFirebaseStoredSnapshot<T>> observeValueEvent(final Query query, final Class<T> clazz) {
+        final DataSnapshotMapper<DataSnapshot, T> mapper = DataSnapshotMapper.of(clazz);
+        return observeValueEvent(query).concatMap(
+                new Func1<RxFirebaseStoredSnapshot<DataSnapshot>, Observable<RxFirebaseStoredSnapshot<T>>>() {
+                    @Override
+                    public Observable<RxFirebaseStoredSnapshot<T>> call(RxFirebaseStoredSnapshot<DataSnapshot> snapshot) {
+                        T value;
+                        try {
+                            value = mapper.call(snapshot.getValue());
+                        } catch (RuntimeException e) {
+                            if (snapshot.isFromStore()) {
+                                return Observable.empty();
+                            }
+                            throw e;
+                        }
+                        return Observable.just(new RxFirebaseStoredSnapshot<>(value, snapshot.getReceivedAt(),
+                                snapshot.isFromStore()));
+                    }
+                });
+    }
+
+    /**
+     * Number of stored files that failed validation and were deleted.
+     */
+    public long getCorruptCount() {
+        return corruptCount.get();
+    }
+
+    public long getWriteFailureCount() {
+        return writeFailureCount.get();
+    }
+
+    private RxFirebaseStoredSnapshot<DataSnapshot> read(final Query query, final String key, final File file) {
+        SnapshotFile.Contents contents;
+        try {
+            contents = SnapshotFile.read(file, key);
+        } catch (IOException e) {
+            corruptCount.incrementAndGet();
+            file.delete();
+            return null;
+        }
+        if (contents == null) {
+            return null;
+        }
+        return new RxFirebaseStoredSnapshot<>(DataSnapshotDiff.snapshotOf(query.getRef(), contents.node),
+                contents.receivedAt, true);
+    }
+
+    /**
+     * A key stays in {@code pendingWrites} until its write has finished, so there is at most one writer per query. A
+     * value that arrives meanwhile replaces the entry and the writer picks it up when it is done.
+     */
+    private void persist(final String key, final File file, final long receivedAt, final Node node) {
+        if (pendingWrites.put(key, new PendingWrite(receivedAt, node)) != null) {
+            return;
+        }
+        final Scheduler.Worker worker = scheduler.createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    PendingWrite write = pendingWrites.get(key);
+                    while (true) {
+                        try {
+                            SnapshotFile.write(file, key, write.receivedAt, write.node);
+                        } catch (IOException e) {
+                            writeFailureCount.incrementAndGet();
+                        }
+                        if (pendingWrites.remove(key, write)) {
+                            break;
+                        }
+                        write = pendingWrites.get(key);
+                    }
+                } finally {
+                    worker.unsubscribe();
+                }
+            }
+        });
+    }
+
+    private File fileOf(final String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+            return new File(directory, String.format("%040x", new BigInteger(1, digest)) + ".snap");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String keyOf(final Query query) {
+        QuerySpec spec = query.getSpec();
+        return spec.getPath() + "?" + spec.getParams().toJSON();
+    }
+
+    private static class PendingWrite {
+
+        private final long receivedAt;
+        private final Node node;
+
+        PendingWrite(final long receivedAt, final Node node) {
+            this.receivedAt = receivedAt;
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A value from a {@link RxFirebaseSnapshotStore} stream, either restored from disk or received live from Firebase.
+ */
+public class RxFirebaseStoredSnapshot<T> {
+
+    private final T value;
+    private final long receivedAt;
+    private final boolean fromStore;
+
+    public RxFirebaseStoredSnapshot(T value, long receivedAt, boolean fromStore) {
+        this.value = value;
+        this.receivedAt = receivedAt;
+        this.fromStore = fromStore;
+    }
+
+
+    public T getValue() {
+        return value;
+    }
+
+
+    /**
+     * When the value was received from Firebase, in milliseconds since the epoch. For a restored value this is the
+     * time it was received before it was persisted.
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+
+    /**
+     * {@code true} for a value restored from disk that has not been reconciled with Firebase yet.
+     */
+    public boolean isFromStore() {
+        return fromStore;
+    }
+
+
+    public long getAge(final long now, final TimeUnit unit) {
+        return unit.convert(Math.max(0L, now - receivedAt), TimeUnit.MILLISECONDS);
+    }
+}
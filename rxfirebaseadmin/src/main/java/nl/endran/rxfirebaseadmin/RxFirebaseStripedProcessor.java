@@ -0,0 +1,304 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import rx.Observable;
+import rx.Observer;
+import rx.Subscriber;
+import rx.exceptions.MissingBackpressureException;
+import rx.functions.Func1;
+import rx.observers.SerializedObserver;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes child events on a fixed number of single threaded stripes. Every event goes to the stripe its key hashes
+ * to, so events for the same key are processed one at a time and in the order they arrived, while different keys are
+ * processed in parallel. Results are emitted as soon as they are ready, so only the order per key is kept.
+ * <p>
+ * Every stream queues at most {@code queueCapacity} events on each stripe, independent of the other streams sharing
+ * the processor. A stream requests that many events from upstream and one more per processed event, so a source that
+ * honours {@code request(n)}, such as an {@link RxFirebaseBackpressure} buffer, is held back by a slow stripe and never
+ * overflows. The Firebase event thread is never blocked, so a stream that has more than {@code queueCapacity} events
+ * waiting on one stripe fails with a {@link MissingBackpressureException} instead. The queue depth,
+ * peak depth and processed count of every stripe, and the skew between stripes, show whether the number of stripes
+ * fits the load and how evenly the keys spread over them.
+ */
+public class RxFirebaseStripedProcessor {
+
+    private static final AtomicInteger processorNumber = new AtomicInteger();
+
+    private final Stripe[] stripes;
+    private final int queueCapacity;
+    private volatile boolean shutdown;
+
+    public RxFirebaseStripedProcessor(final int stripeCount, final int queueCapacity) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("stripeCount > 0 required but it was " + stripeCount);
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity > 0 required but it was " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        int processor = processorNumber.incrementAndGet();
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+            Thread thread = new Thread(stripes[i], "RxFirebaseStripe-" + processor + "-" + i);
+            thread.setDaemon(true);
+            stripes[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Operator that applies the processor to every event on the stripe of its key.
+     */
+    public <T, R> Observable.Operator<R, RxFirebaseChildEvent<T>> process(
+            final Func1<? super RxFirebaseChildEvent<T>, ? extends R> processor) {
+        return new Observable.Operator<R, RxFirebaseChildEvent<T>>() {
+            @Override
+            public Subscriber<? super RxFirebaseChildEvent<T>> call(final Subscriber<? super R> child) {
+                StripedSubscriber<T, R> parent = new StripedSubscriber<>(child, processor);
+                child.add(parent);
+                return parent;
+            }
+        };
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Stripe the events of the key are processed on.
+     */
+    public int getStripe(final String key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    /**
+     * Number of events waiting on each stripe, not counting the one being processed.
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            depths[i] = stripes[i].queue.size();
+        }
+        return depths;
+    }
+
+    /**
+     * Highest number of events that waited on each stripe since it was created.
+     */
+    public int[] getPeakQueueDepths() {
+        int[] depths = new int[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            depths[i] = stripes[i].peakDepth.get();
+        }
+        return depths;
+    }
+
+    public long[] getProcessedCounts() {
+        long[] counts = new long[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            counts[i] = stripes[i].processed.get();
+        }
+        return counts;
+    }
+
+    /**
+     * Events processed by the busiest stripe relative to the average over all stripes. {@code 1.0} means the keys
+     * spread evenly, {@code getStripeCount()} means a single stripe did all the work.
+     */
+    public double getSkew() {
+        long total = 0L;
+        long max = 0L;
+        for (Stripe stripe : stripes) {
+            long processed = stripe.processed.get();
+            total += processed;
+            max = Math.max(max, processed);
+        }
+        return total == 0 ? 1.0 : (double) max * stripes.length / total;
+    }
+
+    /**
+     * Stops the stripe threads. Events that are still queued are not processed, the streams they belong to fail with
+     * a {@link RejectedExecutionException}, as do streams that deliver further events.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Stripe stripe : stripes) {
+            stripe.thread.interrupt();
+            stripe.rejectQueued();
+        }
+    }
+
+    private abstract static class StripeTask implements Runnable {
+
+        /**
+         * Called instead of {@link #run()} when the task is dropped from its queue.
+         */
+        abstract void reject(RejectedExecutionException e);
+    }
+
+    private static class Stripe implements Runnable {
+
+        private final BlockingQueue<StripeTask> queue = new LinkedBlockingQueue<>();
+        private final AtomicInteger peakDepth = new AtomicInteger();
+        private final AtomicLong processed = new AtomicLong();
+        private Thread thread;
+
+        void add(final StripeTask task) {
+            queue.add(task);
+            int depth = queue.size();
+            int peak = peakDepth.get();
+            while (depth > peak && !peakDepth.compareAndSet(peak, depth)) {
+                peak = peakDepth.get();
+            }
+        }
+
+        void rejectQueued() {
+            StripeTask task;
+            while ((task = queue.poll()) != null) {
+                task.reject(new RejectedExecutionException("processor was shut down"));
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    StripeTask task = queue.take();
+                    processed.incrementAndGet();
+                    task.run();
+                }
+            } catch (InterruptedException ignored) {
+            } finally {
+                rejectQueued();
+            }
+        }
+    }
+
+    private class StripedSubscriber<T, R> extends Subscriber<RxFirebaseChildEvent<T>> {
+
+        private final Observer<R> child;
+        private final Func1<? super RxFirebaseChildEvent<T>, ? extends R> processor;
+        private final AtomicLong pending = new AtomicLong(1);
+        private final AtomicIntegerArray queued = new AtomicIntegerArray(stripes.length);
+        private final AtomicBoolean terminated = new AtomicBoolean();
+
+        private volatile Throwable error;
+
+        StripedSubscriber(final Subscriber<? super R> child,
+                          final Func1<? super RxFirebaseChildEvent<T>, ? extends R> processor) {
+            this.child = new SerializedObserver<R>(child);
+            this.processor = processor;
+        }
+
+        @Override
+        public void onStart() {
+            request(queueCapacity);
+        }
+
+        @Override
+        public void onNext(final RxFirebaseChildEvent<T> event) {
+            if (terminated.get()) {
+                return;
+            }
+            if (shutdown) {
+                fail(new RejectedExecutionException("processor was shut down"));
+                return;
+            }
+            pending.incrementAndGet();
+            final int index = getStripe(event.getKey());
+            if (queued.incrementAndGet(index) > queueCapacity) {
+                queued.decrementAndGet(index);
+                release();
+                fail(new MissingBackpressureException(
+                        "more than " + queueCapacity + " events queued on stripe " + index));
+                return;
+            }
+            Stripe stripe = stripes[index];
+            stripe.add(new StripeTask() {
+                @Override
+                public void run() {
+                    queued.decrementAndGet(index);
+                    try {
+                        if (!terminated.get()) {
+                            child.onNext(processor.call(event));
+                            request(1);
+                        }
+                    } catch (Throwable e) {
+                        fail(e);
+                    } finally {
+                        release();
+                    }
+                }
+
+                @Override
+                void reject(final RejectedExecutionException e) {
+                    queued.decrementAndGet(index);
+                    fail(e);
+                    release();
+                }
+            });
+            if (shutdown) {
+                stripe.rejectQueued();
+            }
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+            error = e;
+            release();
+        }
+
+        @Override
+        public void onCompleted() {
+            release();
+        }
+
+        private void release() {
+            if (pending.decrementAndGet() == 0 && terminated.compareAndSet(false, true)) {
+                if (error != null) {
+                    child.onError(error);
+                } else {
+                    child.onCompleted();
+                }
+            }
+        }
+
+        private void fail(final Throwable e) {
+            if (terminated.compareAndSet(false, true)) {
+                unsubscribe();
+                child.onError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseTransactionAbortedException;
+import rx.Scheduler;
+import rx.Single;
+import rx.SingleSubscriber;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs transactions with jittered exponential backoff between contended attempts instead of the SDK's immediate
+ * retries, and keeps {@link RxFirebaseTransactionStats} per path.
+ * <p>
+ * The SDK re-runs a handler straight away when the server rejects its result. One such re-run is allowed per round,
+ * because the first attempt usually ran against an empty cache; a further re-run is aborted and the transaction is
+ * started again after a random delay of up to {@code min(maxBackoff, baseBackoff * 2^retry)}. Once
+ * {@code maxAttempts} handler invocations have failed to commit, the transaction fails with
+ * {@link DatabaseError#MAX_RETRIES}.
+ */
+public class RxFirebaseTransactionRunner {
+
+    private static final int IMMEDIATE_RERUNS = 1;
+
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Scheduler scheduler;
+    private final ConcurrentMap<String, RxFirebaseTransactionStats> stats = new ConcurrentHashMap<>();
+
+    public RxFirebaseTransactionRunner(final int maxAttempts, final long baseBackoff, final long maxBackoff,
+                                       final TimeUnit unit) {
+        this(maxAttempts, baseBackoff, maxBackoff, unit, Schedulers.computation());
+    }
+
+    public RxFirebaseTransactionRunner(final int maxAttempts, final long baseBackoff, final long maxBackoff,
+                                       final TimeUnit unit, final Scheduler scheduler) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts > 0 required but it was " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = unit.toMillis(baseBackoff);
+        this.maxBackoffMillis = unit.toMillis(maxBackoff);
+        this.scheduler = scheduler;
+    }
+
+    public Single<DataSnapshot> runTransaction(final DatabaseReference reference, final Transaction.Handler handler) {
+        return runTransaction(reference, handler, true);
+    }
+
+    public Single<DataSnapshot> runTransaction(final DatabaseReference reference, final Transaction.Handler handler,
+                                               final boolean fireLocalEvents) {
+        return Single.create(new Single.OnSubscribe<DataSnapshot>() {
+            @Override
+            public void call(final SingleSubscriber<? super DataSnapshot> subscriber) {
+                new RetryingTransaction(reference, handler, fireLocalEvents, subscriber).start();
+            }
+        });
+    }
+
+    public RxFirebaseTransactionStats getStats(final DatabaseReference reference) {
+        return stats.get(reference.getPath().toString());
+    }
+
+    /**
+     * Stats of every path that ran a transaction, most attempted first.
+     */
+    public List<RxFirebaseTransactionStats> getStats() {
+        List<RxFirebaseTransactionStats> result = new ArrayList<>(stats.values());
+        Collections.sort(result, new Comparator<RxFirebaseTransactionStats>() {
+            @Override
+            public int compare(RxFirebaseTransactionStats first, RxFirebaseTransactionStats second) {
+                return Long.compare(second.getAttempts(), first.getAttempts());
+            }
+        });
+        return result;
+    }
+
+    private RxFirebaseTransactionStats statsFor(final DatabaseReference reference) {
+        String path = reference.getPath().toString();
+        RxFirebaseTransactionStats pathStats = stats.get(path);
+        if (pathStats == null) {
+            RxFirebaseTransactionStats created = new RxFirebaseTransactionStats(path);
+            pathStats = stats.putIfAbsent(path, created);
+            if (pathStats == null) {
+                pathStats = created;
+            }
+        }
+        return pathStats;
+    }
+
+    private long backoffMillis(final int retry) {
+        long ceiling = baseBackoffMillis << Math.min(retry, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffMillis) {
+            ceiling = maxBackoffMillis;
+        }
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private class RetryingTransaction implements Transaction.Handler {
+
+        private final DatabaseReference reference;
+        private final Transaction.Handler handler;
+        private final boolean fireLocalEvents;
+        private final SingleSubscriber<? super DataSnapshot> subscriber;
+        private final RxFirebaseTransactionStats pathStats;
+        private final Scheduler.Worker worker;
+        private final long startNanos = System.nanoTime();
+
+        private volatile int attempts;
+        private volatile int retries;
+        private volatile int invocations;
+        private volatile boolean contended;
+
+        RetryingTransaction(final DatabaseReference reference, final Transaction.Handler handler,
+                            final boolean fireLocalEvents, final SingleSubscriber<? super DataSnapshot> subscriber) {
+            this.reference = reference;
+            this.handler = handler;
+            this.fireLocalEvents = fireLocalEvents;
+            this.subscriber = subscriber;
+            this.pathStats = statsFor(reference);
+            this.worker = scheduler.createWorker();
+            subscriber.add(worker);
+        }
+
+        void start() {
+            invocations = 0;
+            contended = false;
+            reference.runTransaction(this, fireLocalEvents);
+        }
+
+        @Override
+        public Transaction.Result doTransaction(final MutableData currentData) {
+            if (subscriber.isUnsubscribed()) {
+                return Transaction.abort();
+            }
+            if (invocations++ > IMMEDIATE_RERUNS || attempts >= maxAttempts) {
+                contended = true;
+                return Transaction.abort();
+            }
+            attempts++;
+            pathStats.recordAttempt();
+            return handler.doTransaction(currentData);
+        }
+
+        @Override
+        public void onComplete(final DatabaseError error, final boolean committed, final DataSnapshot snapshot) {
+            if (subscriber.isUnsubscribed()) {
+                return;
+            }
+            if (error == null && !committed && contended && attempts < maxAttempts) {
+                pathStats.recordRetry();
+                worker.schedule(new Action0() {
+                    @Override
+                    public void call() {
+                        start();
+                    }
+                }, backoffMillis(retries++), TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            DatabaseError result = error == null && !committed && contended
+                    ? DatabaseError.fromCode(DatabaseError.MAX_RETRIES)
+                    : error;
+            handler.onComplete(result, committed, snapshot);
+            if (committed) {
+                pathStats.recordCommit(System.nanoTime() - startNanos);
+                subscriber.onSuccess(snapshot);
+            } else {
+                pathStats.recordAbort();
+                subscriber.onError(result != null
+                        ? new RxFirebaseDataException(result)
+                        : new RxFirebaseTransactionAbortedException(snapshot));
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals for the transactions on one path. A high attempts to commits ratio, or many retries, marks a hot
+ * path that is worth sharding.
+ */
+public final class RxFirebaseTransactionStats {
+
+    private final String path;
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong aborts = new AtomicLong();
+    private final AtomicLong commitLatencyNanos = new AtomicLong();
+    private final AtomicLong maxCommitLatencyNanos = new AtomicLong();
+
+    RxFirebaseTransactionStats(final String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Number of times the transaction handler was invoked.
+     */
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    /**
+     * Number of times a transaction backed off before retrying.
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getCommits() {
+        return commits.get();
+    }
+
+    /**
+     * Number of transactions that ended without a commit, by handler abort, attempt cutoff or error.
+     */
+    public long getAborts() {
+        return aborts.get();
+    }
+
+    /**
+     * Average time from subscription to commit, including retries.
+     */
+    public long getAverageCommitLatency(final TimeUnit unit) {
+        long count = commits.get();
+        return count == 0 ? 0 : unit.convert(commitLatencyNanos.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxCommitLatency(final TimeUnit unit) {
+        return unit.convert(maxCommitLatencyNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    void recordAttempt() {
+        attempts.incrementAndGet();
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    void recordAbort() {
+        aborts.incrementAndGet();
+    }
+
+    void recordCommit(final long latencyNanos) {
+        commits.incrementAndGet();
+        commitLatencyNanos.addAndGet(latencyNanos);
+        while (true) {
+            long max = maxCommitLatencyNanos.get();
+            if (latencyNanos <= max || maxCommitLatencyNanos.compareAndSet(max, latencyNanos)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RxFirebaseTransactionStats{" +
+                "path='" + path + '\'' +
+                ", attempts=" + attempts +
+                ", retries=" + retries +
+                ", commits=" + commits +
+                ", aborts=" + aborts +
+                '}';
+    }
+}
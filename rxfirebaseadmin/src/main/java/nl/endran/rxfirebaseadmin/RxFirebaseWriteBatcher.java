@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import rx.Completable;
+import rx.CompletableSubscriber;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.BooleanSubscription;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces writes that arrive within a time or size window into one multi-path {@code updateChildren} per database,
+ * issued on the deepest common ancestor of the written paths. A later write to the same path replaces the earlier
+ * value. A write to an ancestor or descendant of a pending path first flushes the pending batch, so writes are
+ * applied in the order they were made.
+ */
+public class RxFirebaseWriteBatcher {
+
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final Scheduler scheduler;
+    private final Map<QueryKey, Batch> batches = new HashMap<>();
+
+    public RxFirebaseWriteBatcher(final long window, final TimeUnit unit, final int maxBatchSize) {
+        this(window, unit, maxBatchSize, Schedulers.computation());
+    }
+
+    public RxFirebaseWriteBatcher(final long window, final TimeUnit unit, final int maxBatchSize,
+                                  final Scheduler scheduler) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize > 0 required but it was " + maxBatchSize);
+        }
+        this.windowMillis = unit.toMillis(window);
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+    }
+
+    public Completable write(final DatabaseReference reference, final Object value) {
+        return Completable.create(new Completable.OnSubscribe() {
+            @Override
+            public void call(final CompletableSubscriber subscriber) {
+                if (reference.getPath().isEmpty()) {
+                    writeRoot(reference, value, subscriber);
+                    return;
+                }
+                BooleanSubscription subscription = new BooleanSubscription();
+                subscriber.onSubscribe(subscription);
+                enqueue(reference.getRoot(), reference.getPath().wireFormat(), value,
+                        new PendingWrite(subscriber, subscription));
+            }
+        });
+    }
+
+    public Completable remove(final DatabaseReference reference) {
+        return write(reference, null);
+    }
+
+    /**
+     * The root cannot be part of a multi-path update, so a root write flushes the pending batch and is written on
+     * its own after it.
+     */
+    private synchronized void writeRoot(final DatabaseReference root, final Object value,
+                                        final CompletableSubscriber subscriber) {
+        Batch batch = batches.remove(QueryKey.of(root.getRoot()));
+        if (batch != null) {
+            batch.flush();
+        }
+        RxFirebaseDatabase.write(root, value).subscribe(subscriber);
+    }
+
+    private synchronized void enqueue(final DatabaseReference root, final String path, final Object value,
+                                      final PendingWrite pendingWrite) {
+        final QueryKey key = QueryKey.of(root);
+        Batch batch = batches.get(key);
+        if (batch != null && batch.conflicts(path)) {
+            batches.remove(key);
+            batch.flush();
+            batch = null;
+        }
+        if (batch == null) {
+            final Batch created = new Batch(root);
+            batches.put(key, created);
+            final Scheduler.Worker worker = scheduler.createWorker();
+            worker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    synchronized (RxFirebaseWriteBatcher.this) {
+                        if (batches.get(key) == created) {
+                            batches.remove(key);
+                            created.flush();
+                        }
+                    }
+                    worker.unsubscribe();
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+            batch = created;
+        }
+        batch.add(path, value, pendingWrite);
+        if (batch.size() >= maxBatchSize) {
+            batches.remove(key);
+            batch.flush();
+        }
+    }
+
+    private static class PendingWrite {
+
+        private final CompletableSubscriber subscriber;
+        private final BooleanSubscription subscription;
+
+        PendingWrite(final CompletableSubscriber subscriber, final BooleanSubscription subscription) {
+            this.subscriber = subscriber;
+            this.subscription = subscription;
+        }
+
+        void complete(final Throwable error) {
+            if (subscription.isUnsubscribed()) {
+                return;
+            }
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onCompleted();
+            }
+        }
+    }
+
+    private static class Batch {
+
+        private final DatabaseReference root;
+        private final TreeMap<String, Object> updates = new TreeMap<>();
+        private final List<PendingWrite> pendingWrites = new ArrayList<>();
+
+        Batch(final DatabaseReference root) {
+            this.root = root;
+        }
+
+        int size() {
+            return updates.size();
+        }
+
+        void add(final String path, final Object value, final PendingWrite pendingWrite) {
+            updates.put(path, value);
+            pendingWrites.add(pendingWrite);
+        }
+
+        boolean conflicts(final String path) {
+            for (int i = path.indexOf('/'); i >= 0; i = path.indexOf('/', i + 1)) {
+                if (updates.containsKey(path.substring(0, i))) {
+                    return true;
+                }
+            }
+            String descendant = updates.ceilingKey(path + "/");
+            return descendant != null && descendant.startsWith(path + "/");
+        }
+
+        void flush() {
+            String ancestor = commonAncestor();
+            Map<String, Object> relativeUpdates = new HashMap<>(updates.size() * 4 / 3 + 1);
+            for (Map.Entry<String, Object> entry : updates.entrySet()) {
+                relativeUpdates.put(ancestor.isEmpty() ? entry.getKey() : entry.getKey().substring(ancestor.length() + 1),
+                        entry.getValue());
+            }
+            DatabaseReference target = ancestor.isEmpty() ? root : root.child(ancestor);
+            try {
+                target.updateChildren(relativeUpdates, new DatabaseReference.CompletionListener() {
+                    @Override
+                    public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference) {
+                        complete(databaseError != null ? new RxFirebaseDataException(databaseError) : null);
+                    }
+                });
+            } catch (RuntimeException e) {
+                complete(e);
+            }
+        }
+
+        private void complete(final Throwable error) {
+            for (PendingWrite pendingWrite : pendingWrites) {
+                pendingWrite.complete(error);
+            }
+        }
+
+        /**
+         * Longest common parent of all paths, always a strict ancestor so every relative update path is non-empty.
+         */
+        private String commonAncestor() {
+            String first = updates.firstKey();
+            String last = updates.lastKey();
+            int end = 0;
+            int length = Math.min(first.length(), last.length());
+            for (int i = 0; i < length && first.charAt(i) == last.charAt(i); i++) {
+                if (first.charAt(i) == '/') {
+                    end = i;
+                }
+            }
+            return first.substring(0, end);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DatabaseException;
+import com.google.firebase.database.snapshot.NamedNode;
+import com.google.firebase.database.snapshot.Node;
+import com.google.firebase.database.snapshot.NodeUtilities;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary, memory-mapped file holding one node tree. Layout: magic, version, received-at millis, the query key, the
+ * payload length and its CRC32, then the payload. The payload writes each node as a type tag followed by its value,
+ * or its child count and children, and its priority. Every write goes to its own temporary file that is moved into
+ * place, so readers never see a partial write; anything that does not check out is reported as corrupt.
+ */
+final class SnapshotFile {
+
+    private static final int MAGIC = 0x52584653;
+    private static final byte VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte TAG_EMPTY = 0;
+    private static final byte TAG_FALSE = 1;
+    private static final byte TAG_TRUE = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_CHILDREN = 6;
+
+    private SnapshotFile() {
+    }
+
+    static class Contents {
+
+        final long receivedAt;
+        final Node node;
+
+        Contents(final long receivedAt, final Node node) {
+            this.receivedAt = receivedAt;
+            this.node = node;
+        }
+    }
+
+    static void write(final File file, final String key, final long receivedAt, final Node node) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        writeNode(payload, node);
+        payload.flush();
+        byte[] content = payloadBytes.toByteArray();
+        byte[] keyBytes = key.getBytes(UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        int size = 4 + 1 + 8 + 4 + keyBytes.length + 4 + 4 + content.length;
+        File temp = File.createTempFile(file.getName() + ".", ".tmp", file.getParentFile());
+        boolean moved = false;
+        try {
+            RandomAccessFile output = new RandomAccessFile(temp, "rw");
+            try {
+                output.setLength(size);
+                MappedByteBuffer buffer = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(MAGIC).put(VERSION).putLong(receivedAt)
+                        .putInt(keyBytes.length).put(keyBytes)
+                        .putInt(content.length).putInt((int) crc.getValue())
+                        .put(content);
+                buffer.force();
+            } finally {
+                output.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns {@code null} when there is no file.
+     *
+     * @throws IOException when the file cannot be read or is corrupt
+     */
+    static Contents read(final File file, final String key) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                throw new IOException("not a snapshot file: " + file);
+            }
+            long receivedAt = buffer.getLong();
+            if (!key.equals(readString(buffer))) {
+                throw new IOException("snapshot file belongs to another query: " + file);
+            }
+            int length = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            if (length != buffer.remaining()) {
+                throw new IOException("truncated snapshot file: " + file);
+            }
+            ByteBuffer content = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(content.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("checksum mismatch in snapshot file: " + file);
+            }
+            Object value = readValue(content);
+            if (content.hasRemaining()) {
+                throw new IOException("trailing data in snapshot file: " + file);
+            }
+            return new Contents(receivedAt, NodeUtilities.NodeFromJSON(value));
+        } catch (BufferUnderflowException | DatabaseException e) {
+            throw new IOException("corrupt snapshot file: " + file, e);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void writeNode(final DataOutputStream output, final Node node) throws IOException {
+        if (node.isEmpty()) {
+            output.writeByte(TAG_EMPTY);
+            return;
+        }
+        if (node.isLeafNode()) {
+            Object value = node.getValue();
+            if (value instanceof Boolean) {
+                output.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Long) {
+                output.writeByte(TAG_LONG);
+                output.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                output.writeByte(TAG_DOUBLE);
+                output.writeDouble((Double) value);
+            } else {
+                output.writeByte(TAG_STRING);
+                writeString(output, String.valueOf(value));
+            }
+        } else {
+            output.writeByte(TAG_CHILDREN);
+            output.writeInt(node.getChildCount());
+            for (NamedNode child : node) {
+                writeString(output, child.getName().asString());
+                writeNode(output, child.getNode());
+            }
+        }
+        writeNode(output, node.getPriority());
+    }
+
+    private static Object readValue(final ByteBuffer buffer) throws IOException {
+        byte tag = buffer.get();
+        Object value;
+        switch (tag) {
+            case TAG_EMPTY:
+                return null;
+            case TAG_FALSE:
+                value = Boolean.FALSE;
+                break;
+            case TAG_TRUE:
+                value = Boolean.TRUE;
+                break;
+            case TAG_LONG:
+                value = buffer.getLong();
+                break;
+            case TAG_DOUBLE:
+                value = buffer.getDouble();
+                break;
+            case TAG_STRING:
+                value = readString(buffer);
+                break;
+            case TAG_CHILDREN:
+                int count = buffer.getInt();
+                if (count < 0 || count > buffer.remaining()) {
+                    throw new IOException("invalid child count " + count);
+                }
+                Map<String, Object> children = new LinkedHashMap<>(DataSnapshotMapper.hashCapacity(count));
+                for (int i = 0; i < count; i++) {
+                    String name = readString(buffer);
+                    children.put(name, readValue(buffer));
+                }
+                value = children;
+                break;
+            default:
+                throw new IOException("invalid tag " + tag);
+        }
+        Object priority = readValue(buffer);
+        if (priority == null) {
+            return value;
+        }
+        if (value instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> children = (Map<String, Object>) value;
+            children.put(".priority", priority);
+            return children;
+        }
+        Map<String, Object> withPriority = new LinkedHashMap<>();
+        withPriority.put(".value", value);
+        withPriority.put(".priority", priority);
+        return withPriority;
+    }
+
+    private static void writeString(final DataOutputStream output, final String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
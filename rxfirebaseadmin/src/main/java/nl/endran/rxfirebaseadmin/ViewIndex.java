@@ -0,0 +1,269 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DatabaseException;
+import rx.functions.Func1;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary index over one field of the values in a {@link MaterializedView}, maintained by the view on every change.
+ * Lookups read concurrent maps without locking and return the matching child keys, combine them with
+ * {@link MaterializedView#find(Set[])}.
+ */
+public abstract class ViewIndex<T> {
+
+    private final String name;
+    private final Func1<? super T, ?> extractor;
+
+    private ViewIndex(final String name, final Func1<? super T, ?> extractor) {
+        this.name = name;
+        this.extractor = extractor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void update(final String key, final T oldValue, final T newValue) {
+        Object oldField = oldValue != null ? extractor.call(oldValue) : null;
+        Object newField = newValue != null ? extractor.call(newValue) : null;
+        if (oldValue != null && newValue != null && Objects.equals(oldField, newField)) {
+            return;
+        }
+        if (oldValue != null) {
+            remove(key, oldField);
+        }
+        if (newValue != null) {
+            add(key, newField);
+        }
+    }
+
+    abstract void add(String key, Object field);
+
+    abstract void remove(String key, Object field);
+
+    static Set<String> newKeySet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    /**
+     * Reads a public field or getter by name from whatever class the values turn out to have. Like the SDK's own
+     * mapping, non-public members are not considered.
+     */
+    static <T> Func1<T, Object> property(final String property) {
+        return new Func1<T, Object>() {
+            private volatile Class<?> accessorClass;
+            private volatile Func1<Object, Object> accessor;
+
+            @Override
+            public Object call(T value) {
+                if (accessorClass != value.getClass()) {
+                    accessor = accessor(value.getClass(), property);
+                    accessorClass = value.getClass();
+                }
+                return accessor.call(value);
+            }
+        };
+    }
+
+    private static Func1<Object, Object> accessor(final Class<?> clazz, final String property) {
+        String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (String getterName : Arrays.asList("get" + suffix, "is" + suffix)) {
+            try {
+                final Method getter = clazz.getMethod(getterName);
+                return new Func1<Object, Object>() {
+                    @Override
+                    public Object call(Object value) {
+                        try {
+                            return getter.invoke(value);
+                        } catch (Exception e) {
+                            throw new DatabaseException("Failed to read property " + property + " of " + clazz, e);
+                        }
+                    }
+                };
+            } catch (NoSuchMethodException ignored) {
+            }
+        }
+        try {
+            final Field field = clazz.getField(property);
+            if (!Modifier.isStatic(field.getModifiers())) {
+                return new Func1<Object, Object>() {
+                    @Override
+                    public Object call(Object value) {
+                        try {
+                            return field.get(value);
+                        } catch (IllegalAccessException e) {
+                            throw new DatabaseException("Failed to read property " + property + " of " + clazz, e);
+                        }
+                    }
+                };
+            }
+        } catch (NoSuchFieldException ignored) {
+        }
+        throw new DatabaseException("No public field or getter for " + property + " found on " + clazz);
+    }
+
+    /**
+     * Equality index. Values whose field is {@code null} are indexed under {@code null}.
+     */
+    public static final class Hash<T> extends ViewIndex<T> {
+
+        private static final Object NULL_FIELD = new Object();
+
+        private final ConcurrentHashMap<Object, Set<String>> keysByField = new ConcurrentHashMap<>();
+
+        Hash(final String name, final Func1<? super T, ?> extractor) {
+            super(name, extractor);
+        }
+
+        public Set<String> keys(final Object field) {
+            Set<String> keys = keysByField.get(field != null ? field : NULL_FIELD);
+            return keys != null ? Collections.unmodifiableSet(keys) : Collections.<String>emptySet();
+        }
+
+        @Override
+        void add(final String key, final Object field) {
+            Object indexed = field != null ? field : NULL_FIELD;
+            Set<String> keys = keysByField.get(indexed);
+            if (keys == null) {
+                keys = newKeySet();
+                keysByField.put(indexed, keys);
+            }
+            keys.add(key);
+        }
+
+        @Override
+        void remove(final String key, final Object field) {
+            Object indexed = field != null ? field : NULL_FIELD;
+            Set<String> keys = keysByField.get(indexed);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysByField.remove(indexed);
+            }
+        }
+    }
+
+    /**
+     * Orders fields the way the database orders values: booleans, then numbers, then strings, then any other
+     * {@link Comparable}. Numbers compare by value, so a property the SDK reads back as {@link Long} for one child and
+     * {@link Double} for another stays comparable.
+     */
+    static final Comparator<Object> FIELD_ORDER = new Comparator<Object>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(Object left, Object right) {
+            int rank = Integer.compare(rank(left), rank(right));
+            if (rank != 0) {
+                return rank;
+            }
+            if (left instanceof Number) {
+                return compareNumbers((Number) left, (Number) right);
+            }
+            return ((Comparable<Object>) left).compareTo(right);
+        }
+
+        private int rank(Object field) {
+            if (field instanceof Boolean) {
+                return 0;
+            } else if (field instanceof Number) {
+                return 1;
+            } else if (field instanceof String) {
+                return 2;
+            }
+            return 3;
+        }
+
+        private int compareNumbers(Number left, Number right) {
+            if (isIntegral(left) && isIntegral(right)) {
+                return Long.compare(left.longValue(), right.longValue());
+            }
+            return Double.compare(left.doubleValue(), right.doubleValue());
+        }
+
+        private boolean isIntegral(Number number) {
+            return number instanceof Long || number instanceof Integer
+                    || number instanceof Short || number instanceof Byte;
+        }
+    };
+
+    /**
+     * Range index over {@link Comparable} fields, ordered by {@link #FIELD_ORDER}. Values whose field is {@code null}
+     * are not indexed.
+     */
+    public static final class Sorted<T> extends ViewIndex<T> {
+
+        private final ConcurrentSkipListMap<Object, Set<String>> keysByField = new ConcurrentSkipListMap<>(FIELD_ORDER);
+
+        Sorted(final String name, final Func1<? super T, ?> extractor) {
+            super(name, extractor);
+        }
+
+        public Set<String> keys(final Object field) {
+            Set<String> keys = keysByField.get(field);
+            return keys != null ? Collections.unmodifiableSet(keys) : Collections.<String>emptySet();
+        }
+
+        /**
+         * Keys whose field lies in the range, in field order. A {@code null} bound leaves that side open.
+         */
+        public Set<String> range(final Object from, final boolean fromInclusive,
+                                 final Object to, final boolean toInclusive) {
+            NavigableMap<Object, Set<String>> range = keysByField;
+            if (from != null) {
+                range = range.tailMap(from, fromInclusive);
+            }
+            if (to != null) {
+                range = range.headMap(to, toInclusive);
+            }
+            Set<String> result = new LinkedHashSet<>();
+            for (Set<String> keys : range.values()) {
+                result.addAll(keys);
+            }
+            return result;
+        }
+
+        @Override
+        void add(final String key, final Object field) {
+            if (field == null) {
+                return;
+            }
+            Set<String> keys = keysByField.get(field);
+            if (keys == null) {
+                keys = newKeySet();
+                keysByField.put(field, keys);
+            }
+            keys.add(key);
+        }
+
+        @Override
+        void remove(final String key, final Object field) {
+            if (field == null) {
+                return;
+            }
+            Set<String> keys = keysByField.get(field);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysByField.remove(field);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin.exceptions;
+
+import com.google.firebase.database.DataSnapshot;
+
+/**
+ * Signalled when the transaction handler returned {@code Transaction.abort()}, so nothing was committed.
+ */
+public class RxFirebaseTransactionAbortedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    protected DataSnapshot snapshot;
+
+    public RxFirebaseTransactionAbortedException(DataSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public DataSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return "RxFirebaseTransactionAbortedException{" +
+                "snapshot=" + snapshot +
+                '}';
+    }
+}
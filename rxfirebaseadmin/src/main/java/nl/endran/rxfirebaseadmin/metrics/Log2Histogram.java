@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Histogram of non-negative values in power-of-two buckets. Percentiles are reported as the upper bound of the bucket
+ * they fall in, so they are accurate to within a factor of two, which is enough to spot latency and size outliers.
+ * Each bucket is a {@link StripedCounter}, created the first time a value lands in it, so concurrent recorders rarely
+ * contend on the same cache line.
+ */
+public final class Log2Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicReferenceArray<StripedCounter> buckets = new AtomicReferenceArray<>(BUCKETS);
+    private final StripedCounter count = new StripedCounter();
+    private final StripedCounter sum = new StripedCounter();
+
+    public void record(final long value) {
+        long recorded = Math.max(0L, value);
+        bucketCounter(bucket(recorded)).increment();
+        count.increment();
+        sum.add(recorded);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public double getMean() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0.0 : (double) sum.sum() / recorded;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given quantile, for example {@code 0.99}.
+     */
+    public long getPercentile(final double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            StripedCounter counter = buckets.get(i);
+            counts[i] = counter != null ? counter.sum() : 0L;
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private StripedCounter bucketCounter(final int bucket) {
+        StripedCounter counter = buckets.get(bucket);
+        if (counter == null) {
+            buckets.compareAndSet(bucket, null, new StripedCounter());
+            counter = buckets.get(bucket);
+        }
+        return counter;
+    }
+
+    private static int bucket(final long value) {
+        return Math.min(BUCKETS - 1, BUCKETS - Long.numberOfLeadingZeros(value));
+    }
+
+    private static long upperBound(final int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
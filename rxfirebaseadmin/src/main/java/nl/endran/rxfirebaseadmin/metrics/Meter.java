@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin.metrics;
+
+/**
+ * Counts events and reports their rate. Marking only touches a {@link StripedCounter}, the rate is computed when it is
+ * read, over the interval since the previous read that was at least a second ago.
+ */
+public final class Meter {
+
+    private static final long MIN_INTERVAL_NANOS = 1000000000L;
+
+    private final StripedCounter count = new StripedCounter();
+
+    private long lastCount;
+    private long lastNanos = System.nanoTime();
+    private double rate;
+
+    public void mark() {
+        count.increment();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Events per second over the most recent measured interval.
+     */
+    public synchronized double getRatePerSecond() {
+        long now = System.nanoTime();
+        long elapsed = now - lastNanos;
+        if (elapsed >= MIN_INTERVAL_NANOS) {
+            long current = count.sum();
+            rate = (current - lastCount) * 1e9 / elapsed;
+            lastCount = current;
+            lastNanos = now;
+        }
+        return rate;
+    }
+}
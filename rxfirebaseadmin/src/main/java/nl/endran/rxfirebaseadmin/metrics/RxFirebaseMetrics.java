@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin.metrics;
+
+import nl.endran.rxfirebaseadmin.RxFirebaseChildEvent;
+
+/**
+ * Receives measurements from {@code RxFirebaseDatabase} and {@code DataSnapshotMapper}. Callbacks run on the thread
+ * that produced the measurement, often the Firebase event thread, so implementations must be thread safe and cheap.
+ * {@link #NONE} is installed by default, with it the library does not measure anything.
+ */
+public interface RxFirebaseMetrics {
+
+    RxFirebaseMetrics NONE = new RxFirebaseMetrics() {
+        @Override
+        public void onListenerAdded(String path) {
+        }
+
+        @Override
+        public void onListenerRemoved(String path) {
+        }
+
+        @Override
+        public void onValueEvent(String path) {
+        }
+
+        @Override
+        public void onChildEvent(String path, RxFirebaseChildEvent.EventType eventType) {
+        }
+
+        @Override
+        public void onFirstEvent(String path, long latencyNanos) {
+        }
+
+        @Override
+        public void onSnapshotChildCount(long childCount) {
+        }
+
+        @Override
+        public void onMapping(long latencyNanos) {
+        }
+
+        @Override
+        public void onError(Throwable error) {
+        }
+    };
+
+    void onListenerAdded(String path);
+
+    void onListenerRemoved(String path);
+
+    void onValueEvent(String path);
+
+    void onChildEvent(String path, RxFirebaseChildEvent.EventType eventType);
+
+    /**
+     * Time from subscribing to a listener until its first event.
+     */
+    void onFirstEvent(String path, long latencyNanos);
+
+    /**
+     * Number of children of a snapshot mapped to a list or map.
+     */
+    void onSnapshotChildCount(long childCount);
+
+    void onMapping(long latencyNanos);
+
+    /**
+     * A {@code RxFirebaseDataException} from a cancelled listener or a {@code RxFirebaseDataCastException} from a mapper.
+     */
+    void onError(Throwable error);
+}
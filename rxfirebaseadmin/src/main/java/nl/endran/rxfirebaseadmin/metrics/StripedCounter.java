@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over padded cells picked by thread id, so threads updating it concurrently rarely touch the same
+ * cache line. Reads sum all cells and are not atomic with respect to concurrent updates.
+ */
+public final class StripedCounter {
+
+    private static final int PADDING = 16;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void add(final long value) {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+        cells.addAndGet(stripe * PADDING, value);
+    }
+
+    public long sum() {
+        long sum = 0L;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            sum += cells.get(stripe * PADDING);
+        }
+        return sum;
+    }
+
+    private static int stripes() {
+        int target = Runtime.getRuntime().availableProcessors() * 2;
+        int stripes = 1;
+        while (stripes < target && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
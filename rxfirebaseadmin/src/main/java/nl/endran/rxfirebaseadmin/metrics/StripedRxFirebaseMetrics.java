@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin.metrics;
+
+import nl.endran.rxfirebaseadmin.RxFirebaseChildEvent;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataCastException;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default {@link RxFirebaseMetrics} that keeps everything in memory. Per-event measurements go to striped counters so
+ * concurrent event threads do not contend; only listener registration, which is rare, touches a shared map.
+ */
+public class StripedRxFirebaseMetrics implements RxFirebaseMetrics {
+
+    private final ConcurrentMap<String, AtomicLong> activeListeners = new ConcurrentHashMap<>();
+    private final Meter valueEvents = new Meter();
+    private final Map<RxFirebaseChildEvent.EventType, Meter> childEvents =
+            new EnumMap<>(RxFirebaseChildEvent.EventType.class);
+    private final Log2Histogram firstEventLatency = new Log2Histogram();
+    private final Log2Histogram mappingLatency = new Log2Histogram();
+    private final Log2Histogram snapshotChildCounts = new Log2Histogram();
+    private final StripedCounter dataExceptions = new StripedCounter();
+    private final StripedCounter dataCastExceptions = new StripedCounter();
+
+    public StripedRxFirebaseMetrics() {
+        for (RxFirebaseChildEvent.EventType eventType : RxFirebaseChildEvent.EventType.values()) {
+            childEvents.put(eventType, new Meter());
+        }
+    }
+
+    @Override
+    public void onListenerAdded(final String path) {
+        AtomicLong count = activeListeners.get(path);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = activeListeners.putIfAbsent(path, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    @Override
+    public void onListenerRemoved(final String path) {
+        AtomicLong count = activeListeners.get(path);
+        if (count != null && count.decrementAndGet() <= 0) {
+            activeListeners.remove(path, count);
+        }
+    }
+
+    @Override
+    public void onValueEvent(final String path) {
+        valueEvents.mark();
+    }
+
+    @Override
+    public void onChildEvent(final String path, final RxFirebaseChildEvent.EventType eventType) {
+        childEvents.get(eventType).mark();
+    }
+
+    @Override
+    public void onFirstEvent(final String path, final long latencyNanos) {
+        firstEventLatency.record(latencyNanos);
+    }
+
+    @Override
+    public void onSnapshotChildCount(final long childCount) {
+        snapshotChildCounts.record(childCount);
+    }
+
+    @Override
+    public void onMapping(final long latencyNanos) {
+        mappingLatency.record(latencyNanos);
+    }
+
+    @Override
+    public void onError(final Throwable error) {
+        if (error instanceof RxFirebaseDataCastException) {
+            dataCastExceptions.increment();
+        } else if (error instanceof RxFirebaseDataException) {
+            dataExceptions.increment();
+        }
+    }
+
+    /**
+     * Number of attached listeners per query path, sorted by path.
+     */
+    public Map<String, Long> getActiveListeners() {
+        Map<String, Long> listeners = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : activeListeners.entrySet()) {
+            long count = entry.getValue().get();
+            if (count > 0) {
+                listeners.put(entry.getKey(), count);
+            }
+        }
+        return listeners;
+    }
+
+    public long getActiveListenerCount(final String path) {
+        AtomicLong count = activeListeners.get(path);
+        return count == null ? 0L : Math.max(0L, count.get());
+    }
+
+    public Meter getValueEvents() {
+        return valueEvents;
+    }
+
+    public Meter getChildEvents(final RxFirebaseChildEvent.EventType eventType) {
+        return childEvents.get(eventType);
+    }
+
+    public Log2Histogram getFirstEventLatency() {
+        return firstEventLatency;
+    }
+
+    public Log2Histogram getMappingLatency() {
+        return mappingLatency;
+    }
+
+    public Log2Histogram getSnapshotChildCounts() {
+        return snapshotChildCounts;
+    }
+
+    public long getDataExceptionCount() {
+        return dataExceptions.sum();
+    }
+
+    public long getDataCastExceptionCount() {
+        return dataCastExceptions.sum();
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.firebase.database;
+
+import com.google.firebase.database.core.Path;
+import com.google.firebase.database.core.view.QueryParams;
+import com.google.firebase.database.core.view.QuerySpec;
+import com.google.firebase.database.snapshot.ChildKey;
+import com.google.firebase.database.snapshot.EmptyNode;
+import com.google.firebase.database.snapshot.IndexedNode;
+import com.google.firebase.database.snapshot.NamedNode;
+import com.google.firebase.database.snapshot.Node;
+import com.google.firebase.database.snapshot.NodeUtilities;
+import com.google.firebase.database.snapshot.PriorityUtilities;
+import com.google.firebase.database.utilities.encoding.CustomClassMapper;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in for a Firebase Realtime Database, so the Rx layer can be driven at high event rates without a
+ * network. Data lives in one immutable SDK {@link Node} tree. Writes, listener registration and all callbacks run on
+ * a single event thread, like the SDK's event target, so listeners see writes in order and never concurrently.
+ * <p>
+ * Queries support the SDK's ordering, range and limit parameters; the SDK's own node filters compute each view, and
+ * child events are derived by comparing a listener's previous and current view.
+ */
+public class InMemoryDatabase {
+
+    private static final AtomicInteger databaseNumber = new AtomicInteger();
+
+    private final ExecutorService eventTarget;
+    private final NavigableMap<Path, List<Registration>> registrationsByPath = new TreeMap<>();
+    private final Map<Object, List<Registration>> registrationsByListener = new IdentityHashMap<>();
+    private final AtomicInteger listenerCount = new AtomicInteger();
+    private final AtomicInteger pushCount = new AtomicInteger();
+
+    private Node root = EmptyNode.Empty();
+
+    public InMemoryDatabase() {
+        final String name = "InMemoryDatabase-" + databaseNumber.incrementAndGet() + "-EventTarget";
+        eventTarget = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public InMemoryReference getReference() {
+        return new InMemoryReference(this, Path.getEmptyPath());
+    }
+
+    public InMemoryReference getReference(String path) {
+        return new InMemoryReference(this, new Path(path));
+    }
+
+    /**
+     * Number of registered value and child listeners.
+     */
+    public int getListenerCount() {
+        return listenerCount.get();
+    }
+
+    /**
+     * Blocks until every write and callback queued so far has run.
+     */
+    public void awaitIdle() throws InterruptedException {
+        try {
+            eventTarget.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void shutdown() {
+        eventTarget.shutdownNow();
+    }
+
+    void addListener(final QuerySpec spec, final Object listener, final boolean once) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                Registration registration = new Registration(spec, listener);
+                register(registration);
+                IndexedNode view = view(spec);
+                if (listener instanceof ValueEventListener) {
+                    ((ValueEventListener) listener).onDataChange(snapshot(spec.getPath(), view));
+                } else {
+                    fireChildEvents(registration, IndexedNode.from(EmptyNode.Empty(), spec.getIndex()), view);
+                }
+                if (once) {
+                    unregister(registration);
+                } else {
+                    registration.view = view;
+                }
+            }
+        });
+    }
+
+    void removeListener(final Object listener) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                List<Registration> registrations = registrationsByListener.get(listener);
+                if (registrations != null) {
+                    for (Registration registration : new ArrayList<>(registrations)) {
+                        unregister(registration);
+                    }
+                }
+            }
+        });
+    }
+
+    void set(final Path path, final Object value, final Object priority, final Runnable onComplete) {
+        final Node node = NodeUtilities.NodeFromJSON(CustomClassMapper.convertToPlainJavaTypes(value),
+                PriorityUtilities.parsePriority(priority));
+        run(new Runnable() {
+            @Override
+            public void run() {
+                root = root.updateChild(path, node);
+                dispatch(path);
+                complete(onComplete);
+            }
+        });
+    }
+
+    void update(final Path path, final Map<String, Object> values, final Runnable onComplete) {
+        final Map<Path, Node> nodes = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : CustomClassMapper.convertToPlainJavaTypes(values).entrySet()) {
+            nodes.put(path.child(new Path(entry.getKey())), NodeUtilities.NodeFromJSON(entry.getValue()));
+        }
+        run(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<Path, Node> entry : nodes.entrySet()) {
+                    root = root.updateChild(entry.getKey(), entry.getValue());
+                }
+                dispatch(path);
+                complete(onComplete);
+            }
+        });
+    }
+
+    void transaction(final InMemoryReference reference, final Transaction.Handler handler) {
+        final Path path = reference.getPath();
+        run(new Runnable() {
+            @Override
+            public void run() {
+                Transaction.Result result;
+                try {
+                    result = handler.doTransaction(new MutableData(root.getChild(path)));
+                } catch (Throwable e) {
+                    handler.onComplete(DatabaseError.fromException(e), false, null);
+                    return;
+                }
+                if (result.isSuccess()) {
+                    root = root.updateChild(path, result.getNode());
+                    dispatch(path);
+                }
+                handler.onComplete(null, result.isSuccess(),
+                        new DataSnapshot(reference, IndexedNode.from(root.getChild(path))));
+            }
+        });
+    }
+
+    String nextPushKey() {
+        return String.format("-%019d", pushCount.incrementAndGet());
+    }
+
+    private void run(final Runnable task) {
+        eventTarget.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        });
+    }
+
+    private void complete(final Runnable onComplete) {
+        if (onComplete != null) {
+            onComplete.run();
+        }
+    }
+
+    private void register(final Registration registration) {
+        add(registrationsByPath, registration.spec.getPath(), registration);
+        add(registrationsByListener, registration.listener, registration);
+        listenerCount.incrementAndGet();
+    }
+
+    private void unregister(final Registration registration) {
+        if (remove(registrationsByPath, registration.spec.getPath(), registration)) {
+            remove(registrationsByListener, registration.listener, registration);
+            listenerCount.decrementAndGet();
+        }
+    }
+
+    private static <K> void add(final Map<K, List<Registration>> map, final K key, final Registration registration) {
+        List<Registration> registrations = map.get(key);
+        if (registrations == null) {
+            registrations = new ArrayList<>();
+            map.put(key, registrations);
+        }
+        registrations.add(registration);
+    }
+
+    private static <K> boolean remove(final Map<K, List<Registration>> map, final K key,
+                                      final Registration registration) {
+        List<Registration> registrations = map.get(key);
+        if (registrations == null || !registrations.remove(registration)) {
+            return false;
+        }
+        if (registrations.isEmpty()) {
+            map.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Notifies the listeners at, above and below the written path.
+     */
+    private void dispatch(final Path written) {
+        List<Registration> affected = new ArrayList<>();
+        for (Path ancestor = written.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            List<Registration> registrations = registrationsByPath.get(ancestor);
+            if (registrations != null) {
+                affected.addAll(registrations);
+            }
+        }
+        for (Map.Entry<Path, List<Registration>> entry : registrationsByPath.tailMap(written, true).entrySet()) {
+            if (!written.contains(entry.getKey())) {
+                break;
+            }
+            affected.addAll(entry.getValue());
+        }
+        for (Registration registration : affected) {
+            IndexedNode view = view(registration.spec);
+            IndexedNode previous = registration.view;
+            if (previous == null || view.getNode().equals(previous.getNode())) {
+                continue;
+            }
+            registration.view = view;
+            if (registration.listener instanceof ValueEventListener) {
+                ((ValueEventListener) registration.listener).onDataChange(snapshot(registration.spec.getPath(), view));
+            } else {
+                fireChildEvents(registration, previous, view);
+            }
+        }
+    }
+
+    private IndexedNode view(final QuerySpec spec) {
+        QueryParams params = spec.getParams();
+        IndexedNode full = IndexedNode.from(root.getChild(spec.getPath()), spec.getIndex());
+        if (params.loadsAllData()) {
+            return full;
+        }
+        return params.getNodeFilter().updateFullNode(IndexedNode.from(EmptyNode.Empty(), spec.getIndex()), full, null);
+    }
+
+    /**
+     * Fires removed, added, moved and changed events, in that order, like the SDK's event generator.
+     */
+    private void fireChildEvents(final Registration registration, final IndexedNode previous, final IndexedNode current) {
+        ChildEventListener listener = (ChildEventListener) registration.listener;
+        Path path = registration.spec.getPath();
+        Map<ChildKey, String> previousNames = previousNames(previous);
+        Map<ChildKey, String> currentNames = previousNames(current);
+
+        for (NamedNode child : previous) {
+            if (!currentNames.containsKey(child.getName())) {
+                listener.onChildRemoved(snapshot(path.child(child.getName()), child.getNode()));
+            }
+        }
+        List<NamedNode> changed = new ArrayList<>();
+        for (NamedNode child : current) {
+            ChildKey key = child.getName();
+            if (!previousNames.containsKey(key)) {
+                listener.onChildAdded(snapshot(path.child(key), child.getNode()), currentNames.get(key));
+            } else if (!child.getNode().equals(previous.getNode().getImmediateChild(key))) {
+                changed.add(child);
+            }
+        }
+        for (NamedNode child : changed) {
+            ChildKey key = child.getName();
+            if (!equal(previousNames.get(key), currentNames.get(key))) {
+                listener.onChildMoved(snapshot(path.child(key), child.getNode()), currentNames.get(key));
+            }
+        }
+        for (NamedNode child : changed) {
+            ChildKey key = child.getName();
+            listener.onChildChanged(snapshot(path.child(key), child.getNode()), currentNames.get(key));
+        }
+    }
+
+    private static Map<ChildKey, String> previousNames(final IndexedNode view) {
+        Map<ChildKey, String> names = new HashMap<>();
+        String previousName = null;
+        for (NamedNode child : view) {
+            names.put(child.getName(), previousName);
+            previousName = child.getName().asString();
+        }
+        return names;
+    }
+
+    private static boolean equal(final String first, final String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    private DataSnapshot snapshot(final Path path, final IndexedNode view) {
+        return new DataSnapshot(new InMemoryReference(this, path), view);
+    }
+
+    private DataSnapshot snapshot(final Path path, final Node node) {
+        return new DataSnapshot(new InMemoryReference(this, path), IndexedNode.from(node));
+    }
+
+    private static class Registration {
+
+        private final QuerySpec spec;
+        private final Object listener;
+        private IndexedNode view;
+
+        Registration(final QuerySpec spec, final Object listener) {
+            this.spec = spec;
+            this.listener = listener;
+        }
+    }
+}
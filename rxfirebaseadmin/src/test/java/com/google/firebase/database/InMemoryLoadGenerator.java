@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.firebase.database;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes a stream of small records round-robin over a number of child keys of a reference, optionally paced to a
+ * target rate. Each record carries its sequence number and the {@link System#nanoTime()} it was written at, so
+ * listeners can measure delivery latency with {@link #latencyNanos(DataSnapshot)}.
+ */
+public class InMemoryLoadGenerator {
+
+    public static final String SEQUENCE = "sequence";
+    public static final String SENT_AT = "sentAt";
+
+    private final InMemoryReference reference;
+    private final int keys;
+
+    public InMemoryLoadGenerator(InMemoryReference reference, int keys) {
+        this.reference = reference;
+        this.keys = keys;
+    }
+
+    public static String key(int index) {
+        return String.format("key%06d", index);
+    }
+
+    public static long latencyNanos(DataSnapshot dataSnapshot) {
+        return System.nanoTime() - dataSnapshot.child(SENT_AT).getValue(Long.class);
+    }
+
+    /**
+     * Writes {@code events} records from the calling thread, {@code eventsPerSecond} of zero writes as fast as the
+     * database accepts them. Returns the time spent writing, in nanoseconds.
+     */
+    public long generate(int events, int eventsPerSecond) {
+        long start = System.nanoTime();
+        long interval = eventsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / eventsPerSecond : 0L;
+        for (int i = 0; i < events; i++) {
+            if (interval > 0) {
+                long ahead = start + i * interval - System.nanoTime();
+                if (ahead > TimeUnit.MILLISECONDS.toNanos(1)) {
+                    LockSupport.parkNanos(ahead);
+                }
+            }
+            Map<String, Object> record = new HashMap<>();
+            record.put(SEQUENCE, (long) i);
+            record.put(SENT_AT, System.nanoTime());
+            reference.child(key(i % keys)).setValue(record, (DatabaseReference.CompletionListener) null);
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.firebase.database;
+
+import com.google.firebase.database.core.Path;
+import com.google.firebase.database.core.view.QueryParams;
+
+/**
+ * Query against an {@link InMemoryDatabase}. Ordering, range and limit methods are validated by the SDK and the
+ * resulting parameters are kept, listeners are registered with the in-memory database.
+ */
+public class InMemoryQuery extends Query {
+
+    private final InMemoryDatabase database;
+    private final boolean orderByCalled;
+
+    InMemoryQuery(InMemoryDatabase database, Path path, QueryParams params, boolean orderByCalled) {
+        super(null, path, params, orderByCalled);
+        this.database = database;
+        this.orderByCalled = orderByCalled;
+    }
+
+    @Override
+    public ValueEventListener addValueEventListener(ValueEventListener listener) {
+        database.addListener(getSpec(), listener, false);
+        return listener;
+    }
+
+    @Override
+    public ChildEventListener addChildEventListener(ChildEventListener listener) {
+        database.addListener(getSpec(), listener, false);
+        return listener;
+    }
+
+    @Override
+    public void addListenerForSingleValueEvent(ValueEventListener listener) {
+        database.addListener(getSpec(), listener, true);
+    }
+
+    @Override
+    public void removeEventListener(ValueEventListener listener) {
+        database.removeListener(listener);
+    }
+
+    @Override
+    public void removeEventListener(ChildEventListener listener) {
+        database.removeListener(listener);
+    }
+
+    @Override
+    public void keepSynced(boolean keepSynced) {
+    }
+
+    @Override
+    public DatabaseReference getRef() {
+        return new InMemoryReference(database, path);
+    }
+
+    @Override
+    public Query startAt(String value) {
+        return wrap(super.startAt(value), orderByCalled);
+    }
+
+    @Override
+    public Query startAt(String value, String key) {
+        return wrap(super.startAt(value, key), orderByCalled);
+    }
+
+    @Override
+    public Query startAt(double value) {
+        return wrap(super.startAt(value), orderByCalled);
+    }
+
+    @Override
+    public Query startAt(double value, String key) {
+        return wrap(super.startAt(value, key), orderByCalled);
+    }
+
+    @Override
+    public Query startAt(boolean value) {
+        return wrap(super.startAt(value), orderByCalled);
+    }
+
+    @Override
+    public Query startAt(boolean value, String key) {
+        return wrap(super.startAt(value, key), orderByCalled);
+    }
+
+    @Override
+    public Query endAt(String value) {
+        return wrap(super.endAt(value), orderByCalled);
+    }
+
+    @Override
+    public Query endAt(String value, String key) {
+        return wrap(super.endAt(value, key), orderByCalled);
+    }
+
+    @Override
+    public Query endAt(double value) {
+        return wrap(super.endAt(value), orderByCalled);
+    }
+
+    @Override
+    public Query endAt(double value, String key) {
+        return wrap(super.endAt(value, key), orderByCalled);
+    }
+
+    @Override
+    public Query endAt(boolean value) {
+        return wrap(super.endAt(value), orderByCalled);
+    }
+
+    @Override
+    public Query endAt(boolean value, String key) {
+        return wrap(super.endAt(value, key), orderByCalled);
+    }
+
+    @Override
+    public Query equalTo(String value) {
+        return wrap(super.equalTo(value), orderByCalled);
+    }
+
+    @Override
+    public Query equalTo(String value, String key) {
+        return wrap(super.equalTo(value, key), orderByCalled);
+    }
+
+    @Override
+    public Query equalTo(double value) {
+        return wrap(super.equalTo(value), orderByCalled);
+    }
+
+    @Override
+    public Query equalTo(double value, String key) {
+        return wrap(super.equalTo(value, key), orderByCalled);
+    }
+
+    @Override
+    public Query equalTo(boolean value) {
+        return wrap(super.equalTo(value), orderByCalled);
+    }
+
+    @Override
+    public Query equalTo(boolean value, String key) {
+        return wrap(super.equalTo(value, key), orderByCalled);
+    }
+
+    @Override
+    public Query limitToFirst(int limit) {
+        return wrap(super.limitToFirst(limit), orderByCalled);
+    }
+
+    @Override
+    public Query limitToLast(int limit) {
+        return wrap(super.limitToLast(limit), orderByCalled);
+    }
+
+    @Override
+    public Query orderByChild(String path) {
+        return wrap(super.orderByChild(path), true);
+    }
+
+    @Override
+    public Query orderByPriority() {
+        return wrap(super.orderByPriority(), true);
+    }
+
+    @Override
+    public Query orderByKey() {
+        return wrap(super.orderByKey(), true);
+    }
+
+    @Override
+    public Query orderByValue() {
+        return wrap(super.orderByValue(), true);
+    }
+
+    private Query wrap(Query query, boolean orderByCalled) {
+        return new InMemoryQuery(database, path, query.getSpec().getParams(), orderByCalled);
+    }
+}
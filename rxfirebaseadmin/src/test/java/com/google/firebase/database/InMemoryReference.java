@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.firebase.database;
+
+import com.google.firebase.database.core.Path;
+import com.google.firebase.database.core.view.QueryParams;
+import com.google.firebase.tasks.Task;
+import com.google.firebase.tasks.TaskCompletionSource;
+
+import java.util.Map;
+
+/**
+ * Reference into an {@link InMemoryDatabase}. Supports listeners, queries, writes and transactions; completion
+ * listeners and tasks complete on the database's event thread after the listeners have seen the write.
+ */
+public class InMemoryReference extends DatabaseReference {
+
+    private final InMemoryDatabase database;
+
+    InMemoryReference(InMemoryDatabase database, Path path) {
+        super(null, path);
+        this.database = database;
+    }
+
+    public InMemoryDatabase getInMemoryDatabase() {
+        return database;
+    }
+
+    @Override
+    public InMemoryReference child(String pathString) {
+        return new InMemoryReference(database, path.child(new Path(pathString)));
+    }
+
+    @Override
+    public InMemoryReference push() {
+        return child(database.nextPushKey());
+    }
+
+    @Override
+    public InMemoryReference getParent() {
+        Path parent = path.getParent();
+        return parent == null ? null : new InMemoryReference(database, parent);
+    }
+
+    @Override
+    public InMemoryReference getRoot() {
+        return new InMemoryReference(database, Path.getEmptyPath());
+    }
+
+    @Override
+    public DatabaseReference getRef() {
+        return this;
+    }
+
+    @Override
+    public ValueEventListener addValueEventListener(ValueEventListener listener) {
+        return query().addValueEventListener(listener);
+    }
+
+    @Override
+    public ChildEventListener addChildEventListener(ChildEventListener listener) {
+        return query().addChildEventListener(listener);
+    }
+
+    @Override
+    public void addListenerForSingleValueEvent(ValueEventListener listener) {
+        query().addListenerForSingleValueEvent(listener);
+    }
+
+    @Override
+    public void removeEventListener(ValueEventListener listener) {
+        database.removeListener(listener);
+    }
+
+    @Override
+    public void removeEventListener(ChildEventListener listener) {
+        database.removeListener(listener);
+    }
+
+    @Override
+    public void keepSynced(boolean keepSynced) {
+    }
+
+    @Override
+    public Task<Void> setValue(Object value) {
+        return setValue(value, (Object) null);
+    }
+
+    @Override
+    public Task<Void> setValue(Object value, Object priority) {
+        TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        database.set(path, value, priority, complete(source));
+        return source.getTask();
+    }
+
+    @Override
+    public void setValue(Object value, CompletionListener listener) {
+        setValue(value, null, listener);
+    }
+
+    @Override
+    public void setValue(Object value, Object priority, CompletionListener listener) {
+        database.set(path, value, priority, complete(listener));
+    }
+
+    @Override
+    public Task<Void> updateChildren(Map<String, Object> update) {
+        TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        database.update(path, update, complete(source));
+        return source.getTask();
+    }
+
+    @Override
+    public void updateChildren(Map<String, Object> update, CompletionListener listener) {
+        database.update(path, update, complete(listener));
+    }
+
+    @Override
+    public Task<Void> removeValue() {
+        return setValue(null);
+    }
+
+    @Override
+    public void removeValue(CompletionListener listener) {
+        setValue(null, listener);
+    }
+
+    @Override
+    public void runTransaction(Transaction.Handler handler) {
+        runTransaction(handler, true);
+    }
+
+    @Override
+    public void runTransaction(Transaction.Handler handler, boolean fireLocalEvents) {
+        database.transaction(this, handler);
+    }
+
+    @Override
+    public Query startAt(String value) {
+        return query().startAt(value);
+    }
+
+    @Override
+    public Query startAt(String value, String key) {
+        return query().startAt(value, key);
+    }
+
+    @Override
+    public Query startAt(double value) {
+        return query().startAt(value);
+    }
+
+    @Override
+    public Query startAt(double value, String key) {
+        return query().startAt(value, key);
+    }
+
+    @Override
+    public Query startAt(boolean value) {
+        return query().startAt(value);
+    }
+
+    @Override
+    public Query startAt(boolean value, String key) {
+        return query().startAt(value, key);
+    }
+
+    @Override
+    public Query endAt(String value) {
+        return query().endAt(value);
+    }
+
+    @Override
+    public Query endAt(String value, String key) {
+        return query().endAt(value, key);
+    }
+
+    @Override
+    public Query endAt(double value) {
+        return query().endAt(value);
+    }
+
+    @Override
+    public Query endAt(double value, String key) {
+        return query().endAt(value, key);
+    }
+
+    @Override
+    public Query endAt(boolean value) {
+        return query().endAt(value);
+    }
+
+    @Override
+    public Query endAt(boolean value, String key) {
+        return query().endAt(value, key);
+    }
+
+    @Override
+    public Query equalTo(String value) {
+        return query().equalTo(value);
+    }
+
+    @Override
+    public Query equalTo(String value, String key) {
+        return query().equalTo(value, key);
+    }
+
+    @Override
+    public Query equalTo(double value) {
+        return query().equalTo(value);
+    }
+
+    @Override
+    public Query equalTo(double value, String key) {
+        return query().equalTo(value, key);
+    }
+
+    @Override
+    public Query equalTo(boolean value) {
+        return query().equalTo(value);
+    }
+
+    @Override
+    public Query equalTo(boolean value, String key) {
+        return query().equalTo(value, key);
+    }
+
+    @Override
+    public Query limitToFirst(int limit) {
+        return query().limitToFirst(limit);
+    }
+
+    @Override
+    public Query limitToLast(int limit) {
+        return query().limitToLast(limit);
+    }
+
+    @Override
+    public Query orderByChild(String path) {
+        return query().orderByChild(path);
+    }
+
+    @Override
+    public Query orderByPriority() {
+        return query().orderByPriority();
+    }
+
+    @Override
+    public Query orderByKey() {
+        return query().orderByKey();
+    }
+
+    @Override
+    public Query orderByValue() {
+        return query().orderByValue();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof InMemoryReference
+                && ((InMemoryReference) other).database == database
+                && ((InMemoryReference) other).path.equals(path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "memory:" + path;
+    }
+
+    private InMemoryQuery query() {
+        return new InMemoryQuery(database, path, QueryParams.DEFAULT_PARAMS, false);
+    }
+
+    private Runnable complete(final CompletionListener listener) {
+        if (listener == null) {
+            return null;
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                listener.onComplete(null, InMemoryReference.this);
+            }
+        };
+    }
+
+    private Runnable complete(final TaskCompletionSource<Void> source) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                source.setResult(null);
+            }
+        };
+    }
+}
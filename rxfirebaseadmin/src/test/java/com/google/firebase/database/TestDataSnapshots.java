@@ -0,0 +1,33 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.firebase.database;
+
+import com.google.firebase.database.core.Path;
+import com.google.firebase.database.snapshot.IndexedNode;
+import com.google.firebase.database.snapshot.NodeUtilities;
+
+/**
+ * Builds real, offline {@link DataSnapshot}s from plain Java values. Lives in the SDK package because the snapshot
+ * constructor is package-private.
+ */
+public class TestDataSnapshots {
+
+    public static DataSnapshot of(String path, Object value) {
+        return new DataSnapshot(new DatabaseReference(null, new Path(path)),
+                IndexedNode.from(NodeUtilities.NodeFromJSON(value)));
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class DataSnapshotMapperTests {
+
+    @Test
+    public void testCompiled_MatchesSdkForBean() {
+        Map<String, Object> child = new HashMap<>();
+        child.put("id", 7);
+        child.put("name", "child");
+
+        Map<String, Object> value = new HashMap<>();
+        value.put("id", 42);
+        value.put("name", "parent");
+        value.put("score", 3);
+        value.put("active", true);
+        value.put("color", "RED");
+        value.put("renamed", "annotated");
+        value.put("tags", Arrays.asList("a", "b"));
+        value.put("children", Arrays.asList(child, child));
+        value.put("byKey", Collections.singletonMap("x", child));
+        value.put("nested", child);
+        value.put("wrapped", Collections.singletonMap("value", child));
+        value.put("raw", Collections.singletonMap("any", 1));
+        value.put("unknown", "ignored");
+
+        DataSnapshot dataSnapshot = TestDataSnapshots.of("root/bean", value);
+
+        Bean expected = dataSnapshot.getValue(Bean.class);
+        Bean actual = DataSnapshotMapper.compiled(Bean.class).call(dataSnapshot);
+
+        assertThat(actual).isEqualTo(expected);
+        assertThat(actual.nested.name).isEqualTo("child");
+        assertThat(actual.wrapped.value.id).isEqualTo(7);
+        assertThat(actual.score).isEqualTo(3.0);
+    }
+
+    @Test
+    public void testCompiled_MatchesSdkForPrimitives() {
+        DataSnapshot dataSnapshot = TestDataSnapshots.of("root/value", 12);
+
+        assertThat(DataSnapshotMapper.compiled(Long.class).call(dataSnapshot)).isEqualTo(dataSnapshot.getValue(Long.class));
+        assertThat(DataSnapshotMapper.compiled(Integer.class).call(dataSnapshot)).isEqualTo(12);
+        assertThat(DataSnapshotMapper.compiled(Double.class).call(dataSnapshot)).isEqualTo(12.0);
+    }
+
+    @Test
+    public void testCompiled_SparseArrayLikeNode() {
+        Map<String, Object> items = new HashMap<>();
+        items.put("0", "zero");
+        items.put("2", "two");
+        Map<String, Object> value = new HashMap<>();
+        value.put("tags", items);
+
+        DataSnapshot dataSnapshot = TestDataSnapshots.of("root/bean", value);
+
+        assertThat(DataSnapshotMapper.compiled(Bean.class).call(dataSnapshot).tags)
+                .isEqualTo(dataSnapshot.getValue(Bean.class).tags)
+                .containsExactly("zero", null, "two");
+    }
+
+    @Test
+    public void testCompiled_ThrowOnExtraProperties() {
+        Map<String, Object> value = new HashMap<>();
+        value.put("id", 1);
+        value.put("other", 2);
+        DataSnapshot dataSnapshot = TestDataSnapshots.of("root/strict", value);
+
+        assertSameError(dataSnapshot, Strict.class);
+    }
+
+    @Test
+    public void testCompiled_SameErrors() {
+        Map<String, Object> value = new HashMap<>();
+        value.put("id", "not a number");
+
+        assertSameError(TestDataSnapshots.of("root/bean", value), Bean.class);
+        assertSameError(TestDataSnapshots.of("root/bean", 5), Bean.class);
+        assertSameError(TestDataSnapshots.of("root/bean", Collections.singletonMap("id", 1)), NoConstructor.class);
+        assertSameError(TestDataSnapshots.of("root/bean", Collections.singletonMap("color", "BLUE")), Bean.class);
+    }
+
+    @Test
+    public void testParallelListOf_KeepsChildOrder() {
+        DataSnapshot dataSnapshot = TestDataSnapshots.of("root/children", children(1000));
+
+        List<Child> sequential = DataSnapshotMapper.listOf(Child.class).call(dataSnapshot);
+        List<Child> parallel = DataSnapshotMapper.parallelListOf(Child.class, 10).call(dataSnapshot);
+
+        assertThat(parallel).hasSize(1000).isEqualTo(sequential);
+    }
+
+    @Test
+    public void testParallelMapOf_KeepsChildOrder() {
+        DataSnapshot dataSnapshot = TestDataSnapshots.of("root/children", children(1000));
+
+        LinkedHashMap<String, Child> sequential = DataSnapshotMapper.mapOf(Child.class).call(dataSnapshot);
+        LinkedHashMap<String, Child> parallel = DataSnapshotMapper.parallelMapOf(Child.class, 10).call(dataSnapshot);
+
+        assertThat(new ArrayList<>(parallel.keySet())).isEqualTo(new ArrayList<>(sequential.keySet()));
+        assertThat(parallel).isEqualTo(sequential);
+    }
+
+    @Test
+    public void testParallelListOf_ReportsFirstFailingChild() {
+        Map<String, Object> children = children(1000);
+        children.put("child0700", "seven hundred");
+        children.put("child0300", 300);
+        DataSnapshot dataSnapshot = TestDataSnapshots.of("root/children", children);
+
+        String expected = null;
+        try {
+            DataSnapshotMapper.listOf(Child.class).call(dataSnapshot);
+            fail("expected sequential mapping to fail");
+        } catch (RuntimeException e) {
+            expected = e.getMessage();
+        }
+        try {
+            DataSnapshotMapper.parallelListOf(Child.class, 10).call(dataSnapshot);
+            fail("expected parallel mapping to fail");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage()).isEqualTo(expected).contains("java.lang.Long");
+        }
+    }
+
+    @Test
+    public void testProjectionOf_ReadsOnlyClassProperties() {
+        Map<String, Object> value = new HashMap<>();
+        value.put("id", 3);
+        value.put("blob", children(100));
+        DataSnapshot dataSnapshot = TestDataSnapshots.of("root/strict", value);
+
+        assertThat(DataSnapshotMapper.projectionOf(Strict.class).call(dataSnapshot).id).isEqualTo(3);
+        try {
+            DataSnapshotMapper.compiled(Strict.class).call(dataSnapshot);
+            fail("expected full mapping to see the blob");
+        } catch (DatabaseException e) {
+            assertThat(e.getMessage()).contains("blob");
+        }
+    }
+
+    @Test
+    public void testProjectionOf_ReadsOnlyFieldPaths() {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("id", 7);
+        nested.put("name", "child");
+        Map<String, Object> value = new HashMap<>();
+        value.put("id", 42);
+        value.put("name", "parent");
+        value.put("nested", nested);
+        value.put("children", children(10));
+        DataSnapshot dataSnapshot = TestDataSnapshots.of("root/bean", value);
+
+        Bean bean = DataSnapshotMapper.projectionOf(Bean.class, "name", "/nested/name", "missing/path")
+                .call(dataSnapshot);
+
+        assertThat(bean.id).isEqualTo(0);
+        assertThat(bean.name).isEqualTo("parent");
+        assertThat(bean.nested.name).isEqualTo("child");
+        assertThat(bean.nested.id).isEqualTo(0);
+        assertThat(bean.children).isNull();
+        assertThat(DataSnapshotMapper.projectionOf(Bean.class, "id").call(TestDataSnapshots.of("root/none", null)))
+                .isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testProjectionOf_CollectionsAndChildEvents() {
+        Map<String, Object> children = children(100);
+        for (Object child : children.values()) {
+            ((Map<String, Object>) child).put("blob", children(5));
+        }
+        DataSnapshot dataSnapshot = TestDataSnapshots.of("root/children", children);
+
+        List<Child> expected = DataSnapshotMapper.listOf(Child.class).call(dataSnapshot);
+
+        assertThat(DataSnapshotMapper.listOfProjection(Child.class).call(dataSnapshot)).isEqualTo(expected);
+        assertThat(DataSnapshotMapper.mapOfProjection(Child.class, "id", "name").call(dataSnapshot))
+                .isEqualTo(DataSnapshotMapper.mapOf(Child.class).call(dataSnapshot));
+
+        DataSnapshot first = dataSnapshot.getChildren().iterator().next();
+        RxFirebaseChildEvent<Child> event = DataSnapshotMapper.ofProjectedChildEvent(Child.class, "name").call(
+                new RxFirebaseChildEvent<>(first.getKey(), first, null, RxFirebaseChildEvent.EventType.ADDED));
+        assertThat(event.getKey()).isEqualTo("child0000");
+        assertThat(event.getValue().name).isEqualTo("child0");
+        assertThat(event.getEventType()).isEqualTo(RxFirebaseChildEvent.EventType.ADDED);
+    }
+
+    private static Map<String, Object> children(int count) {
+        Map<String, Object> children = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> child = new HashMap<>();
+            child.put("id", i);
+            child.put("name", "child" + i);
+            children.put(String.format("child%04d", i), child);
+        }
+        return children;
+    }
+
+    private static void assertSameError(DataSnapshot dataSnapshot, Class<?> clazz) {
+        String expected = null;
+        try {
+            dataSnapshot.getValue(clazz);
+            fail("expected sdk to fail");
+        } catch (DatabaseException e) {
+            expected = e.getMessage();
+        }
+        try {
+            DataSnapshotMapper.compiled(clazz).call(dataSnapshot);
+            fail("expected compiled mapper to fail");
+        } catch (DatabaseException e) {
+            assertThat(e.getMessage()).isEqualTo(expected);
+        }
+    }
+
+    public enum Color {
+        RED
+    }
+
+    public static class Child {
+        public int id;
+        public String name;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Child child = (Child) o;
+            return id == child.id && Objects.equals(name, child.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, name);
+        }
+    }
+
+    public static class Wrapper<T> {
+        public T value;
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Wrapper && Objects.equals(value, ((Wrapper) o).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(value);
+        }
+    }
+
+    public static class Bean {
+        public long id;
+        public String name;
+        public double score;
+        public Color color;
+        public List<String> tags;
+        public List<Child> children;
+        public Map<String, Child> byKey;
+        public Child nested;
+        public Wrapper<Child> wrapped;
+        public Object raw;
+        private boolean active;
+        private String annotated;
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+
+        @PropertyName("renamed")
+        public String getAnnotated() {
+            return annotated;
+        }
+
+        @PropertyName("renamed")
+        public void setAnnotated(String annotated) {
+            this.annotated = annotated;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Bean bean = (Bean) o;
+            return id == bean.id && Double.compare(bean.score, score) == 0 && active == bean.active
+                    && Objects.equals(name, bean.name) && color == bean.color && Objects.equals(tags, bean.tags)
+                    && Objects.equals(children, bean.children) && Objects.equals(byKey, bean.byKey)
+                    && Objects.equals(nested, bean.nested) && Objects.equals(wrapped, bean.wrapped)
+                    && Objects.equals(raw, bean.raw) && Objects.equals(annotated, bean.annotated);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, name);
+        }
+    }
+
+    @ThrowOnExtraProperties
+    public static class Strict {
+        public int id;
+    }
+
+    public static class NoConstructor {
+        public int id;
+
+        public NoConstructor(int id) {
+            this.id = id;
+        }
+    }
+}
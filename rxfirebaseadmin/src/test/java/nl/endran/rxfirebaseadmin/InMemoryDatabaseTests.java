@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Subscription;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.subscriptions.CompositeSubscription;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InMemoryDatabaseTests {
+
+    private InMemoryDatabase database = new InMemoryDatabase();
+    private InMemoryReference scores;
+
+    @Before
+    public void setup() throws InterruptedException {
+        scores = database.getReference("scores");
+        Map<String, Object> initial = new HashMap<>();
+        initial.put("a", score(10));
+        initial.put("b", score(30));
+        initial.put("c", score(20));
+        scores.setValue(initial, (DatabaseReference.CompletionListener) null);
+        database.awaitIdle();
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void testObserveValueEvent_SeesWritesInOrder() throws InterruptedException {
+        TestSubscriber<Long> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.observeValueEvent(scores.child("a/score"), Long.class).subscribe(testSubscriber);
+
+        RxFirebaseDatabase.write(scores.child("a/score"), 11L).await();
+        RxFirebaseDatabase.write(scores.child("b/score"), 31L).await();
+        RxFirebaseDatabase.write(scores.child("a"), score(12)).await();
+        database.awaitIdle();
+
+        testSubscriber.assertReceivedOnNext(Arrays.asList(10L, 11L, 12L));
+        assertThat(testSubscriber.getLastSeenThread().getName()).endsWith("-EventTarget");
+    }
+
+    @Test
+    public void testObserveChildEvent_OrderedAndLimited() throws InterruptedException {
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.observeChildEvent(scores.orderByChild("score").limitToLast(2)).subscribe(testSubscriber);
+        database.awaitIdle();
+
+        RxFirebaseDatabase.write(scores.child("d"), score(25)).await();
+        RxFirebaseDatabase.write(scores.child("b/score"), 5L).await();
+        database.awaitIdle();
+
+        assertThat(describe(testSubscriber.getOnNextEvents())).containsExactly(
+                "ADDED c after null", "ADDED b after c",
+                "REMOVED c", "ADDED d after null",
+                "REMOVED b", "ADDED c after null");
+    }
+
+    @Test
+    public void testObserveSingleValueEvent_RangeQuery() throws InterruptedException {
+        TestSubscriber<List<Long>> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.observeSingleValueEvent(scores.orderByChild("score").startAt(15).endAt(30),
+                new Func1<DataSnapshot, List<Long>>() {
+                    @Override
+                    public List<Long> call(DataSnapshot dataSnapshot) {
+                        List<Long> values = new ArrayList<>();
+                        for (DataSnapshot child : dataSnapshot.getChildren()) {
+                            values.add(child.child("score").getValue(Long.class));
+                        }
+                        return values;
+                    }
+                }).subscribe(testSubscriber);
+
+        testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        testSubscriber.assertReceivedOnNext(Collections.singletonList(Arrays.asList(20L, 30L)));
+        database.awaitIdle();
+        assertThat(database.getListenerCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRunTransaction_CommitsAgainstCurrentValue() throws InterruptedException {
+        TestSubscriber<DataSnapshot> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.runTransaction(scores.child("a/score"), new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                currentData.setValue(currentData.getValue(Long.class) + 1);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot dataSnapshot) {
+            }
+        }).subscribe(testSubscriber);
+
+        testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        assertThat(testSubscriber.getOnNextEvents().get(0).getValue(Long.class)).isEqualTo(11L);
+    }
+
+    @Test
+    public void testLoad_ThousandListenersFiftyThousandEvents() throws InterruptedException {
+        final int listeners = 1000;
+        final int events = 50000;
+        InMemoryReference load = database.getReference("load");
+        final CountDownLatch received = new CountDownLatch(events);
+        final AtomicLong maxLatency = new AtomicLong();
+        CompositeSubscription subscriptions = new CompositeSubscription();
+        for (int i = 0; i < listeners; i++) {
+            Subscription subscription = RxFirebaseDatabase.observeValueEvent(load.child(InMemoryLoadGenerator.key(i)))
+                    .skip(1)
+                    .subscribe(new rx.functions.Action1<DataSnapshot>() {
+                        @Override
+                        public void call(DataSnapshot dataSnapshot) {
+                            maxLatency.set(Math.max(maxLatency.get(), InMemoryLoadGenerator.latencyNanos(dataSnapshot)));
+                            received.countDown();
+                        }
+                    });
+            subscriptions.add(subscription);
+        }
+        database.awaitIdle();
+        assertThat(database.getListenerCount()).isEqualTo(listeners);
+
+        new InMemoryLoadGenerator(load, listeners).generate(events, 0);
+
+        assertThat(received.await(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxLatency.get()).isPositive();
+        subscriptions.unsubscribe();
+        database.awaitIdle();
+        assertThat(database.getListenerCount()).isEqualTo(0);
+    }
+
+    private static Map<String, Object> score(long score) {
+        return Collections.<String, Object>singletonMap("score", score);
+    }
+
+    private static List<String> describe(List<RxFirebaseChildEvent<DataSnapshot>> events) {
+        List<String> descriptions = new ArrayList<>();
+        for (RxFirebaseChildEvent<DataSnapshot> event : events) {
+            descriptions.add(event.getEventType() == RxFirebaseChildEvent.EventType.REMOVED
+                    ? event.getEventType() + " " + event.getKey()
+                    : event.getEventType() + " " + event.getKey() + " after " + event.getPreviousChildName());
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DatabaseException;
+import org.junit.Before;
+import org.junit.Test;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+
+import static nl.endran.rxfirebaseadmin.RxFirebaseChildEvent.EventType.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MaterializedViewTests {
+
+    private PublishSubject<RxFirebaseChildEvent<String>> childEvents = PublishSubject.create();
+    private PublishSubject<Object> initialLoad = PublishSubject.create();
+    private MaterializedView<String> view;
+
+    @Before
+    public void setup() {
+        view = new MaterializedView<>(childEvents, initialLoad);
+    }
+
+    @Test
+    public void testApply_KeepsQueryOrder() {
+        childEvents.onNext(new RxFirebaseChildEvent<>("a", "a1", null, ADDED));
+        childEvents.onNext(new RxFirebaseChildEvent<>("c", "c1", "a", ADDED));
+        childEvents.onNext(new RxFirebaseChildEvent<>("b", "b1", "a", ADDED));
+        childEvents.onNext(new RxFirebaseChildEvent<>("b", "b2", "a", CHANGED));
+
+        assertThat(view.get("b")).isEqualTo("b2");
+        assertThat(view.size()).isEqualTo(3);
+        assertThat(view.snapshot().keySet()).containsExactly("a", "b", "c");
+
+        childEvents.onNext(new RxFirebaseChildEvent<>("a", "a2", "c", MOVED));
+        childEvents.onNext(new RxFirebaseChildEvent<String>("b", "b2", REMOVED));
+
+        assertThat(view.snapshot()).containsExactly(entry("c", "c1"), entry("a", "a2"));
+        assertThat(view.containsKey("b")).isFalse();
+        assertThat(view.get("b")).isNull();
+    }
+
+    @Test
+    public void testSnapshot_IsStableAcrossChanges() {
+        childEvents.onNext(new RxFirebaseChildEvent<>("a", "a1", null, ADDED));
+        Map<String, String> before = view.snapshot();
+        assertThat(view.snapshot()).isSameAs(before);
+
+        childEvents.onNext(new RxFirebaseChildEvent<>("a", "a2", null, CHANGED));
+
+        assertThat(before).containsExactly(entry("a", "a1"));
+        assertThat(view.snapshot()).containsExactly(entry("a", "a2"));
+    }
+
+    @Test
+    public void testLoaded_CompletesAfterInitialLoad() {
+        TestSubscriber<Void> testSubscriber = new TestSubscriber<>();
+        view.loaded().subscribe(testSubscriber);
+
+        childEvents.onNext(new RxFirebaseChildEvent<>("a", "a1", null, ADDED));
+        testSubscriber.assertNoTerminalEvent();
+        assertThat(view.isLoaded()).isFalse();
+
+        initialLoad.onNext(new Object());
+
+        testSubscriber.assertCompleted();
+        assertThat(view.isLoaded()).isTrue();
+    }
+
+    @Test
+    public void testLoaded_FailsWhenCancelled() {
+        TestSubscriber<Void> testSubscriber = new TestSubscriber<>();
+        view.loaded().subscribe(testSubscriber);
+
+        IllegalStateException error = new IllegalStateException("cancelled");
+        childEvents.onError(error);
+
+        testSubscriber.assertError(error);
+        assertThat(view.getError()).isSameAs(error);
+    }
+
+    @Test
+    public void testIndexes_FindByMultipleFields() {
+        PublishSubject<RxFirebaseChildEvent<User>> userEvents = PublishSubject.create();
+        MaterializedView<User> users = new MaterializedView<>(userEvents, initialLoad);
+        userEvents.onNext(new RxFirebaseChildEvent<>("u1", new User("active", 20), null, ADDED));
+        userEvents.onNext(new RxFirebaseChildEvent<>("u2", new User("active", 35), "u1", ADDED));
+
+        ViewIndex.Hash<User> byStatus = users.addHashIndex("status");
+        ViewIndex.Sorted<User> byAge = users.addSortedIndex("age");
+
+        userEvents.onNext(new RxFirebaseChildEvent<>("u3", new User("blocked", 25), "u2", ADDED));
+        userEvents.onNext(new RxFirebaseChildEvent<>("u4", new User("active", 28), "u3", ADDED));
+
+        assertThat(byStatus.keys("active")).containsOnly("u1", "u2", "u4");
+        assertThat(byAge.range(21, true, 30, false)).containsExactly("u3", "u4");
+        assertThat(users.find(byStatus.keys("active"), byAge.range(21, true, null, false)).keySet())
+                .containsOnly("u2", "u4");
+
+        userEvents.onNext(new RxFirebaseChildEvent<>("u4", new User("blocked", 40), "u3", CHANGED));
+        userEvents.onNext(new RxFirebaseChildEvent<User>("u1", null, REMOVED));
+
+        assertThat(byStatus.keys("active")).containsOnly("u2");
+        assertThat(byStatus.keys("blocked")).containsOnly("u3", "u4");
+        assertThat(byAge.range(null, false, 30, true)).containsExactly("u3");
+        assertThat(byAge.keys(40)).containsOnly("u4");
+    }
+
+    @Test
+    public void testSortedIndex_ComparesMixedNumbersByValue() {
+        PublishSubject<RxFirebaseChildEvent<Map<String, Object>>> scoreEvents = PublishSubject.create();
+        MaterializedView<Map<String, Object>> scores = new MaterializedView<>(scoreEvents, initialLoad);
+        ViewIndex.Sorted<Map<String, Object>> byScore = scores.addSortedIndex("score",
+                new Func1<Map<String, Object>, Object>() {
+                    @Override
+                    public Object call(Map<String, Object> value) {
+                        return value.get("score");
+                    }
+                });
+
+        scoreEvents.onNext(new RxFirebaseChildEvent<>("a", score(3L), null, ADDED));
+        scoreEvents.onNext(new RxFirebaseChildEvent<>("b", score(2.5), "a", ADDED));
+        scoreEvents.onNext(new RxFirebaseChildEvent<>("c", score(1L), "b", ADDED));
+
+        assertThat(byScore.range(null, false, null, false)).containsExactly("c", "b", "a");
+        assertThat(byScore.range(2L, true, 3.0, false)).containsExactly("b");
+        assertThat(byScore.keys(3)).containsOnly("a");
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testIndex_IgnoresNonPublicFields() {
+        PublishSubject<RxFirebaseChildEvent<User>> userEvents = PublishSubject.create();
+        MaterializedView<User> users = new MaterializedView<>(userEvents, initialLoad);
+        userEvents.onNext(new RxFirebaseChildEvent<>("u1", new User("active", 20), null, ADDED));
+
+        users.addSortedIndex("secret");
+    }
+
+    public static class User {
+        public String status;
+        private int age;
+        private String secret = "hidden";
+
+        public User(String status, int age) {
+            this.status = status;
+            this.age = age;
+        }
+
+        public int getAge() {
+            return age;
+        }
+    }
+
+    private static Map<String, Object> score(Object score) {
+        return Collections.singletonMap("score", score);
+    }
+
+    private static Map.Entry<String, String> entry(String key, String value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.TestDataSnapshots;
+import org.junit.Before;
+import org.junit.Test;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static nl.endran.rxfirebaseadmin.RxFirebaseChildEvent.EventType.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class RxFirebaseChildEventBatcherTests {
+
+    private TestScheduler testScheduler = new TestScheduler();
+    private PublishSubject<RxFirebaseChildEvent<String>> events = PublishSubject.create();
+    private TestSubscriber<RxFirebaseChildEventBatch<String>> testSubscriber = new TestSubscriber<>();
+
+    @Before
+    public void setup() {
+        events.lift(RxFirebaseChildEventBatcher.batch(3, 20, new Func1<RxFirebaseChildEvent<String>, Long>() {
+            @Override
+            public Long call(RxFirebaseChildEvent<String> event) {
+                return (long) event.getValue().length();
+            }
+        }, 100, TimeUnit.MILLISECONDS, testScheduler)).subscribe(testSubscriber);
+    }
+
+    @Test
+    public void testBatch_KeepsLastEventPerKeyUntilLatency() {
+        events.onNext(event("a", "a1", ADDED));
+        events.onNext(event("b", "b1", ADDED));
+        events.onNext(event("a", "a2", CHANGED));
+        events.onNext(event("b", "b1", REMOVED));
+
+        testSubscriber.assertNoValues();
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        RxFirebaseChildEventBatch<String> batch = testSubscriber.getOnNextEvents().get(0);
+        assertThat(batch.getEvents()).containsExactly(event("a", "a2", CHANGED), event("b", "b1", REMOVED));
+        assertThat(batch.getUpserts()).containsExactly(entry("a", "a2"));
+        assertThat(batch.getRemovedKeys()).containsExactly("b");
+        assertThat(batch.getReceivedCount()).isEqualTo(4);
+        assertThat(batch.getByteEstimate()).isEqualTo(4);
+    }
+
+    @Test
+    public void testBatch_FlushesAtMaxEvents() {
+        events.onNext(event("a", "a1", ADDED));
+        events.onNext(event("a", "a2", CHANGED));
+        events.onNext(event("b", "b1", ADDED));
+        testSubscriber.assertNoValues();
+        events.onNext(event("c", "c1", ADDED));
+
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(1);
+        assertThat(testSubscriber.getOnNextEvents().get(0).size()).isEqualTo(3);
+
+        events.onNext(event("d", "d1", ADDED));
+        testScheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(1);
+        testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(2);
+        assertThat(testSubscriber.getOnNextEvents().get(1).getEvents()).containsExactly(event("d", "d1", ADDED));
+    }
+
+    @Test
+    public void testBatch_FlushesAtMaxBytes() {
+        events.onNext(event("a", "0123456789", ADDED));
+        events.onNext(event("a", "0", CHANGED));
+        events.onNext(event("b", "0123456789", ADDED));
+        testSubscriber.assertNoValues();
+        events.onNext(event("a", "0123456789", CHANGED));
+
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(1);
+        assertThat(testSubscriber.getOnNextEvents().get(0).getByteEstimate()).isEqualTo(20);
+    }
+
+    @Test
+    public void testBatch_CompletionFlushesOpenBatch() {
+        events.onNext(event("a", "a1", ADDED));
+        events.onCompleted();
+
+        testSubscriber.assertCompleted();
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(1);
+    }
+
+    @Test
+    public void testOfChildEventBatch_MapsSnapshots() {
+        Map<String, Object> value = new HashMap<>();
+        value.put("id", 1);
+        value.put("name", "one");
+        DataSnapshot added = TestDataSnapshots.of("items/one", value);
+        DataSnapshot removed = TestDataSnapshots.of("items/two", Collections.<String, Object>singletonMap("id", 2));
+
+        PublishSubject<RxFirebaseChildEvent<DataSnapshot>> snapshots = PublishSubject.create();
+        TestSubscriber<RxFirebaseChildEventBatch<DataSnapshotMapperTests.Child>> mapped = new TestSubscriber<>();
+        snapshots.lift(RxFirebaseChildEventBatcher.batch(10, Long.MAX_VALUE, RxFirebaseChildEventBatcher.snapshotSize(),
+                1, TimeUnit.SECONDS, testScheduler))
+                .map(DataSnapshotMapper.ofChildEventBatch(DataSnapshotMapperTests.Child.class))
+                .subscribe(mapped);
+        snapshots.onNext(new RxFirebaseChildEvent<>("one", added, null, ADDED));
+        snapshots.onNext(new RxFirebaseChildEvent<>("two", removed, REMOVED));
+        snapshots.onCompleted();
+
+        RxFirebaseChildEventBatch<DataSnapshotMapperTests.Child> batch = mapped.getOnNextEvents().get(0);
+        assertThat(batch.getUpserts().get("one").name).isEqualTo("one");
+        assertThat(batch.getRemovedKeys()).isEqualTo(Arrays.asList("two"));
+        assertThat(RxFirebaseChildEventBatcher.snapshotSize().call(new RxFirebaseChildEvent<>("one", added, ADDED)))
+                .isGreaterThan(0L);
+    }
+
+    private static RxFirebaseChildEvent<String> event(final String key, final String value,
+                                                      final RxFirebaseChildEvent.EventType eventType) {
+        return new RxFirebaseChildEvent<>(key, value, null, eventType);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import org.junit.Before;
+import org.junit.Test;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static nl.endran.rxfirebaseadmin.RxFirebaseChildEvent.EventType.*;
+
+public class RxFirebaseConflationTests {
+
+    private TestScheduler testScheduler = new TestScheduler();
+    private PublishSubject<RxFirebaseChildEvent<String>> events = PublishSubject.create();
+    private TestSubscriber<RxFirebaseChildEvent<String>> testSubscriber = new TestSubscriber<>();
+
+    @Before
+    public void setup() {
+        events.lift(RxFirebaseConflation.<String>conflate(100, TimeUnit.MILLISECONDS, testScheduler))
+                .subscribe(testSubscriber);
+    }
+
+    @Test
+    public void testConflate_KeepsLatestChangePerKeyInOrder() {
+        events.onNext(event("a", "a1", CHANGED));
+        events.onNext(event("b", "b1", CHANGED));
+        events.onNext(event("a", "a2", CHANGED));
+        events.onNext(event("c", "c1", CHANGED));
+        events.onNext(event("b", "b2", CHANGED));
+
+        testSubscriber.assertNoValues();
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        testSubscriber.assertReceivedOnNext(Arrays.asList(
+                event("a", "a2", CHANGED),
+                event("b", "b2", CHANGED),
+                event("c", "c1", CHANGED)));
+    }
+
+    @Test
+    public void testConflate_AddedThenChangedIsAdded() {
+        events.onNext(event("a", "a1", ADDED));
+        events.onNext(event("a", "a2", CHANGED));
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        testSubscriber.assertReceivedOnNext(Arrays.asList(event("a", "a2", ADDED)));
+    }
+
+    @Test
+    public void testConflate_AddedThenRemovedCancels() {
+        events.onNext(event("a", "a1", ADDED));
+        events.onNext(event("b", "b1", CHANGED));
+        events.onNext(event("a", "a2", CHANGED));
+        events.onNext(event("a", "a2", REMOVED));
+        events.onNext(event("b", "b1", REMOVED));
+        events.onNext(event("b", "b2", ADDED));
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        testSubscriber.assertReceivedOnNext(Arrays.asList(
+                event("b", "b1", REMOVED),
+                event("b", "b2", ADDED)));
+    }
+
+    @Test
+    public void testConflate_SeparateWindows() {
+        events.onNext(event("a", "a1", CHANGED));
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        events.onNext(event("a", "a2", CHANGED));
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        testSubscriber.assertReceivedOnNext(Arrays.asList(
+                event("a", "a1", CHANGED),
+                event("a", "a2", CHANGED)));
+    }
+
+    @Test
+    public void testConflate_CompletionFlushesWindow() {
+        events.onNext(event("a", "a1", CHANGED));
+        events.onNext(event("a", "a2", CHANGED));
+        events.onCompleted();
+
+        testSubscriber.assertReceivedOnNext(Arrays.asList(event("a", "a2", CHANGED)));
+        testSubscriber.assertCompleted();
+    }
+
+    private static RxFirebaseChildEvent<String> event(String key, String value, RxFirebaseChildEvent.EventType type) {
+        return new RxFirebaseChildEvent<>(key, value, type);
+    }
+}
@@ -24,13 +24,16 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import rx.exceptions.MissingBackpressureException;
 import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.observers.TestSubscriber;
 import rx.schedulers.Schedulers;
 
 import java.util.*;
+import java.util.concurrent.Executor;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 public class RxFirebaseDatabaseTests {
@@ -345,6 +348,360 @@ public class RxFirebaseDatabaseTests {
         testSubscriber.unsubscribe();
     }
 
+    @Test
+    public void testObserveChildEvent_BackpressureDropOldest() throws InterruptedException {
+
+        RxFirebaseBackpressure backpressure = RxFirebaseBackpressure.dropOldest(2);
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> testSubscriber = new TestSubscriber<>(0);
+        RxFirebaseDatabase.observeChildEvent(mockDatabase, backpressure)
+                .subscribe(testSubscriber);
+
+        ArgumentCaptor<ChildEventListener> argument = ArgumentCaptor.forClass(ChildEventListener.class);
+        verify(mockDatabase).addChildEventListener(argument.capture());
+        argument.getValue().onChildAdded(mockFirebaseDataSnapshot, "a");
+        argument.getValue().onChildAdded(mockFirebaseDataSnapshot, "b");
+        argument.getValue().onChildAdded(mockFirebaseDataSnapshot, "c");
+
+        testSubscriber.assertNoValues();
+        assertThat(backpressure.getBufferedCount()).isEqualTo(2);
+        assertThat(backpressure.getDroppedCount()).isEqualTo(1);
+
+        testSubscriber.requestMore(10);
+
+        testSubscriber.assertNoErrors();
+        testSubscriber.assertValueCount(2);
+        assertThat(testSubscriber.getOnNextEvents().get(0).getPreviousChildName()).isEqualTo("b");
+        assertThat(testSubscriber.getOnNextEvents().get(1).getPreviousChildName()).isEqualTo("c");
+        assertThat(backpressure.getBufferedCount()).isEqualTo(0);
+        testSubscriber.unsubscribe();
+    }
+
+    @Test
+    public void testObserveChildEvent_BackpressureLatest() throws InterruptedException {
+
+        RxFirebaseBackpressure backpressure = RxFirebaseBackpressure.latest(2);
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> testSubscriber = new TestSubscriber<>(0);
+        RxFirebaseDatabase.observeChildEvent(mockDatabase, backpressure)
+                .subscribe(testSubscriber);
+
+        ArgumentCaptor<ChildEventListener> argument = ArgumentCaptor.forClass(ChildEventListener.class);
+        verify(mockDatabase).addChildEventListener(argument.capture());
+        argument.getValue().onChildAdded(mockFirebaseDataSnapshot, "a");
+        argument.getValue().onChildAdded(mockFirebaseDataSnapshot, "b");
+        argument.getValue().onChildAdded(mockFirebaseDataSnapshot, "c");
+        testSubscriber.requestMore(10);
+
+        testSubscriber.assertValueCount(2);
+        assertThat(testSubscriber.getOnNextEvents().get(0).getPreviousChildName()).isEqualTo("a");
+        assertThat(testSubscriber.getOnNextEvents().get(1).getPreviousChildName()).isEqualTo("c");
+        assertThat(backpressure.getDroppedCount()).isEqualTo(1);
+        testSubscriber.unsubscribe();
+    }
+
+    @Test
+    public void testObserveValueEvent_BackpressureError() throws InterruptedException {
+
+        RxFirebaseBackpressure backpressure = RxFirebaseBackpressure.error(1);
+        TestSubscriber<TestData> testSubscriber = new TestSubscriber<>(0);
+        RxFirebaseDatabase.observeValueEvent(mockDatabase, TestData.class, backpressure)
+                .subscribe(testSubscriber);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockDatabase).addValueEventListener(argument.capture());
+        argument.getValue().onDataChange(mockFirebaseDataSnapshot);
+        argument.getValue().onDataChange(mockFirebaseDataSnapshot);
+
+        testSubscriber.assertNoValues();
+        testSubscriber.assertError(MissingBackpressureException.class);
+        verify(mockDatabase).removeEventListener((ValueEventListener) any());
+    }
+
+    @Test
+    public void testObserveValueEvent_BackpressureBufferDeliversBeforeError() throws InterruptedException {
+
+        RxFirebaseBackpressure backpressure = RxFirebaseBackpressure.buffer(1);
+        TestSubscriber<TestData> testSubscriber = new TestSubscriber<>(0);
+        RxFirebaseDatabase.observeValueEvent(mockDatabase, TestData.class, backpressure)
+                .subscribe(testSubscriber);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockDatabase).addValueEventListener(argument.capture());
+        argument.getValue().onDataChange(mockFirebaseDataSnapshot);
+        argument.getValue().onDataChange(mockFirebaseDataSnapshot);
+        argument.getValue().onCancelled(DatabaseError.fromCode(DatabaseError.DISCONNECTED));
+
+        testSubscriber.assertNoErrors();
+        testSubscriber.requestMore(1);
+
+        testSubscriber.assertReceivedOnNext(Collections.singletonList(testData));
+        testSubscriber.assertError(RxFirebaseDataException.class);
+        assertThat(backpressure.getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testObserveValueEvent_BackpressureHoldsBackMappingPool() {
+
+        final List<Runnable> pendingTasks = new ArrayList<>();
+        RxFirebaseMappingPool mappingPool = new RxFirebaseMappingPool(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pendingTasks.add(command);
+            }
+        }, 2);
+        RxFirebaseBackpressure backpressure = RxFirebaseBackpressure.buffer(8);
+        TestSubscriber<String> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.observeValueEvent(mockDatabase, new Func1<DataSnapshot, String>() {
+            @Override
+            public String call(DataSnapshot dataSnapshot) {
+                return "mapped";
+            }
+        }, backpressure, mappingPool).subscribe(testSubscriber);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockDatabase).addValueEventListener(argument.capture());
+        for (int i = 0; i < 5; i++) {
+            argument.getValue().onDataChange(mockFirebaseDataSnapshot);
+        }
+
+        assertThat(pendingTasks).hasSize(2);
+        assertThat(backpressure.getBufferedCount()).isEqualTo(3);
+        for (int i = 0; i < pendingTasks.size(); i++) {
+            pendingTasks.get(i).run();
+        }
+
+        testSubscriber.assertNoErrors();
+        testSubscriber.assertValueCount(5);
+        assertThat(mappingPool.getQueuedCount()).isEqualTo(0);
+        testSubscriber.unsubscribe();
+    }
+
+    @Test
+    public void testObserveChildrenOf_MapsChildrenOnDemand() throws InterruptedException {
+
+        when(mockFirebaseDataSnapshot.getChildren()).thenReturn(
+                Arrays.asList(mockFirebaseDataSnapshot, mockFirebaseDataSnapshot, mockFirebaseDataSnapshot));
+
+        TestSubscriber<TestData> testSubscriber = new TestSubscriber<>(1);
+        RxFirebaseDatabase.observeChildrenOf(mockDatabase, TestData.class)
+                .subscribe(testSubscriber);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockDatabase).addListenerForSingleValueEvent(argument.capture());
+        argument.getValue().onDataChange(mockFirebaseDataSnapshot);
+
+        testSubscriber.assertValueCount(1);
+        testSubscriber.assertNotCompleted();
+        verify(mockFirebaseDataSnapshot, times(1)).getValue(TestData.class);
+
+        testSubscriber.requestMore(2);
+
+        testSubscriber.assertNoErrors();
+        testSubscriber.assertReceivedOnNext(Arrays.asList(testData, testData, testData));
+        testSubscriber.assertCompleted();
+    }
+
+    @Test
+    public void testObserveChildEntriesOf() throws InterruptedException {
+
+        TestSubscriber<Map.Entry<String, TestData>> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.observeChildEntriesOf(mockDatabase, TestData.class)
+                .subscribe(testSubscriber);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockDatabase).addListenerForSingleValueEvent(argument.capture());
+        argument.getValue().onDataChange(mockFirebaseDataSnapshot);
+
+        testSubscriber.assertNoErrors();
+        testSubscriber.assertValueCount(1);
+        assertThat(testSubscriber.getOnNextEvents().get(0).getKey()).isEqualTo("key");
+        assertThat(testSubscriber.getOnNextEvents().get(0).getValue()).isEqualTo(testData);
+        testSubscriber.assertCompleted();
+    }
+
+    @Test
+    public void testScan_FetchesPagesOnDemand() throws InterruptedException {
+
+        Query keyOrdered = mock(Query.class);
+        Query firstPage = mock(Query.class);
+        Query nextKeyOrdered = mock(Query.class);
+        Query nextPage = mock(Query.class);
+        when(mockDatabase.orderByKey()).thenReturn(keyOrdered);
+        when(keyOrdered.limitToFirst(2)).thenReturn(firstPage);
+        when(keyOrdered.startAt("b")).thenReturn(nextKeyOrdered);
+        when(nextKeyOrdered.limitToFirst(3)).thenReturn(nextPage);
+
+        DataSnapshot a = mockChild("a");
+        DataSnapshot b = mockChild("b");
+        DataSnapshot c = mockChild("c");
+
+        TestSubscriber<DataSnapshot> testSubscriber = new TestSubscriber<>(1);
+        RxFirebaseDatabase.scan(mockDatabase, 2, 0, null)
+                .subscribe(testSubscriber);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(firstPage).addListenerForSingleValueEvent(argument.capture());
+        argument.getValue().onDataChange(mockPage(a, b));
+
+        testSubscriber.assertReceivedOnNext(Collections.singletonList(a));
+        verify(nextPage, never()).addListenerForSingleValueEvent(any(ValueEventListener.class));
+
+        testSubscriber.requestMore(2);
+
+        verify(nextPage).addListenerForSingleValueEvent(argument.capture());
+        argument.getValue().onDataChange(mockPage(b, c));
+
+        testSubscriber.assertNoErrors();
+        testSubscriber.assertReceivedOnNext(Arrays.asList(a, b, c));
+        testSubscriber.assertCompleted();
+    }
+
+    @Test
+    public void testScanPages_ResumesAfterKeyAndPrefetches() throws InterruptedException {
+
+        Query keyOrdered = mock(Query.class);
+        Query resumedKeyOrdered = mock(Query.class);
+        Query resumedPage = mock(Query.class);
+        Query nextKeyOrdered = mock(Query.class);
+        Query nextPage = mock(Query.class);
+        when(mockDatabase.orderByKey()).thenReturn(keyOrdered);
+        when(keyOrdered.startAt("a")).thenReturn(resumedKeyOrdered);
+        when(resumedKeyOrdered.limitToFirst(2)).thenReturn(resumedPage);
+        when(keyOrdered.startAt("b")).thenReturn(nextKeyOrdered);
+        when(nextKeyOrdered.limitToFirst(2)).thenReturn(nextPage);
+
+        DataSnapshot a = mockChild("a");
+        DataSnapshot b = mockChild("b");
+
+        TestSubscriber<List<DataSnapshot>> testSubscriber = new TestSubscriber<>(1);
+        RxFirebaseDatabase.scanPages(mockDatabase, 1, 1, "a")
+                .subscribe(testSubscriber);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(resumedPage).addListenerForSingleValueEvent(argument.capture());
+        argument.getValue().onDataChange(mockPage(a, b));
+
+        testSubscriber.assertReceivedOnNext(Collections.singletonList(Collections.singletonList(b)));
+        verify(nextPage).addListenerForSingleValueEvent(argument.capture());
+        argument.getValue().onDataChange(mockPage(b));
+
+        testSubscriber.assertValueCount(1);
+        testSubscriber.assertCompleted();
+    }
+
+    @Test
+    public void testScan_Cancelled() throws InterruptedException {
+
+        Query keyOrdered = mock(Query.class);
+        Query firstPage = mock(Query.class);
+        when(mockDatabase.orderByKey()).thenReturn(keyOrdered);
+        when(keyOrdered.limitToFirst(2)).thenReturn(firstPage);
+
+        TestSubscriber<DataSnapshot> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.scan(mockDatabase, 2)
+                .subscribe(testSubscriber);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(firstPage).addListenerForSingleValueEvent(argument.capture());
+        argument.getValue().onCancelled(DatabaseError.fromCode(DatabaseError.PERMISSION_DENIED));
+
+        testSubscriber.assertError(RxFirebaseDataException.class);
+    }
+
+    @Test
+    public void testObserveValueDeltas() throws InterruptedException {
+
+        TestSubscriber<List<RxFirebasePathChange>> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.observeValueDeltas(mockDatabase)
+                .subscribe(testSubscriber);
+
+        Map<String, Object> a = new HashMap<>();
+        a.put("x", 1L);
+        a.put("y", 2L);
+        Map<String, Object> first = new HashMap<>();
+        first.put("a", a);
+        first.put("b", "s");
+
+        Map<String, Object> changedA = new HashMap<>(a);
+        changedA.put("y", 3L);
+        Map<String, Object> second = new HashMap<>();
+        second.put("a", changedA);
+        second.put("c", true);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockDatabase).addValueEventListener(argument.capture());
+        argument.getValue().onDataChange(TestDataSnapshots.of("root", first));
+        argument.getValue().onDataChange(TestDataSnapshots.of("root", second));
+        argument.getValue().onDataChange(TestDataSnapshots.of("root", second));
+
+        testSubscriber.assertNoErrors();
+        testSubscriber.assertReceivedOnNext(Arrays.asList(
+                Arrays.asList(
+                        new RxFirebasePathChange("a", RxFirebasePathChange.Type.ADDED, a),
+                        new RxFirebasePathChange("b", RxFirebasePathChange.Type.ADDED, "s")),
+                Arrays.asList(
+                        new RxFirebasePathChange("a/y", RxFirebasePathChange.Type.CHANGED, 3L),
+                        new RxFirebasePathChange("b", RxFirebasePathChange.Type.REMOVED, null),
+                        new RxFirebasePathChange("c", RxFirebasePathChange.Type.ADDED, true))));
+    }
+
+    @Test
+    public void testSubscribeChildEvents_DeliversToSinkUntilUnsubscribed() {
+        final List<String> received = new ArrayList<>();
+        rx.Subscription subscription = RxFirebaseDatabase.subscribeChildEvents(mockDatabase,
+                new RxFirebaseChildEventSink() {
+                    @Override
+                    public void onChildEvent(String key, DataSnapshot dataSnapshot, String previousChildName,
+                                             RxFirebaseChildEvent.EventType eventType) {
+                        received.add(eventType + " " + key + " " + previousChildName);
+                    }
+
+                    @Override
+                    public void onCancelled(RxFirebaseDataException error) {
+                        received.add("cancelled");
+                    }
+                });
+
+        ArgumentCaptor<ChildEventListener> argument = ArgumentCaptor.forClass(ChildEventListener.class);
+        verify(mockDatabase).addChildEventListener(argument.capture());
+        argument.getValue().onChildAdded(mockFirebaseDataSnapshot, "root");
+        argument.getValue().onChildRemoved(mockFirebaseDataSnapshot);
+        subscription.unsubscribe();
+        argument.getValue().onChildChanged(mockFirebaseDataSnapshot, "root");
+
+        assertThat(received).containsExactly("ADDED key root", "REMOVED key null");
+        verify(mockDatabase).removeEventListener(argument.getValue());
+    }
+
+    @Test
+    public void testObservePooledChildEvent_ReusesEvent() {
+        TestSubscriber<RxFirebaseChildEvent<TestData>> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.observePooledChildEvent(mockDatabase, TestData.class).subscribe(testSubscriber);
+
+        ArgumentCaptor<ChildEventListener> argument = ArgumentCaptor.forClass(ChildEventListener.class);
+        verify(mockDatabase).addChildEventListener(argument.capture());
+        argument.getValue().onChildAdded(mockFirebaseDataSnapshot, "root");
+        argument.getValue().onChildMoved(mockFirebaseDataSnapshot, "other");
+
+        List<RxFirebaseChildEvent<TestData>> events = testSubscriber.getOnNextEvents();
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0)).isSameAs(events.get(1));
+        assertThat(events.get(1).getEventType()).isEqualTo(RxFirebaseChildEvent.EventType.MOVED);
+        assertThat(events.get(1).getPreviousChildName()).isEqualTo("other");
+        assertThat(events.get(1).getValue()).isSameAs(testData);
+    }
+
+    private static DataSnapshot mockChild(String key) {
+        DataSnapshot child = mock(DataSnapshot.class);
+        when(child.getKey()).thenReturn(key);
+        return child;
+    }
+
+    private static DataSnapshot mockPage(DataSnapshot... children) {
+        DataSnapshot page = mock(DataSnapshot.class);
+        when(page.getChildren()).thenReturn(Arrays.asList(children));
+        return page;
+    }
+
     class TestData {
         int id;
         String str;
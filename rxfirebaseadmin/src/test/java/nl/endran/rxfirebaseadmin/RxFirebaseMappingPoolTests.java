@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.Subscriber;
+import rx.exceptions.MissingBackpressureException;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RxFirebaseMappingPoolTests {
+
+    private List<Runnable> pendingTasks = new ArrayList<>();
+    private PublishSubject<Integer> snapshots = PublishSubject.create();
+    private TestSubscriber<String> testSubscriber = new TestSubscriber<>();
+    private RxFirebaseMappingPool mappingPool;
+
+    @Before
+    public void setup() {
+        mappingPool = new RxFirebaseMappingPool(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pendingTasks.add(command);
+            }
+        }, 2);
+        snapshots.lift(mappingPool.<Integer, String>operator(new Func1<Integer, String>() {
+            @Override
+            public String call(Integer value) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("negative");
+                }
+                return "mapped" + value;
+            }
+        })).subscribe(testSubscriber);
+    }
+
+    @Test
+    public void testMapping_EmitsInArrivalOrder() {
+        snapshots.onNext(1);
+        snapshots.onNext(2);
+        assertThat(mappingPool.getQueuedCount()).isEqualTo(2);
+
+        pendingTasks.get(1).run();
+        testSubscriber.assertNoValues();
+
+        pendingTasks.get(0).run();
+        testSubscriber.assertReceivedOnNext(Arrays.asList("mapped1", "mapped2"));
+        assertThat(mappingPool.getQueuedCount()).isEqualTo(0);
+
+        snapshots.onCompleted();
+        testSubscriber.assertCompleted();
+    }
+
+    @Test
+    public void testMapping_CompletesAfterPendingResults() {
+        snapshots.onNext(1);
+        snapshots.onCompleted();
+        testSubscriber.assertNoTerminalEvent();
+
+        pendingTasks.get(0).run();
+
+        testSubscriber.assertReceivedOnNext(Arrays.asList("mapped1"));
+        testSubscriber.assertCompleted();
+    }
+
+    @Test
+    public void testMapping_FailsStreamWhenFullWithoutBlocking() {
+        ListenerSource<Integer> listener = new ListenerSource<>();
+        TestSubscriber<String> listenerSubscriber = new TestSubscriber<>();
+        Observable.create(listener).lift(mappingPool.<Integer, String>operator(new Func1<Integer, String>() {
+            @Override
+            public String call(Integer value) {
+                return "mapped" + value;
+            }
+        })).subscribe(listenerSubscriber);
+
+        listener.onNext(1);
+        listener.onNext(2);
+        listener.onNext(3);
+
+        assertThat(pendingTasks).hasSize(2);
+        assertThat(listener.isUnsubscribed()).isTrue();
+        listenerSubscriber.assertNoTerminalEvent();
+
+        pendingTasks.get(0).run();
+        pendingTasks.get(1).run();
+
+        listenerSubscriber.assertReceivedOnNext(Arrays.asList("mapped1", "mapped2"));
+        listenerSubscriber.assertError(MissingBackpressureException.class);
+        assertThat(mappingPool.getQueuedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testMapping_LimitIsPerStream() {
+        PublishSubject<Integer> otherSnapshots = PublishSubject.create();
+        TestSubscriber<String> otherSubscriber = new TestSubscriber<>();
+        otherSnapshots.lift(mappingPool.<Integer, String>operator(new Func1<Integer, String>() {
+            @Override
+            public String call(Integer value) {
+                return "other" + value;
+            }
+        })).subscribe(otherSubscriber);
+
+        snapshots.onNext(1);
+        snapshots.onNext(2);
+        otherSnapshots.onNext(1);
+        otherSnapshots.onNext(2);
+        assertThat(mappingPool.getQueuedCount()).isEqualTo(4);
+
+        for (Runnable task : new ArrayList<>(pendingTasks)) {
+            task.run();
+        }
+
+        testSubscriber.assertNoErrors();
+        otherSubscriber.assertReceivedOnNext(Arrays.asList("other1", "other2"));
+    }
+
+    @Test
+    public void testMapping_RequestsOneMorePerEmittedResult() {
+        TestSubscriber<String> rangeSubscriber = new TestSubscriber<>();
+        Observable.range(1, 5).lift(mappingPool.<Integer, String>operator(new Func1<Integer, String>() {
+            @Override
+            public String call(Integer value) {
+                return "mapped" + value;
+            }
+        })).subscribe(rangeSubscriber);
+        assertThat(pendingTasks).hasSize(2);
+
+        pendingTasks.get(1).run();
+        assertThat(pendingTasks).hasSize(2);
+
+        pendingTasks.get(0).run();
+        assertThat(pendingTasks).hasSize(4);
+
+        for (int i = 2; i < pendingTasks.size(); i++) {
+            pendingTasks.get(i).run();
+        }
+        rangeSubscriber.assertReceivedOnNext(Arrays.asList("mapped1", "mapped2", "mapped3", "mapped4", "mapped5"));
+        rangeSubscriber.assertCompleted();
+    }
+
+    @Test
+    public void testMapping_ErrorAfterEarlierResults() {
+        snapshots.onNext(1);
+        snapshots.onNext(-1);
+        pendingTasks.get(1).run();
+        pendingTasks.get(0).run();
+
+        testSubscriber.assertReceivedOnNext(Arrays.asList("mapped1"));
+        testSubscriber.assertError(IllegalArgumentException.class);
+        assertThat(snapshots.hasObservers()).isFalse();
+        assertThat(mappingPool.getQueuedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testMapping_OnWorkerThreads() {
+        RxFirebaseMappingPool threadPool = new RxFirebaseMappingPool(4, 8);
+        TestSubscriber<Integer> orderSubscriber = new TestSubscriber<>();
+        Observable.range(0, 20).lift(threadPool.<Integer, Integer>operator(new Func1<Integer, Integer>() {
+            @Override
+            public Integer call(Integer value) {
+                try {
+                    Thread.sleep(20 - value);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return value;
+            }
+        })).subscribe(orderSubscriber);
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            expected.add(i);
+        }
+        orderSubscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        orderSubscriber.assertReceivedOnNext(expected);
+        assertThat(orderSubscriber.getLastSeenThread().getName()).startsWith("RxFirebaseMapping-");
+        threadPool.shutdown();
+    }
+
+    /**
+     * Pushes values regardless of {@code request(n)}, the way a Firebase listener does.
+     */
+    private static class ListenerSource<T> implements Observable.OnSubscribe<T> {
+
+        private Subscriber<? super T> subscriber;
+
+        @Override
+        public void call(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void onNext(T value) {
+            subscriber.onNext(value);
+        }
+
+        boolean isUnsubscribed() {
+            return subscriber.isUnsubscribed();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import com.google.firebase.database.core.Path;
+import nl.endran.rxfirebaseadmin.metrics.Log2Histogram;
+import nl.endran.rxfirebaseadmin.metrics.RxFirebaseMetrics;
+import nl.endran.rxfirebaseadmin.metrics.StripedRxFirebaseMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class RxFirebaseMetricsTests {
+
+    @Mock
+    private DatabaseReference mockDatabase;
+
+    @Mock
+    private DataSnapshot mockDataSnapshot;
+
+    private StripedRxFirebaseMetrics metrics = new StripedRxFirebaseMetrics();
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(mockDatabase.getPath()).thenReturn(new Path("users"));
+        when(mockDataSnapshot.exists()).thenReturn(true);
+        when(mockDataSnapshot.getKey()).thenReturn("key");
+        RxFirebaseDatabase.setMetrics(metrics);
+        DataSnapshotMapper.setMetrics(metrics);
+    }
+
+    @After
+    public void tearDown() {
+        RxFirebaseDatabase.setMetrics(null);
+        DataSnapshotMapper.setMetrics(null);
+    }
+
+    @Test
+    public void testListeners_CountedPerPathUntilUnsubscribed() {
+        Subscription first = RxFirebaseDatabase.observeValueEvent(mockDatabase).subscribe(new TestSubscriber<DataSnapshot>());
+        Subscription second = RxFirebaseDatabase.observeChildEvent(mockDatabase)
+                .subscribe(new TestSubscriber<RxFirebaseChildEvent<DataSnapshot>>());
+
+        assertThat(metrics.getActiveListeners()).isEqualTo(Collections.singletonMap("/users", 2L));
+
+        first.unsubscribe();
+        first.unsubscribe();
+        assertThat(metrics.getActiveListenerCount("/users")).isEqualTo(1L);
+
+        second.unsubscribe();
+        assertThat(metrics.getActiveListeners()).isEmpty();
+    }
+
+    @Test
+    public void testEvents_CountedByTypeWithFirstEventLatency() {
+        RxFirebaseDatabase.observeChildEvent(mockDatabase).subscribe(new TestSubscriber<RxFirebaseChildEvent<DataSnapshot>>());
+        ArgumentCaptor<ChildEventListener> argument = ArgumentCaptor.forClass(ChildEventListener.class);
+        verify(mockDatabase).addChildEventListener(argument.capture());
+
+        argument.getValue().onChildAdded(mockDataSnapshot, null);
+        argument.getValue().onChildAdded(mockDataSnapshot, "key");
+        argument.getValue().onChildRemoved(mockDataSnapshot);
+
+        assertThat(metrics.getChildEvents(RxFirebaseChildEvent.EventType.ADDED).getCount()).isEqualTo(2L);
+        assertThat(metrics.getChildEvents(RxFirebaseChildEvent.EventType.REMOVED).getCount()).isEqualTo(1L);
+        assertThat(metrics.getChildEvents(RxFirebaseChildEvent.EventType.CHANGED).getCount()).isEqualTo(0L);
+        assertThat(metrics.getFirstEventLatency().getCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testErrors_CountedByKind() {
+        TestSubscriber<DataSnapshot> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.observeSingleValueEvent(mockDatabase).subscribe(testSubscriber);
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockDatabase).addListenerForSingleValueEvent(argument.capture());
+        argument.getValue().onCancelled(DatabaseError.fromCode(DatabaseError.PERMISSION_DENIED));
+
+        TestSubscriber<String> castSubscriber = new TestSubscriber<>();
+        rx.Observable.just(mockDataSnapshot).map(DataSnapshotMapper.of(String.class)).subscribe(castSubscriber);
+
+        assertThat(metrics.getDataExceptionCount()).isEqualTo(1L);
+        assertThat(metrics.getDataCastExceptionCount()).isEqualTo(1L);
+        assertThat(metrics.getActiveListeners()).isEmpty();
+    }
+
+    @Test
+    public void testMapper_RecordsLatencyAndChildCount() {
+        DataSnapshot child = mock(DataSnapshot.class);
+        when(child.getValue(String.class)).thenReturn("value");
+        List<DataSnapshot> children = Arrays.asList(child, child, child);
+        when(mockDataSnapshot.getChildrenCount()).thenReturn(3L);
+        when(mockDataSnapshot.getChildren()).thenReturn(children);
+
+        assertThat(DataSnapshotMapper.listOf(String.class).call(mockDataSnapshot)).hasSize(3);
+
+        assertThat(metrics.getMappingLatency().getCount()).isEqualTo(1L);
+        assertThat(metrics.getSnapshotChildCounts().getSum()).isEqualTo(3L);
+    }
+
+    @Test
+    public void testNone_DoesNotMeasure() {
+        RxFirebaseDatabase.setMetrics(null);
+        assertThat(RxFirebaseDatabase.getMetrics()).isSameAs(RxFirebaseMetrics.NONE);
+
+        RxFirebaseDatabase.observeValueEvent(mockDatabase).subscribe(new TestSubscriber<DataSnapshot>());
+
+        verify(mockDatabase, never()).getPath();
+        assertThat(metrics.getActiveListeners()).isEmpty();
+    }
+
+    @Test
+    public void testHistogram_PercentilesWithinBucket() {
+        Log2Histogram histogram = new Log2Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(100L);
+        assertThat(histogram.getMean()).isEqualTo(50.5);
+        assertThat(histogram.getPercentile(0.5)).isEqualTo(63L);
+        assertThat(histogram.getPercentile(0.99)).isEqualTo(127L);
+        assertThat(histogram.getPercentile(0.0)).isEqualTo(1L);
+    }
+
+    @Test
+    public void testHistogram_CountsConcurrentRecords() throws InterruptedException {
+        final Log2Histogram histogram = new Log2Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(100);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(40000L);
+        assertThat(histogram.getPercentile(0.5)).isEqualTo(127L);
+        assertThat(histogram.getPercentile(1.0)).isEqualTo(127L);
+    }
+}
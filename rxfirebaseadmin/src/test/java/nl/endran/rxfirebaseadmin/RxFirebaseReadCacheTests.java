@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataCastException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Mockito.*;
+
+public class RxFirebaseReadCacheTests {
+
+    @Mock
+    private DatabaseReference mockConfig;
+
+    @Mock
+    private DatabaseReference mockProfile;
+
+    @Mock
+    private DatabaseReference mockOther;
+
+    private TestScheduler testScheduler = new TestScheduler();
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(mockConfig.addValueEventListener(any(ValueEventListener.class))).thenAnswer(returnsFirstArg());
+    }
+
+    @Test
+    public void testHit_SkipsReadAndMapping() {
+        RxFirebaseReadCache cache = new RxFirebaseReadCache(10, 1, TimeUnit.MINUTES, false, testScheduler);
+        DataSnapshot snapshot = snapshot("config");
+
+        TestSubscriber<String> first = new TestSubscriber<>();
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(first);
+        singleValueListener(mockConfig).onDataChange(snapshot);
+
+        TestSubscriber<String> second = new TestSubscriber<>();
+        RxFirebaseDatabase.observeSingleValueEvent(mockConfig, String.class, cache).subscribe(second);
+
+        first.assertReceivedOnNext(Collections.singletonList("config"));
+        second.assertReceivedOnNext(Collections.singletonList("config"));
+        second.assertCompleted();
+        verify(mockConfig, times(1)).addListenerForSingleValueEvent(any(ValueEventListener.class));
+        verify(snapshot, times(1)).getValue(String.class);
+        assertThat(cache.getHitCount()).isEqualTo(1L);
+        assertThat(cache.getMissCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testTtl_ExpiredEntryIsReloaded() {
+        RxFirebaseReadCache cache = new RxFirebaseReadCache(10, 1, TimeUnit.MINUTES, false, testScheduler);
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(new TestSubscriber<String>());
+        singleValueListener(mockConfig).onDataChange(snapshot("config"));
+
+        testScheduler.advanceTimeBy(61, TimeUnit.SECONDS);
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(new TestSubscriber<String>());
+
+        verify(mockConfig, times(2)).addListenerForSingleValueEvent(any(ValueEventListener.class));
+        assertThat(cache.getEvictionCount()).isEqualTo(1L);
+        assertThat(cache.getHitCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testSize_EvictsLeastRecentlyUsed() {
+        RxFirebaseReadCache cache = new RxFirebaseReadCache(2, 1, TimeUnit.MINUTES, false, testScheduler);
+        load(cache, mockConfig, "config");
+        load(cache, mockProfile, "profile");
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(new TestSubscriber<String>());
+        load(cache, mockOther, "other");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictionCount()).isEqualTo(1L);
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(new TestSubscriber<String>());
+        cache.observeSingleValueEvent(mockProfile, String.class).subscribe(new TestSubscriber<String>());
+        verify(mockConfig, times(1)).addListenerForSingleValueEvent(any(ValueEventListener.class));
+        verify(mockProfile, times(2)).addListenerForSingleValueEvent(any(ValueEventListener.class));
+    }
+
+    @Test
+    public void testCleanUp_EvictsRecentlyReadExpiredEntry() {
+        RxFirebaseReadCache cache = new RxFirebaseReadCache(10, 1, TimeUnit.MINUTES, false, testScheduler);
+        load(cache, mockConfig, "config");
+        testScheduler.advanceTimeBy(30, TimeUnit.SECONDS);
+        load(cache, mockProfile, "profile");
+        testScheduler.advanceTimeBy(20, TimeUnit.SECONDS);
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(new TestSubscriber<String>());
+
+        testScheduler.advanceTimeBy(11, TimeUnit.SECONDS);
+        cache.cleanUp();
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getEvictionCount()).isEqualTo(1L);
+        cache.observeSingleValueEvent(mockProfile, String.class).subscribe(new TestSubscriber<String>());
+        verify(mockProfile, times(1)).addListenerForSingleValueEvent(any(ValueEventListener.class));
+    }
+
+    @Test
+    public void testLive_UpdatesAndInvalidates() {
+        RxFirebaseReadCache cache = new RxFirebaseReadCache(10, 1, TimeUnit.MINUTES, true, testScheduler);
+        TestSubscriber<String> first = new TestSubscriber<>();
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(first);
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockConfig).addValueEventListener(argument.capture());
+        argument.getValue().onDataChange(snapshot("v1"));
+        first.assertReceivedOnNext(Collections.singletonList("v1"));
+        first.assertCompleted();
+
+        argument.getValue().onDataChange(snapshot("v2"));
+        TestSubscriber<String> second = new TestSubscriber<>();
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(second);
+        second.assertReceivedOnNext(Collections.singletonList("v2"));
+
+        DataSnapshot unmappable = mock(DataSnapshot.class);
+        when(unmappable.exists()).thenReturn(true);
+        argument.getValue().onDataChange(unmappable);
+        assertThat(cache.size()).isEqualTo(0);
+        verify(mockConfig).removeEventListener(argument.getValue());
+    }
+
+    @Test
+    public void testLive_FirstValueErrorIsPropagated() {
+        RxFirebaseReadCache cache = new RxFirebaseReadCache(10, 1, TimeUnit.MINUTES, true, testScheduler);
+        TestSubscriber<String> testSubscriber = new TestSubscriber<>();
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(testSubscriber);
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockConfig).addValueEventListener(argument.capture());
+
+        DataSnapshot unmappable = mock(DataSnapshot.class);
+        when(unmappable.exists()).thenReturn(true);
+        argument.getValue().onDataChange(unmappable);
+
+        assertThat(testSubscriber.getOnErrorEvents().get(0)).hasCauseInstanceOf(RxFirebaseDataCastException.class);
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLive_IdleEntryDetachesListener() {
+        RxFirebaseReadCache cache = new RxFirebaseReadCache(10, 1, TimeUnit.MINUTES, true, testScheduler);
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(new TestSubscriber<String>());
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockConfig).addValueEventListener(argument.capture());
+        argument.getValue().onDataChange(snapshot("v1"));
+
+        testScheduler.advanceTimeBy(30, TimeUnit.SECONDS);
+        cache.observeSingleValueEvent(mockConfig, String.class).subscribe(new TestSubscriber<String>());
+        testScheduler.advanceTimeBy(45, TimeUnit.SECONDS);
+        cache.cleanUp();
+        verify(mockConfig, never()).removeEventListener(any(ValueEventListener.class));
+
+        testScheduler.advanceTimeBy(30, TimeUnit.SECONDS);
+        cache.cleanUp();
+        verify(mockConfig).removeEventListener(argument.getValue());
+        assertThat(cache.getEvictionCount()).isEqualTo(1L);
+    }
+
+    private void load(RxFirebaseReadCache cache, DatabaseReference reference, String value) {
+        cache.observeSingleValueEvent(reference, String.class).subscribe(new TestSubscriber<String>());
+        singleValueListener(reference).onDataChange(snapshot(value));
+    }
+
+    private static ValueEventListener singleValueListener(DatabaseReference reference) {
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(reference, atLeastOnce()).addListenerForSingleValueEvent(argument.capture());
+        return argument.getValue();
+    }
+
+    private static DataSnapshot snapshot(String value) {
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.exists()).thenReturn(true);
+        when(snapshot.getValue(String.class)).thenReturn(value);
+        return snapshot;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class RxFirebaseResumableChildEventsTests {
+
+    @Mock
+    private Query mockQuery;
+
+    @Mock
+    private Query mockResumedQuery;
+
+    @Mock
+    private DatabaseReference mockReference;
+
+    private TestScheduler testScheduler = new TestScheduler();
+    private RxFirebaseResumableChildEvents resumable;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+
+        when(mockQuery.addChildEventListener(any(ChildEventListener.class))).thenAnswer(returnsFirstArg());
+        when(mockResumedQuery.addChildEventListener(any(ChildEventListener.class))).thenAnswer(returnsFirstArg());
+        when(mockReference.orderByKey()).thenReturn(mockQuery);
+        when(mockQuery.startAt("b")).thenReturn(mockResumedQuery);
+
+        resumable = new RxFirebaseResumableChildEvents(2, 10, 100, TimeUnit.MILLISECONDS, testScheduler);
+    }
+
+    @Test
+    public void testObserveChildEvent_ReconcilesReplayAfterCancel() {
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.observeChildEvent(mockQuery, resumable).subscribe(testSubscriber);
+
+        ChildEventListener first = childListener(mockQuery, 1);
+        first.onChildAdded(snapshot("a", 1L), null);
+        first.onChildAdded(snapshot("b", 2L), "a");
+        first.onChildAdded(snapshot("c", 3L), "b");
+        first.onCancelled(DatabaseError.fromCode(DatabaseError.DISCONNECTED));
+        verify(mockQuery).removeEventListener(first);
+
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ChildEventListener second = childListener(mockQuery, 2);
+        second.onChildAdded(snapshot("a", 1L), null);
+        second.onChildAdded(snapshot("c", 30L), "a");
+        second.onChildAdded(snapshot("d", 4L), "c");
+        first.onChildAdded(snapshot("e", 5L), "d");
+        replayEndListener(mockQuery).onDataChange(snapshot("", null));
+
+        testSubscriber.assertNoErrors();
+        assertThat(describe(testSubscriber.getOnNextEvents())).containsExactly(
+                "ADDED a=1", "ADDED b=2", "ADDED c=3",
+                "CHANGED c=30", "ADDED d=4", "REMOVED b=2");
+
+        second.onChildAdded(snapshot("b", 2L), "a");
+        assertThat(describe(testSubscriber.getOnNextEvents())).endsWith("ADDED b=2");
+    }
+
+    @Test
+    public void testObserveChildEvent_FailsAfterMaxRetries() {
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> testSubscriber = new TestSubscriber<>();
+        resumable.observeChildEvent(mockQuery).subscribe(testSubscriber);
+
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+            childListener(mockQuery, attempt).onCancelled(DatabaseError.fromCode(DatabaseError.PERMISSION_DENIED));
+        }
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        testSubscriber.assertError(RxFirebaseDataException.class);
+        verify(mockQuery, times(3)).addChildEventListener(any(ChildEventListener.class));
+    }
+
+    @Test
+    public void testObserveAppendedChildEvent_ResumesAtLastKey() {
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> testSubscriber = new TestSubscriber<>();
+        resumable.observeAppendedChildEvent(mockReference).subscribe(testSubscriber);
+
+        ChildEventListener first = childListener(mockQuery, 1);
+        first.onChildAdded(snapshot("a", 1L), null);
+        first.onChildAdded(snapshot("b", 2L), "a");
+        first.onCancelled(DatabaseError.fromCode(DatabaseError.DISCONNECTED));
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        ChildEventListener resumed = childListener(mockResumedQuery, 1);
+        resumed.onChildAdded(snapshot("b", 2L), null);
+        resumed.onChildAdded(snapshot("c", 3L), "b");
+
+        assertThat(describe(testSubscriber.getOnNextEvents())).containsExactly("ADDED a=1", "ADDED b=2", "ADDED c=3");
+        verify(mockResumedQuery, never()).addListenerForSingleValueEvent(any(ValueEventListener.class));
+
+        testSubscriber.unsubscribe();
+        verify(mockResumedQuery).removeEventListener(resumed);
+    }
+
+    private ChildEventListener childListener(final Query query, final int times) {
+        ArgumentCaptor<ChildEventListener> argument = ArgumentCaptor.forClass(ChildEventListener.class);
+        verify(query, times(times)).addChildEventListener(argument.capture());
+        return argument.getValue();
+    }
+
+    private ValueEventListener replayEndListener(final Query query) {
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(query).addListenerForSingleValueEvent(argument.capture());
+        return argument.getValue();
+    }
+
+    private static DataSnapshot snapshot(final String key, final Object value) {
+        return TestDataSnapshots.of("items/" + key, value);
+    }
+
+    private static List<String> describe(final List<RxFirebaseChildEvent<DataSnapshot>> events) {
+        List<String> descriptions = new ArrayList<>();
+        for (RxFirebaseChildEvent<DataSnapshot> event : events) {
+            descriptions.add(event.getEventType() + " " + event.getKey() + "=" + event.getValue().getValue());
+        }
+        return descriptions;
+    }
+}
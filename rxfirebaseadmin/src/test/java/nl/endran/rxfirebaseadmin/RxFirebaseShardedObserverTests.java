@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.observers.TestSubscriber;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RxFirebaseShardedObserverTests {
+
+    private static final int PATH_COUNT = 200;
+
+    private final List<InMemoryDatabase> databases = new ArrayList<>();
+    private final List<String> paths = new ArrayList<>();
+    private RxFirebaseShardedObserver observer = new RxFirebaseShardedObserver();
+
+    @Before
+    public void setup() throws InterruptedException {
+        for (int i = 0; i < PATH_COUNT; i++) {
+            paths.add("devices/" + i);
+        }
+        for (int i = 0; i < 3; i++) {
+            observer.addShard("shard-" + i, database().getReference());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (InMemoryDatabase database : databases) {
+            database.shutdown();
+        }
+    }
+
+    @Test
+    public void testObserveValueEvent_SpreadsPathsOverShards() throws InterruptedException {
+        TestSubscriber<Long> testSubscriber = new TestSubscriber<>();
+        observer.observeValueEvent(paths, Long.class).subscribe(testSubscriber);
+        awaitIdle();
+
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(PATH_COUNT);
+        int listeners = 0;
+        for (int i = 0; i < 3; i++) {
+            RxFirebaseShardLoad load = observer.getShardLoads().get("shard-" + i);
+            assertThat(load.getListenerCount()).isEqualTo(databases.get(i).getListenerCount()).isGreaterThan(0);
+            assertThat(load.getEventCount()).isEqualTo(load.getListenerCount());
+            listeners += load.getListenerCount();
+        }
+        assertThat(listeners).isEqualTo(PATH_COUNT);
+
+        testSubscriber.unsubscribe();
+        awaitIdle();
+        for (InMemoryDatabase database : databases) {
+            assertThat(database.getListenerCount()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testAddShard_MovesOnlyPathsItTakesOver() throws InterruptedException {
+        Map<String, String> before = new HashMap<>();
+        for (String path : paths) {
+            before.put(path, observer.getShard(path));
+        }
+        TestSubscriber<DataSnapshot> testSubscriber = new TestSubscriber<>();
+        observer.observeValueEvent(paths).subscribe(testSubscriber);
+        awaitIdle();
+
+        InMemoryDatabase added = database();
+        observer.addShard("shard-3", added.getReference());
+        awaitIdle();
+
+        int moved = 0;
+        for (String path : paths) {
+            String after = observer.getShard(path);
+            if (!after.equals(before.get(path))) {
+                assertThat(after).isEqualTo("shard-3");
+                moved++;
+            }
+        }
+        assertThat(moved).isGreaterThan(0).isLessThan(PATH_COUNT / 2);
+        assertThat(added.getListenerCount()).isEqualTo(moved);
+        assertThat(observer.getShardLoads().get("shard-3").getListenerCount()).isEqualTo(moved);
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(PATH_COUNT + moved);
+
+        String path = firstPathOn("shard-3");
+        RxFirebaseDatabase.write(added.getReference(path), 99L).await();
+        awaitIdle();
+        DataSnapshot last = testSubscriber.getOnNextEvents().get(testSubscriber.getOnNextEvents().size() - 1);
+        assertThat(last.getValue()).isEqualTo(99L);
+        assertThat(last.getKey()).isEqualTo(path.substring(path.indexOf('/') + 1));
+    }
+
+    @Test
+    public void testRemoveShard_MovesItsPathsToRemainingShards() throws InterruptedException {
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> testSubscriber = new TestSubscriber<>();
+        observer.observeChildEvent(paths).subscribe(testSubscriber);
+        awaitIdle();
+
+        observer.removeShard("shard-0");
+        awaitIdle();
+
+        assertThat(databases.get(0).getListenerCount()).isEqualTo(0);
+        assertThat(databases.get(1).getListenerCount() + databases.get(2).getListenerCount()).isEqualTo(PATH_COUNT);
+        assertThat(observer.getShardLoads()).containsOnlyKeys("shard-1", "shard-2");
+        testSubscriber.assertNoErrors();
+    }
+
+    @Test
+    public void testObserveValueEvent_AttachesWhenFirstShardIsAdded() throws InterruptedException {
+        RxFirebaseShardedObserver empty = new RxFirebaseShardedObserver();
+        TestSubscriber<Long> testSubscriber = new TestSubscriber<>();
+        empty.observeValueEvent(paths.subList(0, 10), Long.class).subscribe(testSubscriber);
+        assertThat(empty.getShard(paths.get(0))).isNull();
+
+        empty.addShard("only", databases.get(0).getReference());
+        awaitIdle();
+
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(10);
+        assertThat(databases.get(0).getListenerCount()).isEqualTo(10);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRemoveShard_LastShardWhileObserved() {
+        RxFirebaseShardedObserver single = new RxFirebaseShardedObserver();
+        single.addShard("only", databases.get(0).getReference());
+        single.observeValueEvent(paths).subscribe(new TestSubscriber<DataSnapshot>());
+        single.removeShard("only");
+    }
+
+    private String firstPathOn(final String shard) {
+        for (String path : paths) {
+            if (observer.getShard(path).equals(shard)) {
+                return path;
+            }
+        }
+        throw new AssertionError("no path on " + shard);
+    }
+
+    private InMemoryDatabase database() throws InterruptedException {
+        InMemoryDatabase database = new InMemoryDatabase();
+        Map<String, Object> devices = new HashMap<>();
+        for (int i = 0; i < PATH_COUNT; i++) {
+            devices.put(String.valueOf(i), (long) i);
+        }
+        database.getReference("devices").setValue(devices, (DatabaseReference.CompletionListener) null);
+        database.awaitIdle();
+        databases.add(database);
+        return database;
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        for (InMemoryDatabase database : databases) {
+            database.awaitIdle();
+        }
+    }
+}
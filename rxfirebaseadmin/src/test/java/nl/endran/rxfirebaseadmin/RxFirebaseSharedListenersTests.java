@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class RxFirebaseSharedListenersTests {
+
+    @Mock
+    private DatabaseReference mockDatabase;
+
+    @Mock
+    private DataSnapshot mockFirebaseDataSnapshot;
+
+    @Mock
+    private DataSnapshot mockFirebaseDataSnapshotOther;
+
+    private TestScheduler testScheduler = new TestScheduler();
+    private RxFirebaseSharedListeners sharedListeners;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+
+        when(mockFirebaseDataSnapshot.getKey()).thenReturn("a");
+        when(mockFirebaseDataSnapshotOther.getKey()).thenReturn("b");
+
+        sharedListeners = new RxFirebaseSharedListeners(5, TimeUnit.SECONDS, testScheduler);
+    }
+
+    @Test
+    public void testObserveValueEvent_SharesListener() {
+
+        TestSubscriber<DataSnapshot> first = new TestSubscriber<>();
+        TestSubscriber<DataSnapshot> second = new TestSubscriber<>();
+        sharedListeners.observeValueEvent(mockDatabase).subscribe(first);
+        sharedListeners.observeValueEvent(mockDatabase).subscribe(second);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockDatabase, times(1)).addValueEventListener(argument.capture());
+        argument.getValue().onDataChange(mockFirebaseDataSnapshot);
+
+        first.assertReceivedOnNext(Collections.singletonList(mockFirebaseDataSnapshot));
+        second.assertReceivedOnNext(Collections.singletonList(mockFirebaseDataSnapshot));
+        assertThat(sharedListeners.getListenerCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testObserveValueEvent_ReplaysLatestToLateSubscriber() {
+
+        TestSubscriber<DataSnapshot> first = new TestSubscriber<>();
+        sharedListeners.observeValueEvent(mockDatabase).subscribe(first);
+
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockDatabase).addValueEventListener(argument.capture());
+        argument.getValue().onDataChange(mockFirebaseDataSnapshot);
+        argument.getValue().onDataChange(mockFirebaseDataSnapshotOther);
+
+        TestSubscriber<DataSnapshot> late = new TestSubscriber<>();
+        sharedListeners.observeValueEvent(mockDatabase).subscribe(late);
+
+        late.assertReceivedOnNext(Collections.singletonList(mockFirebaseDataSnapshotOther));
+    }
+
+    @Test
+    public void testObserveValueEvent_DetachesAfterLinger() {
+
+        TestSubscriber<DataSnapshot> first = new TestSubscriber<>();
+        sharedListeners.observeValueEvent(mockDatabase).subscribe(first);
+        first.unsubscribe();
+
+        testScheduler.advanceTimeBy(4, TimeUnit.SECONDS);
+        verify(mockDatabase, never()).removeEventListener(any(ValueEventListener.class));
+
+        testScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        verify(mockDatabase).removeEventListener(any(ValueEventListener.class));
+        assertThat(sharedListeners.getListenerCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testObserveValueEvent_ResubscribeWithinLingerKeepsListener() {
+
+        TestSubscriber<DataSnapshot> first = new TestSubscriber<>();
+        sharedListeners.observeValueEvent(mockDatabase).subscribe(first);
+        first.unsubscribe();
+        testScheduler.advanceTimeBy(3, TimeUnit.SECONDS);
+
+        TestSubscriber<DataSnapshot> second = new TestSubscriber<>();
+        sharedListeners.observeValueEvent(mockDatabase).subscribe(second);
+        testScheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+        verify(mockDatabase, times(1)).addValueEventListener(any(ValueEventListener.class));
+        verify(mockDatabase, never()).removeEventListener(any(ValueEventListener.class));
+    }
+
+    @Test
+    public void testObserveChildEvent_ReplaysChildrenAsAdded() {
+
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> first = new TestSubscriber<>();
+        sharedListeners.observeChildEvent(mockDatabase).subscribe(first);
+
+        ArgumentCaptor<ChildEventListener> argument = ArgumentCaptor.forClass(ChildEventListener.class);
+        verify(mockDatabase).addChildEventListener(argument.capture());
+        argument.getValue().onChildAdded(mockFirebaseDataSnapshotOther, null);
+        argument.getValue().onChildAdded(mockFirebaseDataSnapshot, null);
+        argument.getValue().onChildChanged(mockFirebaseDataSnapshotOther, "a");
+
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> late = new TestSubscriber<>();
+        sharedListeners.observeChildEvent(mockDatabase).subscribe(late);
+
+        first.assertValueCount(3);
+        late.assertReceivedOnNext(Arrays.asList(
+                new RxFirebaseChildEvent<>("a", mockFirebaseDataSnapshot, null, RxFirebaseChildEvent.EventType.ADDED),
+                new RxFirebaseChildEvent<>("b", mockFirebaseDataSnapshotOther, "a", RxFirebaseChildEvent.EventType.ADDED)));
+    }
+
+    @Test
+    public void testObserveChildEvent_CancelledErrorsAllSubscribers() {
+
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> first = new TestSubscriber<>();
+        TestSubscriber<RxFirebaseChildEvent<DataSnapshot>> second = new TestSubscriber<>();
+        sharedListeners.observeChildEvent(mockDatabase).subscribe(first);
+        sharedListeners.observeChildEvent(mockDatabase).subscribe(second);
+
+        ArgumentCaptor<ChildEventListener> argument = ArgumentCaptor.forClass(ChildEventListener.class);
+        verify(mockDatabase).addChildEventListener(argument.capture());
+        argument.getValue().onCancelled(DatabaseError.fromCode(DatabaseError.DISCONNECTED));
+
+        first.assertError(RxFirebaseDataException.class);
+        second.assertError(RxFirebaseDataException.class);
+        assertThat(sharedListeners.getListenerCount()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.ValueEventListener;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import rx.observers.TestSubscriber;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class RxFirebaseSingleFlightTests {
+
+    @Mock
+    private DatabaseReference mockDatabase;
+
+    @Mock
+    private DataSnapshot mockDataSnapshot;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testConcurrentReads_ShareOneListener() {
+        TestSubscriber<DataSnapshot> first = new TestSubscriber<>();
+        TestSubscriber<DataSnapshot> second = new TestSubscriber<>();
+        RxFirebaseDatabase.observeSingleValueEvent(mockDatabase).subscribe(first);
+        RxFirebaseDatabase.observeSingleValueEvent(mockDatabase).subscribe(second);
+
+        ValueEventListener listener = singleValueListener(1);
+        listener.onDataChange(mockDataSnapshot);
+
+        first.assertReceivedOnNext(Collections.singletonList(mockDataSnapshot));
+        second.assertReceivedOnNext(Collections.singletonList(mockDataSnapshot));
+        first.assertCompleted();
+        second.assertCompleted();
+    }
+
+    @Test
+    public void testCompletedRead_NotShared() {
+        RxFirebaseDatabase.observeSingleValueEvent(mockDatabase).subscribe(new TestSubscriber<DataSnapshot>());
+        singleValueListener(1).onDataChange(mockDataSnapshot);
+
+        RxFirebaseDatabase.observeSingleValueEvent(mockDatabase).subscribe(new TestSubscriber<DataSnapshot>());
+
+        singleValueListener(2);
+    }
+
+    @Test
+    public void testError_DeliveredToAll() {
+        TestSubscriber<DataSnapshot> first = new TestSubscriber<>();
+        TestSubscriber<DataSnapshot> second = new TestSubscriber<>();
+        RxFirebaseDatabase.observeSingleValueEvent(mockDatabase).subscribe(first);
+        RxFirebaseDatabase.observeSingleValueEvent(mockDatabase).subscribe(second);
+
+        singleValueListener(1).onCancelled(DatabaseError.fromCode(DatabaseError.PERMISSION_DENIED));
+
+        first.assertError(RxFirebaseDataException.class);
+        second.assertError(RxFirebaseDataException.class);
+        assertThat(first.getOnErrorEvents().get(0)).isSameAs(second.getOnErrorEvents().get(0));
+    }
+
+    @Test
+    public void testUnsubscribedByAll_StopsSharing() {
+        RxFirebaseSingleFlight<DataSnapshot> singleFlight = new RxFirebaseSingleFlight<>();
+        TestSubscriber<DataSnapshot> first = new TestSubscriber<>();
+        TestSubscriber<DataSnapshot> second = new TestSubscriber<>();
+        singleFlight.share("key", RxFirebaseDatabase.observeValueEvent(mockDatabase)).subscribe(first);
+        singleFlight.share("key", RxFirebaseDatabase.observeValueEvent(mockDatabase)).subscribe(second);
+        assertThat(singleFlight.inFlightCount()).isEqualTo(1);
+        verify(mockDatabase, times(1)).addValueEventListener(any(ValueEventListener.class));
+
+        first.unsubscribe();
+        assertThat(singleFlight.inFlightCount()).isEqualTo(1);
+        second.unsubscribe();
+        assertThat(singleFlight.inFlightCount()).isEqualTo(0);
+        verify(mockDatabase).removeEventListener(any(ValueEventListener.class));
+    }
+
+    private ValueEventListener singleValueListener(int expectedReads) {
+        ArgumentCaptor<ValueEventListener> argument = ArgumentCaptor.forClass(ValueEventListener.class);
+        verify(mockDatabase, times(expectedReads)).addListenerForSingleValueEvent(argument.capture());
+        return argument.getValue();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RxFirebaseSnapshotStoreTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InMemoryDatabase database = new InMemoryDatabase();
+    private InMemoryReference settings;
+    private File directory;
+
+    @Before
+    public void setup() throws InterruptedException, IOException {
+        directory = folder.newFolder("snapshots");
+        settings = database.getReference("settings");
+        Map<String, Object> initial = new HashMap<>();
+        initial.put("name", "first");
+        initial.put("limit", 10L);
+        initial.put("ratio", 0.5);
+        initial.put("enabled", true);
+        settings.setValue(initial, (DatabaseReference.CompletionListener) null);
+        database.awaitIdle();
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void testObserveValueEvent_ServesStoredValueBeforeLive() throws InterruptedException {
+        TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> first = prime();
+        assertThat(first.getOnNextEvents()).hasSize(1);
+        assertThat(first.getOnNextEvents().get(0).isFromStore()).isFalse();
+
+        RxFirebaseDatabase.write(settings.child("name"), "second").await();
+        database.awaitIdle();
+
+        TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> second = observe(newStore());
+        database.awaitIdle();
+
+        List<RxFirebaseStoredSnapshot<DataSnapshot>> events = second.getOnNextEvents();
+        assertThat(events).hasSize(2);
+        assertThat(events.get(0).isFromStore()).isTrue();
+        assertThat(events.get(0).getValue().child("name").getValue()).isEqualTo("first");
+        assertThat(events.get(0).getValue().getKey()).isEqualTo("settings");
+        assertThat(events.get(1).isFromStore()).isFalse();
+        assertThat(events.get(1).getValue().child("name").getValue()).isEqualTo("second");
+    }
+
+    @Test
+    public void testObserveValueEvent_RoundTripsTypesAndPriorities() throws InterruptedException {
+        settings.child("name").setValue("first", "p");
+        settings.child("limit").setValue(10L, 3.0);
+        TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> live = prime();
+
+        TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> stored = observe(newStore());
+        DataSnapshot expected = live.getOnNextEvents().get(0).getValue();
+        DataSnapshot actual = stored.getOnNextEvents().get(0).getValue();
+
+        assertThat(stored.getOnNextEvents().get(0).isFromStore()).isTrue();
+        assertThat(actual.getValue(true)).isEqualTo(expected.getValue(true));
+        assertThat(actual.child("limit").getValue()).isEqualTo(10L);
+        assertThat(actual.child("ratio").getValue()).isEqualTo(0.5);
+        assertThat(actual.child("enabled").getValue()).isEqualTo(true);
+        assertThat(actual.child("name").getPriority()).isEqualTo("p");
+    }
+
+    @Test
+    public void testObserveValueEvent_DeletesCorruptFile() throws InterruptedException, IOException {
+        prime();
+        File[] files = directory.listFiles();
+        assertThat(files).hasSize(1);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            file.seek(file.length() - 1);
+            file.write(file.read() ^ 0xFF);
+        }
+
+        RxFirebaseSnapshotStore store = newStore();
+        TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> testSubscriber = observe(store);
+        database.awaitIdle();
+
+        assertThat(store.getCorruptCount()).isEqualTo(1);
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(1);
+        assertThat(testSubscriber.getOnNextEvents().get(0).isFromStore()).isFalse();
+        assertThat(directory.listFiles()).hasSize(1);
+    }
+
+    @Test
+    public void testObserveValueEvent_DeletesTruncatedFile() throws InterruptedException, IOException {
+        prime();
+        File[] files = directory.listFiles();
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        database.shutdown();
+
+        RxFirebaseSnapshotStore store = newStore();
+        TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> testSubscriber = observe(store);
+
+        assertThat(store.getCorruptCount()).isEqualTo(1);
+        assertThat(testSubscriber.getOnNextEvents()).isEmpty();
+        assertThat(files[0]).doesNotExist();
+    }
+
+    @Test
+    public void testObserveValueEvent_SkipsStoredValueThatNoLongerMaps() throws InterruptedException {
+        prime();
+        RxFirebaseDatabase.write(settings, 5L).await();
+        database.awaitIdle();
+
+        TestSubscriber<RxFirebaseStoredSnapshot<Long>> typed = new TestSubscriber<>();
+        RxFirebaseDatabase.observeValueEvent(settings, Long.class, newStore()).subscribe(typed);
+        database.awaitIdle();
+
+        typed.assertNoErrors();
+        assertThat(typed.getOnNextEvents()).hasSize(1);
+        assertThat(typed.getOnNextEvents().get(0).getValue()).isEqualTo(5L);
+        assertThat(typed.getOnNextEvents().get(0).isFromStore()).isFalse();
+    }
+
+    @Test
+    public void testObserveValueEvent_LiveValueThatDoesNotMapFails() {
+        TestSubscriber<RxFirebaseStoredSnapshot<Long>> typed = new TestSubscriber<>();
+        RxFirebaseDatabase.observeValueEvent(settings, Long.class, newStore()).subscribe(typed);
+
+        typed.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        typed.assertNoValues();
+        typed.assertError(DatabaseException.class);
+    }
+
+    @Test
+    public void testObserveValueEvent_OverlappingWritesOfOneQueryKeepFileIntact() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        RxFirebaseSnapshotStore store = new RxFirebaseSnapshotStore(directory, Schedulers.from(executor));
+        TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> testSubscriber = observe(store);
+        for (int i = 0; i < 500; i++) {
+            settings.child("limit").setValue((long) i, (DatabaseReference.CompletionListener) null);
+        }
+        database.awaitIdle();
+        testSubscriber.unsubscribe();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(store.getWriteFailureCount()).isEqualTo(0);
+        assertThat(directory.listFiles()).hasSize(1);
+        database.shutdown();
+        TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> stored = observe(newStore());
+        assertThat(stored.getOnNextEvents()).hasSize(1);
+        assertThat(stored.getOnNextEvents().get(0).getValue().child("limit").getValue()).isEqualTo(499L);
+    }
+
+    private RxFirebaseSnapshotStore newStore() {
+        return new RxFirebaseSnapshotStore(directory, Schedulers.immediate());
+    }
+
+    private TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> prime() throws InterruptedException {
+        TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> testSubscriber = observe(newStore());
+        database.awaitIdle();
+        testSubscriber.unsubscribe();
+        return testSubscriber;
+    }
+
+    private TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> observe(final RxFirebaseSnapshotStore store) {
+        TestSubscriber<RxFirebaseStoredSnapshot<DataSnapshot>> testSubscriber = new TestSubscriber<>();
+        RxFirebaseDatabase.observeValueEvent(settings, store).subscribe(testSubscriber);
+        return testSubscriber;
+    }
+}
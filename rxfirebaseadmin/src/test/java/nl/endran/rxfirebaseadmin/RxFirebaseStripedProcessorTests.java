@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import org.junit.After;
+import org.junit.Test;
+import rx.Observable;
+import rx.Subscriber;
+import rx.exceptions.MissingBackpressureException;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RxFirebaseStripedProcessorTests {
+
+    private RxFirebaseStripedProcessor processor;
+
+    @After
+    public void tearDown() {
+        processor.shutdown();
+    }
+
+    @Test
+    public void testProcess_KeepsOrderPerKey() {
+        processor = new RxFirebaseStripedProcessor(4, 16);
+        final Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        List<RxFirebaseChildEvent<Integer>> events = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            events.add(event("key" + (i % 20), i));
+        }
+
+        TestSubscriber<Integer> testSubscriber = new TestSubscriber<>();
+        Observable.from(events)
+                .lift(processor.<Integer, Integer>process(new Func1<RxFirebaseChildEvent<Integer>, Integer>() {
+                    @Override
+                    public Integer call(RxFirebaseChildEvent<Integer> event) {
+                        List<Integer> values = seen.get(event.getKey());
+                        if (values == null) {
+                            values = new ArrayList<>();
+                            seen.put(event.getKey(), values);
+                        }
+                        values.add(event.getValue());
+                        threads.add(Thread.currentThread().getName());
+                        return event.getValue();
+                    }
+                }))
+                .subscribe(testSubscriber);
+
+        testSubscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        testSubscriber.assertCompleted();
+        assertThat(testSubscriber.getOnNextEvents()).hasSize(2000);
+        assertThat(seen).hasSize(20);
+        for (List<Integer> values : seen.values()) {
+            assertThat(values).hasSize(100).isSorted();
+        }
+        assertThat(threads.size()).isGreaterThan(1);
+        long total = 0;
+        for (long processed : processor.getProcessedCounts()) {
+            total += processed;
+        }
+        assertThat(total).isEqualTo(2000);
+    }
+
+    @Test
+    public void testProcess_FailsWithoutBlockingWhenStripeIsFull() throws InterruptedException {
+        processor = new RxFirebaseStripedProcessor(1, 2);
+        ListenerSource<RxFirebaseChildEvent<Integer>> events = new ListenerSource<>();
+        TestSubscriber<Integer> testSubscriber = new TestSubscriber<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean released = new AtomicBoolean();
+        Observable.create(events)
+                .lift(processor.<Integer, Integer>process(blockingProcessor(started, released)))
+                .subscribe(testSubscriber);
+
+        events.onNext(event("key", 0));
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i < 4; i++) {
+            events.onNext(event("key", i));
+        }
+
+        testSubscriber.assertError(MissingBackpressureException.class);
+        assertThat(events.isUnsubscribed()).isTrue();
+        assertThat(processor.getPeakQueueDepths()).containsExactly(2);
+        released.set(true);
+    }
+
+    @Test
+    public void testProcess_StreamsSharingStripeHaveTheirOwnCapacity() throws InterruptedException {
+        processor = new RxFirebaseStripedProcessor(1, 2);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean released = new AtomicBoolean();
+        TestSubscriber<Integer> first = new TestSubscriber<>();
+        TestSubscriber<Integer> second = new TestSubscriber<>();
+        events("first", 10).lift(processor.<Integer, Integer>process(blockingProcessor(started, released)))
+                .subscribe(first);
+        events("second", 10).lift(processor.<Integer, Integer>process(blockingProcessor(started, released)))
+                .subscribe(second);
+
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        first.assertNoErrors();
+        second.assertNoErrors();
+        released.set(true);
+
+        first.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        second.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        first.assertCompleted();
+        second.assertCompleted();
+        assertThat(first.getOnNextEvents()).hasSize(10);
+        assertThat(second.getOnNextEvents()).hasSize(10);
+    }
+
+    @Test
+    public void testShutdown_FailsStreamWithQueuedEvents() throws InterruptedException {
+        processor = new RxFirebaseStripedProcessor(1, 4);
+        ListenerSource<RxFirebaseChildEvent<Integer>> events = new ListenerSource<>();
+        TestSubscriber<Integer> testSubscriber = new TestSubscriber<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean released = new AtomicBoolean();
+        Observable.create(events)
+                .lift(processor.<Integer, Integer>process(blockingProcessor(started, released)))
+                .subscribe(testSubscriber);
+
+        events.onNext(event("key", 0));
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        events.onNext(event("key", 1));
+        events.onNext(event("key", 2));
+        processor.shutdown();
+
+        testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        testSubscriber.assertError(RejectedExecutionException.class);
+        assertThat(processor.getQueueDepths()).containsExactly(0);
+        assertThat(events.isUnsubscribed()).isTrue();
+        released.set(true);
+    }
+
+    @Test
+    public void testShutdown_RejectsEventsOfOpenStream() {
+        processor = new RxFirebaseStripedProcessor(2, 4);
+        PublishSubject<RxFirebaseChildEvent<Integer>> events = PublishSubject.create();
+        TestSubscriber<Integer> testSubscriber = new TestSubscriber<>();
+        events.lift(processor.<Integer, Integer>process(new Func1<RxFirebaseChildEvent<Integer>, Integer>() {
+            @Override
+            public Integer call(RxFirebaseChildEvent<Integer> event) {
+                return event.getValue();
+            }
+        })).subscribe(testSubscriber);
+
+        processor.shutdown();
+        events.onNext(event("key", 0));
+
+        testSubscriber.assertError(RejectedExecutionException.class);
+        testSubscriber.assertNoValues();
+    }
+
+    @Test
+    public void testGetSkew_SingleHotKey() {
+        processor = new RxFirebaseStripedProcessor(4, 16);
+        TestSubscriber<Integer> testSubscriber = new TestSubscriber<>();
+        Observable.range(0, 100)
+                .map(new Func1<Integer, RxFirebaseChildEvent<Integer>>() {
+                    @Override
+                    public RxFirebaseChildEvent<Integer> call(Integer value) {
+                        return event("hot", value);
+                    }
+                })
+                .lift(processor.<Integer, Integer>process(new Func1<RxFirebaseChildEvent<Integer>, Integer>() {
+                    @Override
+                    public Integer call(RxFirebaseChildEvent<Integer> event) {
+                        return event.getValue();
+                    }
+                }))
+                .subscribe(testSubscriber);
+
+        testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        assertThat(processor.getSkew()).isEqualTo(4.0);
+        assertThat(processor.getProcessedCounts()[processor.getStripe("hot")]).isEqualTo(100);
+    }
+
+    @Test
+    public void testProcess_FailsOnProcessorError() {
+        processor = new RxFirebaseStripedProcessor(2, 16);
+        TestSubscriber<Integer> testSubscriber = new TestSubscriber<>();
+        Observable.range(0, 10)
+                .subscribeOn(Schedulers.computation())
+                .map(new Func1<Integer, RxFirebaseChildEvent<Integer>>() {
+                    @Override
+                    public RxFirebaseChildEvent<Integer> call(Integer value) {
+                        return event("key" + value, value);
+                    }
+                })
+                .lift(processor.<Integer, Integer>process(new Func1<RxFirebaseChildEvent<Integer>, Integer>() {
+                    @Override
+                    public Integer call(RxFirebaseChildEvent<Integer> event) {
+                        if (event.getValue() == 5) {
+                            throw new IllegalArgumentException("five");
+                        }
+                        return event.getValue();
+                    }
+                }))
+                .subscribe(testSubscriber);
+
+        testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        testSubscriber.assertError(IllegalArgumentException.class);
+        assertThat(testSubscriber.getOnNextEvents()).doesNotContain(5);
+    }
+
+    /**
+     * Holds its stripe until released, ignoring the interrupt that shutdown sends.
+     */
+    private static Func1<RxFirebaseChildEvent<Integer>, Integer> blockingProcessor(final CountDownLatch started,
+                                                                               final AtomicBoolean released) {
+        return new Func1<RxFirebaseChildEvent<Integer>, Integer>() {
+            @Override
+            public Integer call(RxFirebaseChildEvent<Integer> event) {
+                started.countDown();
+                while (!released.get()) {
+                    Thread.yield();
+                }
+                return event.getValue();
+            }
+        };
+    }
+
+    private static Observable<RxFirebaseChildEvent<Integer>> events(final String key, final int count) {
+        return Observable.range(0, count)
+                .map(new Func1<Integer, RxFirebaseChildEvent<Integer>>() {
+                    @Override
+                    public RxFirebaseChildEvent<Integer> call(Integer value) {
+                        return event(key, value);
+                    }
+                });
+    }
+
+    private static RxFirebaseChildEvent<Integer> event(final String key, final int value) {
+        return new RxFirebaseChildEvent<>(key, value, null, RxFirebaseChildEvent.EventType.ADDED);
+    }
+
+    /**
+     * Pushes values regardless of {@code request(n)}, the way a Firebase listener does.
+     */
+    private static class ListenerSource<T> implements Observable.OnSubscribe<T> {
+
+        private Subscriber<? super T> subscriber;
+
+        @Override
+        public void call(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void onNext(T value) {
+            subscriber.onNext(value);
+        }
+
+        boolean isUnsubscribed() {
+            return subscriber.isUnsubscribed();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.*;
+import com.google.firebase.database.core.Path;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseTransactionAbortedException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class RxFirebaseTransactionRunnerTests {
+
+    @Mock
+    private DatabaseReference mockDatabase;
+
+    @Mock
+    private MutableData mockMutableData;
+
+    @Mock
+    private DataSnapshot mockFirebaseDataSnapshot;
+
+    @Mock
+    private Transaction.Handler mockHandler;
+
+    private TestScheduler testScheduler = new TestScheduler();
+    private RxFirebaseTransactionRunner transactionRunner;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+
+        when(mockDatabase.getPath()).thenReturn(new Path("counters/a"));
+        Transaction.Result success = Transaction.success(mockMutableData);
+        when(mockHandler.doTransaction(mockMutableData)).thenReturn(success);
+
+        transactionRunner = new RxFirebaseTransactionRunner(3, 10, 100, TimeUnit.MILLISECONDS, testScheduler);
+    }
+
+    @Test
+    public void testRunTransaction_Committed() {
+        TestSubscriber<DataSnapshot> testSubscriber = new TestSubscriber<>();
+        transactionRunner.runTransaction(mockDatabase, mockHandler).subscribe(testSubscriber);
+
+        Transaction.Handler handler = captureHandler(1);
+        assertThat(handler.doTransaction(mockMutableData).isSuccess()).isTrue();
+        handler.onComplete(null, true, mockFirebaseDataSnapshot);
+
+        testSubscriber.assertValue(mockFirebaseDataSnapshot);
+        verify(mockHandler).onComplete(null, true, mockFirebaseDataSnapshot);
+
+        RxFirebaseTransactionStats stats = transactionRunner.getStats(mockDatabase);
+        assertThat(stats.getPath()).isEqualTo("/counters/a");
+        assertThat(stats.getAttempts()).isEqualTo(1);
+        assertThat(stats.getCommits()).isEqualTo(1);
+        assertThat(stats.getAborts()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRunTransaction_BacksOffWhenContended() {
+        TestSubscriber<DataSnapshot> testSubscriber = new TestSubscriber<>();
+        transactionRunner.runTransaction(mockDatabase, mockHandler).subscribe(testSubscriber);
+
+        Transaction.Handler handler = captureHandler(1);
+        assertThat(handler.doTransaction(mockMutableData).isSuccess()).isTrue();
+        assertThat(handler.doTransaction(mockMutableData).isSuccess()).isTrue();
+        assertThat(handler.doTransaction(mockMutableData).isSuccess()).isFalse();
+        handler.onComplete(null, false, mockFirebaseDataSnapshot);
+
+        verify(mockHandler, times(2)).doTransaction(mockMutableData);
+        verify(mockHandler, never()).onComplete(any(DatabaseError.class), anyBoolean(), any(DataSnapshot.class));
+        testSubscriber.assertNoTerminalEvent();
+
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        handler = captureHandler(2);
+        handler.doTransaction(mockMutableData);
+        handler.onComplete(null, true, mockFirebaseDataSnapshot);
+
+        testSubscriber.assertValue(mockFirebaseDataSnapshot);
+        RxFirebaseTransactionStats stats = transactionRunner.getStats(mockDatabase);
+        assertThat(stats.getAttempts()).isEqualTo(3);
+        assertThat(stats.getRetries()).isEqualTo(1);
+        assertThat(stats.getCommits()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRunTransaction_FailsAfterMaxAttempts() {
+        TestSubscriber<DataSnapshot> testSubscriber = new TestSubscriber<>();
+        transactionRunner.runTransaction(mockDatabase, mockHandler).subscribe(testSubscriber);
+
+        Transaction.Handler handler = captureHandler(1);
+        handler.doTransaction(mockMutableData);
+        handler.doTransaction(mockMutableData);
+        handler.doTransaction(mockMutableData);
+        handler.onComplete(null, false, mockFirebaseDataSnapshot);
+
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        handler = captureHandler(2);
+        handler.doTransaction(mockMutableData);
+        assertThat(handler.doTransaction(mockMutableData).isSuccess()).isFalse();
+        handler.onComplete(null, false, mockFirebaseDataSnapshot);
+
+        testSubscriber.assertError(RxFirebaseDataException.class);
+        DatabaseError error = ((RxFirebaseDataException) testSubscriber.getOnErrorEvents().get(0)).getError();
+        assertThat(error.getCode()).isEqualTo(DatabaseError.MAX_RETRIES);
+        verify(mockHandler, times(3)).doTransaction(mockMutableData);
+        assertThat(transactionRunner.getStats(mockDatabase).getAborts()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRunTransaction_HandlerAbort() {
+        Transaction.Result abort = Transaction.abort();
+        when(mockHandler.doTransaction(mockMutableData)).thenReturn(abort);
+
+        TestSubscriber<DataSnapshot> testSubscriber = new TestSubscriber<>();
+        transactionRunner.runTransaction(mockDatabase, mockHandler).subscribe(testSubscriber);
+
+        Transaction.Handler handler = captureHandler(1);
+        handler.doTransaction(mockMutableData);
+        handler.onComplete(null, false, mockFirebaseDataSnapshot);
+
+        testSubscriber.assertError(RxFirebaseTransactionAbortedException.class);
+        assertThat(transactionRunner.getStats()).containsExactly(transactionRunner.getStats(mockDatabase));
+        assertThat(transactionRunner.getStats(mockDatabase).getAborts()).isEqualTo(1);
+    }
+
+    private Transaction.Handler captureHandler(int times) {
+        ArgumentCaptor<Transaction.Handler> argument = ArgumentCaptor.forClass(Transaction.Handler.class);
+        verify(mockDatabase, times(times)).runTransaction(argument.capture(), eq(true));
+        return argument.getValue();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017 David Hardy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.endran.rxfirebaseadmin;
+
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.core.Path;
+import nl.endran.rxfirebaseadmin.exceptions.RxFirebaseDataException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+public class RxFirebaseWriteBatcherTests {
+
+    @Mock
+    private DatabaseReference mockRoot;
+
+    @Mock
+    private DatabaseReference mockUsers;
+
+    @Mock
+    private DatabaseReference mockUser;
+
+    @Mock
+    private DatabaseError mockDatabaseError;
+
+    private TestScheduler testScheduler = new TestScheduler();
+    private RxFirebaseWriteBatcher writeBatcher;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+
+        when(mockRoot.getPath()).thenReturn(new Path(""));
+        when(mockRoot.getRoot()).thenReturn(mockRoot);
+        when(mockRoot.child("users")).thenReturn(mockUsers);
+        when(mockRoot.child("users/1")).thenReturn(mockUser);
+
+        writeBatcher = new RxFirebaseWriteBatcher(10, TimeUnit.MILLISECONDS, 3, testScheduler);
+    }
+
+    @Test
+    public void testWrite_MergesIntoOneUpdateOnCommonAncestor() {
+        TestSubscriber<Void> first = new TestSubscriber<>();
+        TestSubscriber<Void> second = new TestSubscriber<>();
+        writeBatcher.write(mockReference("users/1/name"), "a").subscribe(first);
+        writeBatcher.write(mockReference("users/2/name"), "b").subscribe(second);
+
+        verify(mockUsers, never()).updateChildren(anyMapOf(String.class, Object.class), any(DatabaseReference.CompletionListener.class));
+        testScheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("1/name", "a");
+        expected.put("2/name", "b");
+        ArgumentCaptor<DatabaseReference.CompletionListener> argument =
+                ArgumentCaptor.forClass(DatabaseReference.CompletionListener.class);
+        verify(mockUsers).updateChildren(eq(expected), argument.capture());
+
+        first.assertNoTerminalEvent();
+        argument.getValue().onComplete(null, mockUsers);
+
+        first.assertCompleted();
+        second.assertCompleted();
+    }
+
+    @Test
+    public void testWrite_LastWriteWins() {
+        writeBatcher.write(mockReference("users/1/name"), "a").subscribe();
+        writeBatcher.write(mockReference("users/1/name"), "b").subscribe();
+        testScheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        verify(mockUser).updateChildren(eq(Collections.<String, Object>singletonMap("name", "b")),
+                any(DatabaseReference.CompletionListener.class));
+    }
+
+    @Test
+    public void testWrite_OverlappingPathFlushesPendingBatchFirst() {
+        writeBatcher.write(mockReference("users/1/name"), "a").subscribe();
+        writeBatcher.write(mockReference("users/1"), null).subscribe();
+
+        verify(mockUser).updateChildren(eq(Collections.<String, Object>singletonMap("name", "a")),
+                any(DatabaseReference.CompletionListener.class));
+        verify(mockUsers, never()).updateChildren(anyMapOf(String.class, Object.class), any(DatabaseReference.CompletionListener.class));
+
+        testScheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        InOrder inOrder = inOrder(mockUser, mockUsers);
+        inOrder.verify(mockUser).updateChildren(eq(Collections.<String, Object>singletonMap("name", "a")),
+                any(DatabaseReference.CompletionListener.class));
+        inOrder.verify(mockUsers).updateChildren(eq(Collections.<String, Object>singletonMap("1", null)),
+                any(DatabaseReference.CompletionListener.class));
+    }
+
+    @Test
+    public void testWrite_RootFlushesPendingBatchAndIsWrittenAlone() {
+        TestSubscriber<Void> child = new TestSubscriber<>();
+        TestSubscriber<Void> root = new TestSubscriber<>();
+        writeBatcher.write(mockReference("users/1/name"), "a").subscribe(child);
+        writeBatcher.write(mockRoot, "all").subscribe(root);
+
+        ArgumentCaptor<DatabaseReference.CompletionListener> argument =
+                ArgumentCaptor.forClass(DatabaseReference.CompletionListener.class);
+        InOrder inOrder = inOrder(mockUser, mockRoot);
+        inOrder.verify(mockUser).updateChildren(eq(Collections.<String, Object>singletonMap("name", "a")),
+                any(DatabaseReference.CompletionListener.class));
+        inOrder.verify(mockRoot).setValue(eq("all"), argument.capture());
+        verify(mockRoot, never()).updateChildren(anyMapOf(String.class, Object.class), any(DatabaseReference.CompletionListener.class));
+
+        argument.getValue().onComplete(null, mockRoot);
+        root.assertCompleted();
+        child.assertNoTerminalEvent();
+
+        testScheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        verify(mockUser, times(1)).updateChildren(anyMapOf(String.class, Object.class), any(DatabaseReference.CompletionListener.class));
+    }
+
+    @Test
+    public void testWrite_FlushesWhenBatchIsFull() {
+        writeBatcher.write(mockReference("users/1/name"), "a").subscribe();
+        writeBatcher.write(mockReference("users/2/name"), "b").subscribe();
+        writeBatcher.write(mockReference("users/3/name"), "c").subscribe();
+
+        verify(mockUsers).updateChildren(anyMapOf(String.class, Object.class), any(DatabaseReference.CompletionListener.class));
+
+        testScheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        verify(mockUsers, times(1)).updateChildren(anyMapOf(String.class, Object.class), any(DatabaseReference.CompletionListener.class));
+    }
+
+    @Test
+    public void testWrite_ErrorFailsWholeBatch() {
+        TestSubscriber<Void> first = new TestSubscriber<>();
+        TestSubscriber<Void> second = new TestSubscriber<>();
+        writeBatcher.write(mockReference("users/1/name"), "a").subscribe(first);
+        writeBatcher.write(mockReference("users/2/name"), "b").subscribe(second);
+        testScheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        ArgumentCaptor<DatabaseReference.CompletionListener> argument =
+                ArgumentCaptor.forClass(DatabaseReference.CompletionListener.class);
+        verify(mockUsers).updateChildren(anyMapOf(String.class, Object.class), argument.capture());
+        argument.getValue().onComplete(mockDatabaseError, mockUsers);
+
+        first.assertError(RxFirebaseDataException.class);
+        second.assertError(RxFirebaseDataException.class);
+    }
+
+    private DatabaseReference mockReference(String path) {
+        DatabaseReference reference = mock(DatabaseReference.class);
+        when(reference.getPath()).thenReturn(new Path(path));
+        when(reference.getRoot()).thenReturn(mockRoot);
+        return reference;
+    }
+}